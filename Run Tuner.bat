@@ -52,6 +52,23 @@ if %errorlevel% neq 0 (
     exit /b 1
 )
 
+REM Optional Flight Recorder events for the pipeline metrics; needs a JDK with jdk.jfr
+javac -cp . com\harmonic\tuner\jfr\*.java >nul 2>&1
+if %errorlevel% neq 0 (
+    echo Note: JFR events not compiled, pipeline metrics are still available over JMX.
+)
+
+REM Optional VarHandle ordering for shared-memory input; needs Java 9 or newer
+javac -cp . com\harmonic\tuner\shm\*.java >nul 2>&1
+
+REM Optional SIMD kernels; needs a JDK with the jdk.incubator.vector module (16 or newer)
+javac --add-modules jdk.incubator.vector -cp . com\harmonic\tuner\simd\*.java >nul 2>&1
+if %errorlevel% equ 0 (
+    set "JDK_JAVA_OPTIONS=--add-modules=jdk.incubator.vector"
+) else (
+    echo Note: SIMD kernels not compiled, using the scalar versions.
+)
+
 echo.
 echo Compilation successful!
 echo.
@@ -46,11 +46,28 @@ if (-not $SkipCompilation) {
         Read-Host "Press Enter to exit"
         exit 1
     }
+    # Optional Flight Recorder events for the pipeline metrics; needs a JDK with jdk.jfr
+    & javac -cp . com\harmonic\tuner\jfr\*.java 2>&1 | Out-Null
+    if ($LASTEXITCODE -ne 0) {
+        Write-Host "Note: JFR events not compiled, pipeline metrics are still available over JMX." -ForegroundColor Yellow
+    }
+    # Optional VarHandle ordering for shared-memory input; needs Java 9 or newer
+    & javac -cp . com\harmonic\tuner\shm\*.java 2>&1 | Out-Null
+    # Optional SIMD kernels; needs a JDK with the jdk.incubator.vector module (16 or newer)
+    & javac --add-modules jdk.incubator.vector -cp . com\harmonic\tuner\simd\*.java 2>&1 | Out-Null
+    if ($LASTEXITCODE -ne 0) {
+        Write-Host "Note: SIMD kernels not compiled, using the scalar versions." -ForegroundColor Yellow
+    }
     Write-Host "Compilation successful!`n" -ForegroundColor Green
 } else {
     Write-Host "Skipping compilation...`n" -ForegroundColor Yellow
 }
 
+# The SIMD kernels are only picked up when their module is added to the JVM
+if (Test-Path (Join-Path $srcDir "com\harmonic\tuner\simd\VectorKernels.class")) {
+    $env:JDK_JAVA_OPTIONS = "--add-modules=jdk.incubator.vector"
+}
+
 # Run the tuner
 Write-Host "Starting Harmonic Tuner...`n" -ForegroundColor Cyan
 & java com.harmonic.tuner.Main
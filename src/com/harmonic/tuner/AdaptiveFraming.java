@@ -0,0 +1,188 @@
+package com.harmonic.tuner;
+
+import java.util.Arrays;
+
+/**
+ * Sizes the analysis window to the note being played. A fixed window is a
+ * compromise: 4096 samples hold some 90 periods of a 1 kHz note, which only
+ * adds latency (the frame's centre lags the newest sample by half a window)
+ * and detection time, and under four periods of a low B string, too few for
+ * a reliable estimate.
+ *
+ * Frames start at the initial window. Once a clear pitch is detected the
+ * window moves to the smallest allowed size holding {@code periods} periods
+ * of it, within the configured bounds. Growing happens on the next frame, as
+ * a lower note needs the longer window at once; shrinking waits until
+ * {@value #SHRINK_AFTER} successive frames agree, so a vibrato or a noisy
+ * frame does not make the size flap. A note too low for the window shows
+ * no clear pitch in it, or a spurious peak at the shortest lag, so after
+ * {@value #LOST_AFTER} frames like that the window grows by one size, up to
+ * the largest. On {@link #reset()} (an onset, or a gap in the audio) it
+ * returns to the initial size for a fresh estimate, and does not grow again
+ * until the hops since then fill the initial window: frames straddling an
+ * onset mix two notes, often into a common subharmonic, and a longer window
+ * would only hold the old note longer.
+ *
+ * The search range follows the window: the lowest fundamental searched is
+ * the one with {@value #MIN_PERIODS} periods in the window, so the longest
+ * lag is half the window and a frame sized for a note can still see the
+ * note two octaves below it when the player moves down. The lag buffers of
+ * the estimator are sized for the largest window; since the FFT-based
+ * engines pick a transform to fit each frame, short windows cost
+ * proportionally less.
+ *
+ * Allowed sizes are the bounds and the powers of two and 1.5 * 2^k between
+ * them. Every size is read into one buffer of the largest, and the FFT-based
+ * engines build a transform of every power of two up front, so a resize
+ * allocates nothing. Not thread-safe; the analysis thread owns the policy.
+ */
+public final class AdaptiveFraming {
+    /** Periods of the current pitch the window is sized to hold. */
+    public static final double DEFAULT_PERIODS = 8;
+    /** Smallest window: about 23 ms at 44.1 kHz, still a few hops long. */
+    public static final int DEFAULT_MIN_WINDOW = 1024;
+    /** Largest window: eight periods of A0, the bottom of the piano, at 44.1 kHz. */
+    public static final int DEFAULT_MAX_WINDOW = 16384;
+
+    static final int SHRINK_AFTER = 3;
+    static final int LOST_AFTER = 4;
+    static final double MIN_PERIODS = 2;
+    private static final double MIN_CLARITY = 0.6;
+
+    private final int sampleRate;
+    private final int settleFrames;
+    private final int initialWindow;
+    private final double periods;
+    private final double lowestHz;
+    private final double highestHz;
+    private final int[] sizes;
+    private int window;
+    private int shrinkTo;
+    private int shrinkVotes;
+    private int lostFrames;
+    private int sinceReset;
+    private long resizes;
+
+    /**
+     * @param hop           samples between the ends of successive frames
+     * @param initialWindow window used until a pitch is found, clamped to the bounds
+     * @param lowestHz      lowest fundamental ever searched
+     * @param highestHz     highest fundamental searched
+     */
+    public AdaptiveFraming(int sampleRate, int hop, int minWindow, int initialWindow, int maxWindow, double periods,
+                           double lowestHz, double highestHz) {
+        if (minWindow <= 0 || maxWindow < minWindow) {
+            throw new IllegalArgumentException("invalid window bounds " + minWindow + ".." + maxWindow);
+        }
+        if (hop <= 0) throw new IllegalArgumentException("hop must be positive");
+        if (periods < MIN_PERIODS) throw new IllegalArgumentException("periods must be at least " + MIN_PERIODS);
+        PitchDetector.checkRange(lowestHz, highestHz);
+        this.sampleRate = sampleRate;
+        this.periods = periods;
+        this.lowestHz = lowestHz;
+        this.highestHz = highestHz;
+        this.sizes = sizes(minWindow, maxWindow);
+        this.initialWindow = fit(initialWindow);
+        this.window = this.initialWindow;
+        this.settleFrames = this.initialWindow / hop;
+        this.sinceReset = settleFrames;
+    }
+
+    // the bounds plus every 2^k and 1.5 * 2^k strictly between them, ascending
+    private static int[] sizes(int min, int max) {
+        int[] tmp = new int[64];
+        int n = 0;
+        tmp[n++] = min;
+        for (int p = Integer.highestOneBit(min); p > 0 && p < max; p <<= 1) {
+            if (p > min) tmp[n++] = p;
+            int mid = p + p / 2;
+            if (mid > min && mid < max) tmp[n++] = mid;
+        }
+        if (max > min) tmp[n++] = max;
+        return Arrays.copyOf(tmp, n);
+    }
+
+    // smallest allowed size >= length, or the largest
+    private int fit(int length) {
+        for (int s : sizes) {
+            if (s >= length) return s;
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    /** @return the window the next frame should use */
+    public int window() {
+        return window;
+    }
+
+    /** @return the largest window, which the ring buffer and the estimator must accept */
+    public int maxWindow() {
+        return sizes[sizes.length - 1];
+    }
+
+    /** @return lowest fundamental to search in a frame of the given length */
+    public double minHz(int length) {
+        return Math.min(highestHz / 2, Math.max(lowestHz, MIN_PERIODS * sampleRate / length));
+    }
+
+    /** @return highest fundamental to search */
+    public double maxHz() {
+        return highestHz;
+    }
+
+    /** @return number of window changes so far */
+    public long resizes() {
+        return resizes;
+    }
+
+    /** Set the search range of an estimator for frames of the given length. */
+    public void applyTo(PitchEstimator estimator, int length) {
+        estimator.setSearchRange(minHz(length), maxHz());
+    }
+
+    /**
+     * Take the result of a frame analysed at the current window into account.
+     *
+     * @return true if the window changed, i.e. the next frame has another size
+     */
+    public boolean update(PitchResult result) {
+        boolean settled = ++sinceReset > settleFrames;
+        // an estimate at the top of the range is the edge of the lag search, not a peak
+        if (!result.hasPitch() || result.clarity() < MIN_CLARITY || result.frequency() >= highestHz) {
+            shrinkVotes = 0;
+            if (++lostFrames < LOST_AFTER || !settled) return false;
+            lostFrames = 0;
+            return resize(fit(window + 1));
+        }
+        lostFrames = 0;
+        int wanted = fit((int) Math.ceil(periods * sampleRate / result.frequency()));
+        if (wanted > window) {
+            shrinkVotes = 0;
+            return settled && resize(wanted);
+        }
+        if (wanted == window) {
+            shrinkVotes = 0;
+            return false;
+        }
+        // shrink to the largest size the last few frames asked for
+        shrinkTo = shrinkVotes == 0 ? wanted : Math.max(shrinkTo, wanted);
+        if (++shrinkVotes < SHRINK_AFTER) return false;
+        shrinkVotes = 0;
+        return resize(shrinkTo);
+    }
+
+    /** Return to the initial window, e.g. on an onset or after a gap in the audio. */
+    public void reset() {
+        shrinkVotes = 0;
+        lostFrames = 0;
+        sinceReset = 0;
+        resize(initialWindow);
+    }
+
+    private boolean resize(int size) {
+        if (size == window) return false;
+        window = size;
+        resizes++;
+        return true;
+    }
+}
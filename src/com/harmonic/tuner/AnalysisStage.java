@@ -0,0 +1,160 @@
+package com.harmonic.tuner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer half of the capture pipeline: pulls overlapping windows from a
+ * {@link SampleRingBuffer}, runs the pitch estimator on each and hands the
+ * result to a listener, all on the thread that calls {@link #run()}. When the
+ * ring skips hops to catch up, the estimator is {@link PitchEstimator#reset()
+ * reset} so it does not carry state across the gap. Estimation time and the
+ * frame counts go to a {@link PipelineMetrics}.
+ *
+ * With a {@link SignalGate}, frames the gate skips are not analysed: the
+ * listener still gets them, as results without pitch, so downstream timing
+ * is unchanged. The estimator is reset before the next analysed frame,
+ * since it never saw the hops in between. On an onset the estimator is also
+ * reset and the listener told before the frame is analysed.
+ *
+ * With an {@link AdaptiveFraming}, each window is read at the length the
+ * policy asks for, into one buffer of the largest length, and the
+ * estimator's search range is set to match whenever the length changes.
+ * Onsets and skipped hops send the policy back to its initial window.
+ */
+public final class AnalysisStage implements Runnable {
+    /** Receives one callback per analysed window, on the analysis thread. */
+    public interface Listener {
+        /**
+         * @param result estimate for the window; reused, valid only during the call
+         * @param frame  index of the window since the stage started
+         */
+        void onFrame(PitchResult result, long frame);
+
+        /**
+         * A new note starts in this frame; called before its {@link #onFrame}.
+         * Per-note state such as smoothing history should be dropped here.
+         */
+        default void onOnset(long frame) {
+        }
+
+        /**
+         * The samples that are new in this frame's window, i.e. its last hop,
+         * before the frame is gated or analysed; consecutive hops continue
+         * the stream unless the ring dropped some. For consumers that follow
+         * every sample, such as a strobe.
+         *
+         * @param samples the window; valid only during the call
+         */
+        default void onHop(float[] samples, int offset, int length, long frame) {
+        }
+    }
+
+    private final SampleRingBuffer ring;
+    private final PitchEstimator estimator;
+    private final int window;
+    private final int hop;
+    private final Listener listener;
+    private final PipelineMetrics metrics;
+    private final SignalGate gate;
+    private final AdaptiveFraming framing;
+    private final float[] samples;
+    private final PitchResult result = new PitchResult();
+    private volatile boolean running = true;
+    private volatile long frames;
+
+    public AnalysisStage(SampleRingBuffer ring, PitchEstimator estimator, int window, Listener listener) {
+        this(ring, estimator, window, listener, new PipelineMetrics());
+    }
+
+    public AnalysisStage(SampleRingBuffer ring, PitchEstimator estimator, int window, Listener listener,
+                         PipelineMetrics metrics) {
+        this(ring, estimator, window, listener, metrics, null);
+    }
+
+    /**
+     * @param gate decides which frames are analysed; null to analyse all
+     */
+    public AnalysisStage(SampleRingBuffer ring, PitchEstimator estimator, int window, Listener listener,
+                         PipelineMetrics metrics, SignalGate gate) {
+        this(ring, estimator, window, listener, metrics, gate, null);
+    }
+
+    /**
+     * @param window  fixed window length; ignored when framing is given
+     * @param framing chooses the window length per frame; null for the fixed window.
+     *                The ring and the estimator must accept its largest window.
+     */
+    public AnalysisStage(SampleRingBuffer ring, PitchEstimator estimator, int window, Listener listener,
+                         PipelineMetrics metrics, SignalGate gate, AdaptiveFraming framing) {
+        this.ring = ring;
+        this.estimator = estimator;
+        this.window = window;
+        this.hop = ring.hop();
+        this.listener = listener;
+        this.metrics = metrics;
+        this.gate = gate;
+        this.framing = framing;
+        this.samples = new float[framing != null ? framing.maxWindow() : window];
+    }
+
+    @Override
+    public void run() {
+        long dropped = ring.droppedHops();
+        int applied = -1; // window the estimator's search range was last set for
+        boolean skipped = false; // frames went by without the estimator seeing them
+        while (running) {
+            int length = framing != null ? framing.window() : window;
+            if (!ring.read(samples, length, 100, TimeUnit.MILLISECONDS)) continue;
+            if (ring.droppedHops() != dropped) {
+                dropped = ring.droppedHops();
+                estimator.reset();
+                if (gate != null) gate.reset();
+                if (framing != null) framing.reset();
+            }
+            long frame = frames;
+            listener.onHop(samples, length - hop, hop, frame);
+            SignalGate.Decision decision = SignalGate.Decision.DETECT;
+            if (gate != null) {
+                long start = System.nanoTime();
+                decision = gate.update(samples, length);
+                metrics.record(PipelineMetrics.Stage.GATE, System.nanoTime() - start);
+            }
+            if (decision == SignalGate.Decision.SKIP) {
+                result.clear();
+                metrics.gated();
+                skipped = true;
+            } else {
+                if (decision == SignalGate.Decision.ONSET) {
+                    estimator.reset();
+                    // this frame is already read; the new note gets the initial window from the next one
+                    if (framing != null) framing.reset();
+                    listener.onOnset(frame);
+                } else if (skipped) {
+                    // e.g. the sliding or decimated history of the last analysed frame is stale
+                    estimator.reset();
+                }
+                skipped = false;
+                if (framing != null && applied != length) {
+                    framing.applyTo(estimator, length);
+                    applied = length;
+                }
+                long start = System.nanoTime();
+                estimator.estimate(samples, length, result);
+                metrics.record(PipelineMetrics.Stage.DETECT, System.nanoTime() - start);
+                if (framing != null) framing.update(result);
+            }
+            metrics.frame(result.hasPitch());
+            listener.onFrame(result, frame);
+            frames = frame + 1;
+        }
+    }
+
+    /** Ask the loop to exit after the current window. */
+    public void stop() {
+        running = false;
+    }
+
+    public long frames() {
+        return frames;
+    }
+}
@@ -0,0 +1,79 @@
+package com.harmonic.tuner;
+
+/**
+ * {@link PitchEstimator} wrapper around the {@link PitchDetector} autocorrelation
+ * method. Uses the FFT autocorrelation unless constructed in time-domain mode.
+ * Clarity is the normalized autocorrelation at the chosen lag.
+ */
+public final class AutocorrelationEstimator implements PitchEstimator {
+    private final int sampleRate;
+    private final int maxFrameSize;
+    private final FftAutocorrelator acf;
+    private final double[] lags;
+    private final double lowestHz;
+    private double minHz = DEFAULT_MIN_HZ;
+    private double maxHz = DEFAULT_MAX_HZ;
+
+    /**
+     * @param useFft true for the Wiener-Khinchin path, false for the direct
+     *               O(n * maxLag) loop
+     */
+    public AutocorrelationEstimator(int sampleRate, int maxFrameSize, boolean useFft) {
+        this(sampleRate, maxFrameSize, useFft, DEFAULT_MIN_HZ);
+    }
+
+    /**
+     * @param lowestHz lowest fundamental {@link #setSearchRange} may ask for;
+     *                 sizes the lag buffers
+     */
+    public AutocorrelationEstimator(int sampleRate, int maxFrameSize, boolean useFft, double lowestHz) {
+        this.sampleRate = sampleRate;
+        this.maxFrameSize = maxFrameSize;
+        this.lowestHz = lowestHz;
+        if (useFft) {
+            acf = PitchDetector.newAutocorrelator(maxFrameSize, sampleRate, lowestHz);
+            lags = null;
+        } else {
+            acf = null;
+            lags = new double[PitchDetector.maxLag(maxFrameSize, sampleRate, lowestHz) + 1];
+        }
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSearchRange(double minHz, double maxHz) {
+        PitchDetector.checkRange(minHz, maxHz);
+        this.minHz = Math.max(minHz, lowestHz);
+        this.maxHz = maxHz;
+    }
+
+    @Override
+    public void estimate(float[] audio, int length, PitchResult result) {
+        if (length <= 0 || length > maxFrameSize) {
+            result.clear();
+            return;
+        }
+        int maxLag = PitchDetector.maxLag(length, sampleRate, minHz);
+        int minLag = PitchDetector.minLag(sampleRate, maxHz);
+
+        Kernels k = Kernels.get();
+        double energy = k.dot(audio, 0, audio, 0, length);
+        if (energy <= 1e-8) {
+            result.clear();
+            return;
+        }
+
+        double[] r;
+        if (acf != null) {
+            r = acf.autocorrelate(audio, length, maxLag);
+        } else {
+            r = lags;
+            for (int lag = minLag; lag <= maxLag; lag++) r[lag] = k.dot(audio, 0, audio, lag, length - lag);
+        }
+        PitchDetector.peakFrequency(r, minLag, maxLag, energy, sampleRate, result);
+    }
+}
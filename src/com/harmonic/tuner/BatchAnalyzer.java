@@ -0,0 +1,400 @@
+package com.harmonic.tuner;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless pitch tracking of recorded material.
+ *
+ * <pre>
+ * java -cp out com.harmonic.tuner.BatchAnalyzer [options] file-or-directory...
+ *
+ *   --engine yin                   pitch engine: acf-fft (default), acf, acf-sliding, yin or mpm
+ *   --frame 4096                   analysis window in samples
+ *   --hop 1024                     samples between successive frames
+ *   --format csv|bin               output format (default csv)
+ *   --out DIR                      output directory (default: next to each input)
+ *   --target HZ                    report cents against HZ instead of the nearest note
+ *   --track                        report the pitch followed by a {@link PitchTracker} across
+ *                                  frames instead of each frame's own estimate
+ *   --strobe                       follow the target with a {@link StrobeAnalyzer} instead of
+ *                                  the pitch engine; one row per --hop samples (needs --target)
+ *   --threads N                    worker threads (default: available processors)
+ *   --rate 44100 --channels 1      format of headerless .raw/.pcm input (16-bit LE)
+ * </pre>
+ *
+ * Directories are searched recursively for .wav, .raw and .pcm files. Files
+ * are split across a fork-join pool; each worker owns its estimator and
+ * buffers, and input is read through {@link PcmFileReader}'s mapped regions.
+ * Long files are split further into ranges of {@value #RANGE_FRAMES} frames,
+ * each read by its own task from where its first window starts, so
+ * successive ranges overlap by a window minus a hop. Every range starts a
+ * fresh estimator, as at the start of a file; the ranges' estimates are
+ * written in order, and with --track the tracker follows them in order, so
+ * the track is the one a single pass would write. Strobe mode follows each
+ * file sample by sample on one worker.
+ *
+ * The CSV track has one row per frame: time_s, hz, cents, note, confidence,
+ * with empty fields for unvoiced frames. The binary track is big-endian:
+ * a header of int magic 'HTPT', int version (1), int sampleRate, int frame,
+ * int hop, followed by one 18-byte record per frame: float time_s, float hz
+ * (-1 if unvoiced), float cents, float confidence, short midi (-1 if unvoiced).
+ *
+ * With --track, hz and cents are the tracker's: frames where it holds a note
+ * through a dropout or an octave error show the held pitch, and frames
+ * before a note is confirmed are unvoiced; confidence stays the frame's.
+ *
+ * In strobe mode there is no analysis window: each row is a strobe reading
+ * taken at time_s, "unvoiced" means the target's partials were not found,
+ * confidence is the share of the signal power in them, and the binary
+ * header's frame is 0.
+ */
+public final class BatchAnalyzer {
+    static final int BINARY_MAGIC = 0x48545054; // "HTPT"
+    // frames per range task; about 50 s of audio at the default hop and 44.1 kHz
+    static final int RANGE_FRAMES = 2048;
+
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int frameSize = 4096;
+    private int hop = 1024;
+    private boolean binary;
+    private Path outDir;
+    private double targetHz;
+    private boolean strobe;
+    private boolean track;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int rawRate = 44100;
+    private int rawChannels = 1;
+
+    public static void main(String[] args) throws IOException {
+        BatchAnalyzer analyzer = new BatchAnalyzer();
+        List<Path> inputs = analyzer.parse(args);
+        if (inputs.isEmpty()) {
+            System.err.println("usage: BatchAnalyzer [options] file-or-directory...");
+            System.exit(2);
+        }
+        List<Path> files = collect(inputs);
+        long start = System.nanoTime();
+        analyzer.run(files);
+        System.err.printf(Locale.ROOT, "%d file(s) in %.2f s%n", files.size(), (System.nanoTime() - start) / 1e9);
+    }
+
+    private List<Path> parse(String[] args) {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) {
+                inputs.add(Paths.get(a));
+                continue;
+            }
+            if ("--track".equals(a)) {
+                track = true;
+                continue;
+            }
+            if ("--strobe".equals(a)) {
+                strobe = true;
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (a) {
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--frame": frameSize = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--format": binary = "bin".equalsIgnoreCase(val); break;
+                case "--out": outDir = Paths.get(val); break;
+                case "--target": targetHz = Double.parseDouble(val); break;
+                case "--threads": threads = Integer.parseInt(val); break;
+                case "--rate": rawRate = Integer.parseInt(val); break;
+                case "--channels": rawChannels = Integer.parseInt(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + a);
+            }
+        }
+        if (hop <= 0 || hop > frameSize) throw new IllegalArgumentException("hop must be in 1.." + frameSize);
+        if (strobe && !(targetHz > 0)) throw new IllegalArgumentException("--strobe needs --target");
+        return inputs;
+    }
+
+    private static List<Path> collect(List<Path> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path p : inputs) {
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> walk = Files.walk(p)) {
+                    files.addAll(walk.filter(Files::isRegularFile).filter(BatchAnalyzer::isAudio).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(p);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isAudio(Path p) {
+        String n = p.getFileName().toString().toLowerCase(Locale.ROOT);
+        return n.endsWith(".wav") || n.endsWith(".wave") || n.endsWith(".raw") || n.endsWith(".pcm");
+    }
+
+    void run(List<Path> files) {
+        if (outDir != null) {
+            try {
+                Files.createDirectories(outDir);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try {
+            pool.invoke(new FileTask(files, 0, files.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Splits the file list in halves until one file remains, then analyses it. */
+    private final class FileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+        FileTask(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new FileTask(files, from, mid), new FileTask(files, mid, to));
+            } else if (to > from) {
+                Path file = files.get(from);
+                try {
+                    analyze(file);
+                } catch (IOException | RuntimeException ex) {
+                    System.err.println(file + ": " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private void analyze(Path file) throws IOException {
+        if (strobe) {
+            analyzeStrobe(file);
+            return;
+        }
+        long start = System.nanoTime();
+        try (PcmFileReader in = PcmFileReader.open(file, rawRate, rawChannels);
+             TrackWriter out = openWriter(file, in.sampleRate())) {
+            int rate = in.sampleRate();
+            long frames = in.totalFrames() < frameSize ? 0 : (in.totalFrames() - frameSize) / hop + 1;
+            PitchResult result = new PitchResult();
+            PitchTracker tracker = track ? new PitchTracker((double) hop / rate) : null;
+
+            // a batch of ranges at a time, so the estimates held for the merge stay bounded
+            long batch = (long) RANGE_FRAMES * Math.max(1, threads);
+            long voiced = 0;
+            for (long first = 0; first < frames; first += batch) {
+                List<RangeTask> ranges = new ArrayList<>();
+                for (long f = first; f < Math.min(frames, first + batch); f += RANGE_FRAMES) {
+                    ranges.add(new RangeTask(file, rate, f, (int) Math.min(RANGE_FRAMES, frames - f)));
+                }
+                ForkJoinTask.invokeAll(ranges);
+                for (RangeTask range : ranges) {
+                    for (int i = 0; i < range.count; i++) {
+                        range.result(i, result);
+                        double hz = tracker != null ? tracker.update(result) : result.frequency();
+                        double cents = 0;
+                        int midi = -1;
+                        if (hz > 0) {
+                            midi = Notes.nearestMidi(hz);
+                            cents = targetHz > 0 ? Notes.cents(hz, targetHz) : Notes.centsFromNearest(hz);
+                            voiced++;
+                        }
+                        out.frame((double) (range.first + i) * hop / rate, hz, cents, midi, result.clarity());
+                    }
+                }
+            }
+            double seconds = (double) in.totalFrames() / rate;
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.err.printf(Locale.ROOT, "%s: %d frames, %.1f%% voiced, %.1f s audio, %.0fx realtime%n",
+                    file, frames, frames == 0 ? 0.0 : 100.0 * voiced / frames, seconds, seconds / Math.max(elapsed, 1e-9));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Estimates for count frames from frame first of one file, read through a
+     * reader and estimator of its own. Keeps every candidate when tracking,
+     * for the tracker that follows the merged frames.
+     */
+    private final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final long first;
+        final int count;
+        private final Path file;
+        private final int rate;
+        private final int slots;
+        private final double[] clarity;
+        private final double[] hz;
+        private final double[] score;
+        private final byte[] candidates;
+
+        RangeTask(Path file, int rate, long first, int count) {
+            this.file = file;
+            this.rate = rate;
+            this.first = first;
+            this.count = count;
+            this.slots = track ? PitchResult.MAX_CANDIDATES : 1;
+            this.clarity = new double[count];
+            this.hz = new double[count * slots];
+            this.score = new double[count * slots];
+            this.candidates = new byte[count];
+        }
+
+        @Override
+        protected void compute() {
+            try (PcmFileReader in = PcmFileReader.open(file, rawRate, rawChannels)) {
+                in.seek(first * hop);
+                PitchEstimator estimator = engine.create(rate, frameSize);
+                PitchResult result = new PitchResult();
+                float[] window = new float[frameSize];
+                in.read(window, 0, frameSize);
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        System.arraycopy(window, hop, window, 0, frameSize - hop);
+                        in.read(window, frameSize - hop, hop);
+                    }
+                    estimator.estimate(window, frameSize, result);
+                    clarity[i] = result.clarity();
+                    int n = Math.min(slots, result.candidateCount());
+                    candidates[i] = (byte) n;
+                    for (int c = 0; c < n; c++) {
+                        hz[i * slots + c] = result.candidateFrequency(c);
+                        score[i * slots + c] = result.candidateScore(c);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        // the estimate of frame first + i, as the estimator gave it
+        void result(int i, PitchResult result) {
+            int n = candidates[i];
+            result.set(n > 0 ? hz[i * slots] : -1, clarity[i]);
+            for (int c = 1; c < n; c++) result.addCandidate(hz[i * slots + c], score[i * slots + c]);
+        }
+    }
+
+    private void analyzeStrobe(Path file) throws IOException {
+        long start = System.nanoTime();
+        try (PcmFileReader in = PcmFileReader.open(file, rawRate, rawChannels);
+             TrackWriter out = openWriter(file, in.sampleRate())) {
+            int rate = in.sampleRate();
+            StrobeAnalyzer analyzer = new StrobeAnalyzer(rate, targetHz, hop);
+            float[] block = new float[hop];
+            long[] counts = new long[2]; // readings, locked readings
+            StrobeAnalyzer.Listener writer = (s, sample) -> {
+                double hz = s.frequency();
+                try {
+                    out.frame((double) sample / rate, s.locked() ? hz : -1, s.cents(),
+                            s.locked() ? Notes.nearestMidi(hz) : -1, s.clarity());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                counts[0]++;
+                if (s.locked()) counts[1]++;
+            };
+            for (int n; (n = in.read(block, 0, hop)) > 0; ) analyzer.process(block, 0, n, writer);
+            double seconds = (double) in.totalFrames() / rate;
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.err.printf(Locale.ROOT, "%s: %d strobe readings, %.1f%% locked, %.1f s audio, %.0fx realtime%n",
+                    file, counts[0], counts[0] == 0 ? 0.0 : 100.0 * counts[1] / counts[0], seconds,
+                    seconds / Math.max(elapsed, 1e-9));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private TrackWriter openWriter(Path input, int sampleRate) throws IOException {
+        Path dir = outDir != null ? outDir : input.toAbsolutePath().getParent();
+        Path target = dir.resolve(input.getFileName() + (binary ? ".pitch.bin" : ".pitch.csv"));
+        return binary ? new BinaryWriter(target, sampleRate, strobe ? 0 : frameSize, hop) : new CsvWriter(target);
+    }
+
+    private interface TrackWriter extends Closeable {
+        void frame(double time, double hz, double cents, int midi, double confidence) throws IOException;
+    }
+
+    private static final class CsvWriter implements TrackWriter {
+        private final Writer out;
+
+        CsvWriter(Path file) throws IOException {
+            out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.US_ASCII), 1 << 16);
+            out.write("time_s,hz,cents,note,confidence\n");
+        }
+
+        @Override
+        public void frame(double time, double hz, double cents, int midi, double confidence) throws IOException {
+            if (hz > 0) {
+                out.write(String.format(Locale.ROOT, "%.4f,%.3f,%.2f,%s,%.3f%n", time, hz, cents, Notes.name(midi), confidence));
+            } else {
+                out.write(String.format(Locale.ROOT, "%.4f,,,,%.3f%n", time, confidence));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static final class BinaryWriter implements TrackWriter {
+        private final DataOutputStream out;
+
+        BinaryWriter(Path file, int sampleRate, int frame, int hop) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            out.writeInt(BINARY_MAGIC);
+            out.writeInt(1);
+            out.writeInt(sampleRate);
+            out.writeInt(frame);
+            out.writeInt(hop);
+        }
+
+        @Override
+        public void frame(double time, double hz, double cents, int midi, double confidence) throws IOException {
+            out.writeFloat((float) time);
+            out.writeFloat((float) hz);
+            out.writeFloat((float) cents);
+            out.writeFloat((float) confidence);
+            out.writeShort(midi);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.harmonic.tuner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Keeps the raw capture blocks of a session on disk so it can be replayed
+ * later with {@link ReplayPcmSource}, e.g. to reproduce a problem seen in
+ * the field.
+ *
+ * Blocks are appended to memory-mapped segment files in a directory,
+ * {@code capture-00000.seg}, {@code capture-00001.seg} and so on. A segment
+ * is mapped at its full size when opened, so {@link #write} is a copy into
+ * the page cache plus three header stores: no system call, no allocation and
+ * no lock on the capture thread. The operating system writes the pages back
+ * in its own time. Only rotating to the next segment, about every three
+ * minutes of mono 44.1 kHz audio at the default size, opens and maps a file.
+ *
+ * A segment starts with a {@value #HEADER_BYTES}-byte header, little-endian:
+ * int magic 'TCAP', int version (1), int sampleRate, int channels, int
+ * segment index, int 0, long wall-clock start of the recording in epoch
+ * milliseconds, long index of the segment's first sample frame, zero
+ * padding. Records follow, each 8-byte aligned: int length in bytes, int 0,
+ * long capture time in nanoseconds since the recording started, long index
+ * of the block's first sample frame, then the block's signed 16-bit PCM,
+ * zero-padded. The length is stored last, and the unused tail of a segment
+ * is zero, so readers stop at the first record of length 0; a recording cut
+ * off by a crash is readable up to its last complete block. Closed segments
+ * are truncated to their used length where the platform allows truncating a
+ * mapped file.
+ *
+ * Not thread-safe; the capture thread owns the recorder.
+ */
+public final class CaptureRecorder implements Closeable {
+    /** Default segment size: about three minutes of mono 16-bit audio at 44.1 kHz. */
+    public static final int DEFAULT_SEGMENT_BYTES = 16 << 20;
+
+    static final int MAGIC = 0x50414354; // "TCAP" in file byte order
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_HEADER_BYTES = 24;
+    static final String SEGMENT_PREFIX = "capture-";
+    static final String SEGMENT_SUFFIX = ".seg";
+    private static final int MIN_SEGMENT_BYTES = 64 << 10;
+
+    private final Path directory;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameBytes;
+    private final int segmentBytes;
+    private final long startEpochMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private int position;
+    private long frames;
+    private long bytes;
+
+    /**
+     * Start a recording in directory, which is created if needed and must
+     * not already hold segments.
+     *
+     * @param segmentBytes size of each segment file; a single write may not exceed it
+     */
+    public CaptureRecorder(Path directory, int sampleRate, int channels, int segmentBytes) throws IOException {
+        if (channels <= 0 || sampleRate <= 0) throw new IllegalArgumentException("Invalid format: " + channels + " ch @ " + sampleRate + " Hz");
+        if (segmentBytes < MIN_SEGMENT_BYTES) throw new IllegalArgumentException("segmentBytes must be at least " + MIN_SEGMENT_BYTES);
+        this.directory = directory;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frameBytes = 2 * channels;
+        this.segmentBytes = segmentBytes & ~7;
+        Files.createDirectories(directory);
+        openSegment();
+    }
+
+    /** @return file name of segment index */
+    static String segmentName(int index) {
+        return String.format(Locale.ROOT, "%s%05d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Append one capture block of whole sample frames.
+     *
+     * @param nanos {@link System#nanoTime()} at which the block was captured
+     */
+    public void write(byte[] pcm, int offset, int length, long nanos) throws IOException {
+        if (segment == null) throw new IOException("Recorder is closed");
+        if (length <= 0) return;
+        if (length % frameBytes != 0) throw new IllegalArgumentException(length + " bytes is not a whole number of frames");
+        int size = RECORD_HEADER_BYTES + ((length + 7) & ~7);
+        if (HEADER_BYTES + size > segmentBytes) {
+            throw new IllegalArgumentException("Block of " + length + " bytes does not fit a " + segmentBytes + "-byte segment");
+        }
+        if (position + size > segmentBytes) {
+            finishSegment();
+            openSegment();
+        }
+        MappedByteBuffer b = segment;
+        int p = position;
+        b.putLong(p + 8, nanos - startNanos);
+        b.putLong(p + 16, frames);
+        b.position(p + RECORD_HEADER_BYTES);
+        b.put(pcm, offset, length);
+        b.putInt(p, length);
+        position = p + size;
+        frames += length / frameBytes;
+        bytes += length;
+    }
+
+    /** @return sample frames recorded so far */
+    public long frames() {
+        return frames;
+    }
+
+    /** @return PCM bytes recorded so far, excluding headers */
+    public long bytes() {
+        return bytes;
+    }
+
+    /** @return segment files started so far */
+    public int segments() {
+        return segmentIndex + 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (segment != null) finishSegment();
+    }
+
+    private void openSegment() throws IOException {
+        int index = segmentIndex + 1;
+        FileChannel ch = FileChannel.open(directory.resolve(segmentName(index)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(0, MAGIC);
+            b.putInt(4, VERSION);
+            b.putInt(8, sampleRate);
+            b.putInt(12, channels);
+            b.putInt(16, index);
+            b.putLong(24, startEpochMillis);
+            b.putLong(32, frames);
+            channel = ch;
+            segment = b;
+            segmentIndex = index;
+            position = HEADER_BYTES;
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    private void finishSegment() throws IOException {
+        segment = null;
+        try {
+            channel.truncate(position);
+        } catch (IOException ignored) {
+            // Windows refuses while the mapping is alive; readers skip the zero tail
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.harmonic.tuner;
+
+/**
+ * Two-stage search for long windows and low notes: find the pitch on a copy
+ * of the frame decimated by 2 or 4, then refine it at full rate over only
+ * the few lags around the coarse candidate.
+ *
+ * The coarse pass costs roughly 1/factor of a full-rate search and its lag
+ * range shrinks by the same factor, which is what makes windows of 8k-16k
+ * samples with fundamentals down to ~27 Hz affordable. The refinement
+ * evaluates the normalized square difference n(tau) = 2 r(tau) / m(tau) (as
+ * in {@link MpmEstimator}) directly over {@code +/- 2 * factor} lags around
+ * the candidate, so it adds a few dozen dot products per frame whatever the
+ * window, and unlike the raw autocorrelation its peak is not pulled towards
+ * shorter lags when only a few periods fit in the window. Clarity is
+ * n(tau) at the refined peak.
+ *
+ * Successive frames are expected to overlap, advancing by the hop given to
+ * the constructor. The decimated frame is kept as a sliding history and only
+ * the newest hop of each frame is filtered, with the filter state carried
+ * from the previous frame. The first frame, a change of length and
+ * {@link #reset()} re-filter the whole frame.
+ */
+public final class CoarseToFineEstimator implements PitchEstimator {
+    private final int sampleRate;
+    private final int maxFrameSize;
+    private final int hop;
+    private final int factor;
+    private final PolyphaseDecimator decimator;
+    private final PitchEstimator coarse;
+    private final float[] decimated;
+    private final double[] prefix;
+    private final double[] nsdf;
+    private final PitchResult coarseResult = new PitchResult();
+
+    private double minHz = DEFAULT_MIN_HZ;
+    private double maxHz = DEFAULT_MAX_HZ;
+    private int primedLength;
+
+    /**
+     * @param hop          samples between the starts of successive frames
+     * @param factor       decimation factor for the coarse pass, 2 or 4
+     * @param coarseEngine engine for the coarse pass
+     * @param lowestHz     lowest fundamental {@link #setSearchRange} may ask for,
+     *                     and the initial lower bound of the search
+     */
+    public CoarseToFineEstimator(int sampleRate, int maxFrameSize, int hop, int factor,
+                                 PitchEngine coarseEngine, double lowestHz) {
+        if (factor != 2 && factor != 4) throw new IllegalArgumentException("factor must be 2 or 4");
+        if (hop <= 0 || hop > maxFrameSize) throw new IllegalArgumentException("hop must be in 1.." + maxFrameSize);
+        this.sampleRate = sampleRate;
+        this.maxFrameSize = maxFrameSize;
+        this.hop = hop;
+        this.factor = factor;
+        this.decimator = new PolyphaseDecimator(factor, 16);
+        this.coarse = coarseEngine.create(sampleRate / factor, maxFrameSize / factor, lowestHz);
+        this.decimated = new float[maxFrameSize / factor];
+        this.prefix = new double[maxFrameSize + 1];
+        this.nsdf = new double[4 * factor + 4];
+        this.minHz = lowestHz;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSearchRange(double minHz, double maxHz) {
+        PitchDetector.checkRange(minHz, maxHz);
+        this.minHz = minHz;
+        this.maxHz = maxHz;
+    }
+
+    @Override
+    public void reset() {
+        primedLength = 0;
+    }
+
+    @Override
+    public void estimate(float[] audio, int length, PitchResult result) {
+        if (length <= 0 || length > maxFrameSize) {
+            result.clear();
+            return;
+        }
+        int n = decimate(audio, length);
+
+        // leave headroom below the decimated Nyquist for the filter's transition band
+        coarse.setSearchRange(minHz, Math.min(maxHz, 0.4 * sampleRate / factor));
+        coarse.estimate(decimated, n, coarseResult);
+        if (!coarseResult.hasPitch()) {
+            result.clear();
+            return;
+        }
+
+        if (!refine(audio, length, (double) sampleRate / coarseResult.frequency(), result)) {
+            result.set(coarseResult.frequency(), coarseResult.clarity());
+        }
+    }
+
+    // full-rate search of the lags around the coarse candidate; false if no interior peak
+    private boolean refine(float[] audio, int length, double candidate, PitchResult result) {
+        int margin = 2 * factor;
+        int lo = Math.max(PitchDetector.minLag(sampleRate, maxHz), (int) candidate - margin);
+        int hi = Math.min(PitchDetector.maxLag(length, sampleRate, minHz), (int) candidate + margin + 1);
+        if (hi - lo < 2) return false;
+
+        prefix[0] = 0;
+        for (int i = 0; i < length; i++) prefix[i + 1] = prefix[i] + audio[i] * audio[i];
+        Kernels k = Kernels.get();
+        int best = -1;
+        for (int tau = lo; tau <= hi; tau++) {
+            double r = k.dot(audio, 0, audio, tau, length - tau);
+            double m = prefix[length - tau] + (prefix[length] - prefix[tau]);
+            double v = m > 0 ? 2 * r / m : 0;
+            nsdf[tau - lo] = v;
+            if (best < 0 || v > nsdf[best - lo]) best = tau;
+        }
+        if (best == lo || best == hi) return false;
+
+        double peak = nsdf[best - lo];
+        double lag = PitchDetector.refine(best, nsdf[best - lo - 1], peak, nsdf[best - lo + 1]);
+        double freq = PitchDetector.toFrequency(lag, sampleRate);
+        if (freq <= 0) return false;
+        result.set(freq, Math.max(0, Math.min(1, peak)));
+        return true;
+    }
+
+    // bring decimated[0..length/factor) up to date with audio[0..length)
+    private int decimate(float[] audio, int length) {
+        int n = length / factor;
+        if (length != primedLength || hop % factor != 0) {
+            decimator.reset();
+            decimator.process(audio, 0, n * factor, decimated, 0);
+            primedLength = length;
+            return n;
+        }
+        int step = hop / factor;
+        System.arraycopy(decimated, step, decimated, 0, n - step);
+        decimator.process(audio, n * factor - hop, hop, decimated, n - step);
+        return n;
+    }
+}
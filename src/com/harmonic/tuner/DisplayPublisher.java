@@ -0,0 +1,106 @@
+package com.harmonic.tuner;
+
+import javax.swing.Timer;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latest-value hand-off from the analysis thread to the Swing UI.
+ *
+ * The analysis thread calls {@link #publish} once per frame; it packs the
+ * values into a single atomic word and never touches the event queue. A Swing
+ * {@link Timer} running at the display refresh rate picks up the newest
+ * snapshot and calls the renderer on the EDT, but only when the values
+ * changed since the last repaint. Frames published faster than the display
+ * can show them are overwritten and counted as coalesced. The delay between
+ * the newest publish and the timer picking it up is recorded as
+ * {@link PipelineMetrics.Stage#EDT_LAG}.
+ */
+public final class DisplayPublisher {
+    /** Draws a snapshot; always called on the EDT. */
+    public interface Renderer {
+        /** @param frequency smoothed frequency in Hz, or a value <= 0 for no pitch */
+        void render(float frequency, float clarity);
+    }
+
+    private static final int DEFAULT_REFRESH_HZ = 60;
+
+    private final Renderer renderer;
+    private final PipelineMetrics metrics;
+    private final Timer timer;
+    private final AtomicLong latest = new AtomicLong(pack(-1, 0));
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private volatile long publishedAt;
+
+    // EDT only
+    private long seenCount;
+    private long shownBits;
+    private boolean shown;
+
+    public DisplayPublisher(Renderer renderer) {
+        this(renderer, new PipelineMetrics());
+    }
+
+    public DisplayPublisher(Renderer renderer, PipelineMetrics metrics) {
+        this.renderer = renderer;
+        this.metrics = metrics;
+        this.timer = new Timer(Math.max(1, 1000 / refreshRate()), e -> tick());
+        this.timer.setCoalesce(true);
+    }
+
+    /** Start repainting; call on the EDT. */
+    public void start() {
+        timer.start();
+    }
+
+    /** Stop repainting; call on the EDT. The last snapshot stays on screen. */
+    public void stop() {
+        timer.stop();
+    }
+
+    /** Store the newest values; safe from any thread and allocation-free. */
+    public void publish(double frequency, double clarity) {
+        latest.set(pack((float) frequency, (float) clarity));
+        publishedAt = System.nanoTime();
+        published.incrementAndGet();
+    }
+
+    /** @return frames handed to {@link #publish} */
+    public long publishedFrames() {
+        return published.get();
+    }
+
+    /** @return published frames that were superseded before the display picked them up */
+    public long coalescedFrames() {
+        return coalesced.get();
+    }
+
+    private void tick() {
+        long count = published.get();
+        if (count == seenCount) return;
+        metrics.record(PipelineMetrics.Stage.EDT_LAG, System.nanoTime() - publishedAt);
+        long frames = count - seenCount;
+        seenCount = count;
+        if (frames > 1) coalesced.addAndGet(frames - 1);
+
+        long bits = latest.get();
+        if (shown && bits == shownBits) return;
+        shown = true;
+        shownBits = bits;
+        renderer.render(Float.intBitsToFloat((int) (bits >>> 32)), Float.intBitsToFloat((int) bits));
+    }
+
+    private static long pack(float frequency, float clarity) {
+        return ((long) Float.floatToIntBits(frequency) << 32) | (Float.floatToIntBits(clarity) & 0xFFFFFFFFL);
+    }
+
+    // refresh rate of the default screen, or 60 Hz when unknown or headless
+    private static int refreshRate() {
+        if (GraphicsEnvironment.isHeadless()) return DEFAULT_REFRESH_HZ;
+        DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode();
+        int hz = mode.getRefreshRate();
+        return hz == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_HZ : hz;
+    }
+}
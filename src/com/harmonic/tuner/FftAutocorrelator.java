@@ -0,0 +1,75 @@
+package com.harmonic.tuner;
+
+/**
+ * Autocorrelation via the Wiener-Khinchin theorem: zero-pad the frame, take a
+ * real FFT, form the power spectrum and transform back. The frame is padded
+ * to at least {@code n + maxLag} samples so the result is the linear (not
+ * circular) autocorrelation, i.e. the same sums the time-domain loop in
+ * {@link PitchDetector#detect(float[], int)} computes.
+ *
+ * Each call uses the smallest power-of-two transform that holds
+ * {@code n + lagLimit} samples, so short frames and narrow lag ranges, as
+ * {@link AdaptiveFraming} produces for treble notes, cost proportionally
+ * less than the largest frame. A transform of every such size is built in
+ * the constructor along with the work arrays, so a call costs O(N log N)
+ * with no allocation. Instances are not thread-safe.
+ */
+public final class FftAutocorrelator {
+    private static final int MIN_FFT_SIZE = 64;
+
+    private final int maxFrameSize;
+    private final int maxLag;
+    private final RealFft[] ffts; // ffts[i] has size MIN_FFT_SIZE << i
+    private final double[] re;
+    private final double[] im;
+    private final double[] acf;
+
+    /**
+     * @param maxFrameSize largest frame that will be passed to {@link #autocorrelate}
+     * @param maxLag largest lag that will be requested
+     */
+    public FftAutocorrelator(int maxFrameSize, int maxLag) {
+        if (maxFrameSize <= 0 || maxLag < 0) {
+            throw new IllegalArgumentException("frame size and lag must be positive");
+        }
+        this.maxFrameSize = maxFrameSize;
+        this.maxLag = maxLag;
+        int largest = Math.max(MIN_FFT_SIZE, RealFft.sizeFor(maxFrameSize + maxLag));
+        this.ffts = new RealFft[Integer.numberOfTrailingZeros(largest / MIN_FFT_SIZE) + 1];
+        for (int i = 0; i < ffts.length; i++) ffts[i] = new RealFft(MIN_FFT_SIZE << i);
+        re = new double[largest / 2 + 1];
+        im = new double[largest / 2 + 1];
+        acf = new double[largest];
+    }
+
+    public int maxFrameSize() {
+        return maxFrameSize;
+    }
+
+    public int maxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Compute r[lag] = sum over i of audio[i] * audio[i + lag] for lags 0..lagLimit,
+     * where both indices lie in [0, n).
+     *
+     * @return internal array holding the result in indices 0..lagLimit; it is
+     *         overwritten by the next call
+     */
+    public double[] autocorrelate(float[] audio, int n, int lagLimit) {
+        if (n > maxFrameSize || lagLimit > maxLag) {
+            throw new IllegalArgumentException("frame " + n + "/lag " + lagLimit
+                    + " exceeds capacity " + maxFrameSize + "/" + maxLag);
+        }
+        int size = Math.max(MIN_FFT_SIZE, RealFft.sizeFor(n + lagLimit));
+        RealFft fft = ffts[Integer.numberOfTrailingZeros(size / MIN_FFT_SIZE)];
+        fft.forward(audio, n, re, im);
+        for (int k = 0; k <= size / 2; k++) {
+            re[k] = re[k] * re[k] + im[k] * im[k];
+            im[k] = 0;
+        }
+        fft.inverse(re, im, acf);
+        return acf;
+    }
+}
@@ -0,0 +1,184 @@
+package com.harmonic.tuner;
+
+import java.util.Arrays;
+
+/**
+ * Time-windowed average of recent frequency estimates with a fixed memory
+ * footprint.
+ *
+ * Readings are kept in parallel primitive rings of values and timestamps;
+ * each {@link #add} expires everything older than the window and returns the
+ * mean, median or trimmed mean of what is left. The mean comes from a running
+ * sum (resummed once per ring cycle to bound rounding drift). Median and
+ * trimmed mean read from a sorted copy kept up to date by binary-search
+ * insertion and removal; the trimmed mean keeps a running sum of the middle
+ * part of that copy, adjusted at the trim boundaries as readings come and
+ * go, so every statistic is read in O(1). Keeping the copy sorted costs a
+ * binary search and a shift of up to capacity doubles per reading, a
+ * memory move of a few hundred values at the usual window and frame rate,
+ * traded for a flat array over a balanced tree. When more readings arrive
+ * within one window than the ring holds, the oldest are dropped early.
+ * Nothing is allocated after construction. Not thread-safe.
+ */
+public final class FrequencySmoother {
+    public enum Mode {
+        MEAN,
+        MEDIAN,
+        /** Mean after discarding a fraction of the lowest and highest readings. */
+        TRIMMED_MEAN
+    }
+
+    private final long windowNanos;
+    private final Mode mode;
+    private final double trim;
+
+    private final double[] values;
+    private final long[] times;
+    private final double[] sorted;
+    private int head;  // index of the oldest reading
+    private int count;
+    private double sum;
+    private int evictions;
+    // trimmed mean: sorted[keptFrom..keptTo) is the part kept, keptSum its sum
+    private int keptFrom;
+    private int keptTo;
+    private double keptSum;
+
+    /**
+     * @param windowNanos  readings older than this are expired
+     * @param capacity     maximum readings held; size it to the frame rate times the window
+     * @param mode         averaging statistic
+     * @param trimFraction fraction dropped from each end in {@link Mode#TRIMMED_MEAN}, in [0, 0.5)
+     */
+    public FrequencySmoother(long windowNanos, int capacity, Mode mode, double trimFraction) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+        if (trimFraction < 0 || trimFraction >= 0.5) throw new IllegalArgumentException("trim fraction must be in [0, 0.5)");
+        this.windowNanos = windowNanos;
+        this.mode = mode;
+        this.trim = trimFraction;
+        this.values = new double[capacity];
+        this.times = new long[capacity];
+        this.sorted = mode == Mode.MEAN ? null : new double[capacity];
+    }
+
+    /**
+     * Add a reading (ignored unless freq > 0) and expire old ones.
+     *
+     * @param nowNanos monotonic timestamp of the reading, e.g. {@link System#nanoTime()}
+     * @return the smoothed frequency over the window, or 0 if it is empty
+     */
+    public double add(double freq, long nowNanos) {
+        while (count > 0 && nowNanos - times[head] > windowNanos) evictOldest();
+        if (freq > 0) {
+            if (count == values.length) evictOldest();
+            int tail = (head + count) % values.length;
+            values[tail] = freq;
+            times[tail] = nowNanos;
+            count++;
+            sum += freq;
+            if (sorted != null) insertSorted(freq);
+        }
+        return value();
+    }
+
+    /** @return the smoothed frequency over the current contents, or 0 if empty */
+    public double value() {
+        if (count == 0) return 0;
+        switch (mode) {
+            case MEDIAN:
+                int mid = count >>> 1;
+                return (count & 1) == 1 ? sorted[mid] : 0.5 * (sorted[mid - 1] + sorted[mid]);
+            case TRIMMED_MEAN:
+                return keptSum / (keptTo - keptFrom);
+            default:
+                return sum / count;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void clear() {
+        head = 0;
+        count = 0;
+        sum = 0;
+        evictions = 0;
+        keptFrom = 0;
+        keptTo = 0;
+        keptSum = 0;
+    }
+
+    private void evictOldest() {
+        double v = values[head];
+        head = (head + 1) % values.length;
+        count--;
+        if (sorted != null) removeSorted(v);
+        if (++evictions >= values.length || count == 0) {
+            resum();
+        } else {
+            sum -= v;
+        }
+    }
+
+    private void resum() {
+        evictions = 0;
+        double s = 0;
+        for (int i = 0, j = head; i < count; i++, j = (j + 1) % values.length) s += values[j];
+        sum = s;
+        if (mode == Mode.TRIMMED_MEAN) {
+            s = 0;
+            for (int i = keptFrom; i < keptTo; i++) s += sorted[i];
+            keptSum = s;
+        }
+    }
+
+    private void insertSorted(double v) {
+        int n = count - 1; // entries already in sorted[]
+        int pos = search(v, n);
+        if (pos < 0) pos = -pos - 1;
+        System.arraycopy(sorted, pos, sorted, pos + 1, n - pos);
+        sorted[pos] = v;
+        if (mode != Mode.TRIMMED_MEAN) return;
+        // keep the same readings in the kept range, then move its ends to the new trim
+        if (pos <= keptFrom) {
+            keptFrom++;
+            keptTo++;
+        } else if (pos < keptTo) {
+            keptSum += v;
+            keptTo++;
+        }
+        trimKept();
+    }
+
+    private void removeSorted(double v) {
+        int n = count + 1; // entries still in sorted[]
+        int pos = search(v, n);
+        if (pos < 0) return; // cannot happen, every value was inserted
+        System.arraycopy(sorted, pos + 1, sorted, pos, n - pos - 1);
+        if (mode != Mode.TRIMMED_MEAN) return;
+        if (pos < keptFrom) {
+            keptFrom--;
+            keptTo--;
+        } else if (pos < keptTo) {
+            keptSum -= v;
+            keptTo--;
+        }
+        trimKept();
+    }
+
+    // move the ends of the kept range to the trim for the current count; at most a step each
+    private void trimKept() {
+        int drop = (int) (count * trim);
+        int from = drop;
+        int to = count - drop;
+        while (keptFrom > from) keptSum += sorted[--keptFrom];
+        while (keptFrom < from) keptSum -= sorted[keptFrom++];
+        while (keptTo < to) keptSum += sorted[keptTo++];
+        while (keptTo > to) keptSum -= sorted[--keptTo];
+    }
+
+    private int search(double v, int n) {
+        return Arrays.binarySearch(sorted, 0, n, v);
+    }
+}
@@ -0,0 +1,114 @@
+package com.harmonic.tuner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The inner loops shared by the capture path and the time-domain
+ * detectors: 16-bit PCM decoding and the float dot product behind every
+ * autocorrelation lag.
+ *
+ * {@link #get()} returns the fastest implementation this JVM can run. When
+ * the optional {@code com.harmonic.tuner.simd} package has been compiled and
+ * the {@code jdk.incubator.vector} module is present
+ * ({@code --add-modules jdk.incubator.vector}), that is the Vector API
+ * version, which keeps several float accumulators per SIMD lane. Otherwise,
+ * or with {@code -Dtuner.simd=false}, it is the scalar version, which
+ * accumulates each float product in double exactly like the original loops.
+ * The two agree to float rounding; see {@code bench.CorrectnessCheck}.
+ */
+public abstract class Kernels {
+    private static final Kernels SCALAR = new Scalar();
+    private static final Kernels SELECTED = select();
+
+    protected Kernels() {
+    }
+
+    /** @return the implementation used by the tuner */
+    public static Kernels get() {
+        return SELECTED;
+    }
+
+    /** @return the portable reference implementation */
+    public static Kernels scalar() {
+        return SCALAR;
+    }
+
+    /** @return short description for logs and benchmark output */
+    public abstract String name();
+
+    /**
+     * Decode samples signed 16-bit little-endian values starting at
+     * src[srcOffset] into dst[dstOffset..], scaled to [-1, 1).
+     */
+    public abstract void pcm16ToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples);
+
+    /**
+     * Decode samples signed 16-bit little-endian values starting at absolute
+     * index srcIndex of src, which may be a direct buffer, into dst[dstOffset..].
+     * Neither the position nor the byte order of src is used or changed.
+     * Heap buffers go through the array kernel; direct buffers are read with
+     * {@link ByteBuffer#getShort(int)}, which the JIT compiles to plain loads.
+     */
+    public void pcm16ToFloat(ByteBuffer src, int srcIndex, float[] dst, int dstOffset, int samples) {
+        if (src.hasArray()) {
+            pcm16ToFloat(src.array(), src.arrayOffset() + srcIndex, dst, dstOffset, samples);
+        } else if (src.order() == ByteOrder.LITTLE_ENDIAN) {
+            for (int i = 0, p = srcIndex; i < samples; i++, p += 2) dst[dstOffset + i] = src.getShort(p) / 32768f;
+        } else {
+            for (int i = 0, p = srcIndex; i < samples; i++, p += 2) {
+                dst[dstOffset + i] = Short.reverseBytes(src.getShort(p)) / 32768f;
+            }
+        }
+    }
+
+    /** @return sum of a[aOffset + i] * b[bOffset + i] for i in [0, length) */
+    public abstract double dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * Sum of a[aOffset + i] * b[bOffset + i] with products and partial sums
+     * in double. Products of floats are exact in double, so the result only
+     * carries the rounding of the double additions, where {@link #dot} may
+     * round float partial sums. Slower than dot; for running sums maintained
+     * by adding and subtracting, where those errors would accumulate.
+     */
+    public abstract double dotDouble(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    private static Kernels select() {
+        if (!Boolean.parseBoolean(System.getProperty("tuner.simd", "true"))) return SCALAR;
+        try {
+            return (Kernels) Class.forName("com.harmonic.tuner.simd.VectorKernels").getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException ex) {
+            // not compiled, module not added, or no usable vector shape on this machine
+            return SCALAR;
+        }
+    }
+
+    private static final class Scalar extends Kernels {
+        @Override
+        public String name() {
+            return "scalar";
+        }
+
+        @Override
+        public void pcm16ToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples) {
+            for (int i = 0, p = srcOffset; i < samples; i++, p += 2) {
+                dst[dstOffset + i] = (short) ((src[p] & 0xFF) | src[p + 1] << 8) / 32768f;
+            }
+        }
+
+        @Override
+        public double dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            double sum = 0;
+            for (int i = 0; i < length; i++) sum += a[aOffset + i] * b[bOffset + i];
+            return sum;
+        }
+
+        @Override
+        public double dotDouble(float[] a, int aOffset, float[] b, int bOffset, int length) {
+            double sum = 0;
+            for (int i = 0; i < length; i++) sum += (double) a[aOffset + i] * b[bOffset + i];
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.harmonic.tuner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with bounded relative
+ * error, in the style of HdrHistogram.
+ *
+ * Values below {@value #SUB_BUCKETS} ns are counted exactly; above that each
+ * power of two is split into {@value #SUB_BUCKETS} linear sub-buckets, so a
+ * recorded value is known to within about 3%. The range reaches about 18
+ * minutes; longer values land in the top bucket. {@link #record} is three
+ * uncontended atomic updates and never allocates, so it can sit on the audio
+ * and analysis threads; readers may take statistics at any time and see a
+ * near-consistent view.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40; // 2^40 ns ~ 18 min
+    private static final int SLOTS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /** Count one duration; negative values are recorded as 0. */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(index(v));
+        sum.addAndGet(v);
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v)) {
+            // retry; only loses to a concurrent larger value
+        }
+    }
+
+    /** Forget everything recorded so far. Values recorded concurrently may be kept or lost. */
+    public void reset() {
+        for (int i = 0; i < SLOTS; i++) counts.set(i, 0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /** Summarize the recorded durations under the given stage name. */
+    public StageStatistics statistics(String stage) {
+        long[] c = new long[SLOTS];
+        long count = 0;
+        for (int i = 0; i < SLOTS; i++) count += c[i] = counts.get(i);
+        double mean = count == 0 ? 0 : (double) sum.get() / count;
+        long top = max.get();
+        return new StageStatistics(stage, count, mean / 1e3,
+                percentile(c, count, top, 0.50) / 1e3, percentile(c, count, top, 0.90) / 1e3,
+                percentile(c, count, top, 0.99) / 1e3, percentile(c, count, top, 0.999) / 1e3, top / 1e3);
+    }
+
+    // value at quantile q, taken as the midpoint of the bucket holding it but no more than the maximum
+    private static double percentile(long[] c, long count, long max, double q) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < c.length; i++) {
+            seen += c[i];
+            if (seen >= rank) return Math.min(max, 0.5 * (lowerBound(i) + lowerBound(i + 1) - 1));
+        }
+        return max;
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS) return (int) v;
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        if (exp > MAX_EXPONENT) return SLOTS - 1;
+        int bucket = exp - SUB_BITS + 1;
+        int sub = (int) (v >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return bucket * SUB_BUCKETS + sub;
+    }
+
+    // smallest value that maps to slot i
+    static long lowerBound(int i) {
+        int bucket = i >>> SUB_BITS;
+        int sub = i & (SUB_BUCKETS - 1);
+        return bucket == 0 ? sub : (long) (SUB_BUCKETS + sub) << (bucket - 1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.harmonic.tuner;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+/** {@link PcmSource} over an open and started {@link TargetDataLine}. */
+public final class LinePcmSource implements PcmSource {
+    private final TargetDataLine line;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameBytes;
+
+    public LinePcmSource(TargetDataLine line) {
+        AudioFormat format = line.getFormat();
+        if (format.getSampleSizeInBits() != 16 || format.isBigEndian()
+                || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IllegalArgumentException("Expected signed 16-bit little-endian PCM, got " + format);
+        }
+        this.line = line;
+        this.sampleRate = (int) format.getSampleRate();
+        this.channels = format.getChannels();
+        this.frameBytes = 2 * channels;
+    }
+
+    /**
+     * Open and start a capture line with the given channel count.
+     *
+     * @param mixer       mixer to open it on, or null for the system default
+     * @param bufferBytes driver buffer size
+     */
+    public static LinePcmSource open(Mixer.Info mixer, int sampleRate, int channels, int bufferBytes)
+            throws LineUnavailableException {
+        AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+        TargetDataLine line = mixer != null
+                ? (TargetDataLine) AudioSystem.getMixer(mixer).getLine(info)
+                : (TargetDataLine) AudioSystem.getLine(info);
+        line.open(format, bufferBytes);
+        line.start();
+        return new LinePcmSource(line);
+    }
+
+    public TargetDataLine line() {
+        return line;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int channels() {
+        return channels;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (!line.isOpen()) return -1;
+        int n = line.read(buffer, offset, length - length % frameBytes);
+        return n == 0 && !line.isOpen() ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+        line.stop();
+        line.close();
+    }
+}
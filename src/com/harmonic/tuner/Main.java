@@ -3,8 +3,9 @@ package com.harmonic.tuner;
 import javax.sound.sampled.*;
 import javax.swing.*;
 import java.awt.*;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 public class Main {
     private JFrame frame;
@@ -15,24 +16,25 @@ public class Main {
     private JLabel noteLabel;
     private JLabel centsLabel;
     private JSlider centsSlider;
+    private StrobePanel strobePanel;
 
-    private volatile boolean running = false;
-    private Thread captureThread;
+    // the current session's; cleared to stop it, so a session still winding down cannot touch the next one
+    private volatile Thread captureThread;
 
     private static final int SAMPLE_RATE = 44100;
-    private static final int BUFFER_SIZE = 4096; // samples
-    private static final int SMOOTHING_WINDOW_MS = 4000; // 4 second window for averaging
-    private final java.util.Queue<Double> freqBuffer = new java.util.LinkedList<>();
-    private long lastUpdateTime = 0;
+    private static final int BUFFER_SIZE = 4096; // samples, sizes the capture line buffer
+    private final TunerConfig config = TunerConfig.fromSystemProperties();
+    private final PipelineMetrics metrics = new PipelineMetrics();
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new Main().createAndShowGui());
     }
 
     private void createAndShowGui() {
+        metrics.register();
         frame = new JFrame("Harmonic Tuner");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(600, 300);
+        frame.setSize(600, config.strobe ? 400 : 300);
 
         JPanel root = new JPanel(new BorderLayout(8, 8));
         root.setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
@@ -80,10 +82,19 @@ public class Main {
         centsSlider.setPaintTicks(true);
         centsSlider.setPaintLabels(true);
         centsSlider.setEnabled(false);
-        center.add(centsSlider, BorderLayout.CENTER);
 
         centsLabel = new JLabel("Cents: ---");
-        center.add(centsLabel, BorderLayout.SOUTH);
+        if (config.strobe) {
+            JPanel meter = new JPanel(new BorderLayout());
+            meter.add(centsSlider, BorderLayout.CENTER);
+            meter.add(centsLabel, BorderLayout.SOUTH);
+            center.add(meter, BorderLayout.CENTER);
+            strobePanel = new StrobePanel();
+            center.add(strobePanel, BorderLayout.SOUTH);
+        } else {
+            center.add(centsSlider, BorderLayout.CENTER);
+            center.add(centsLabel, BorderLayout.SOUTH);
+        }
 
         root.add(center, BorderLayout.CENTER);
 
@@ -113,7 +124,7 @@ public class Main {
     }
 
     private void onStartStop() {
-        if (!running) {
+        if (captureThread == null) {
             double targetHz;
             try {
                 targetHz = Double.parseDouble(targetField.getText().trim());
@@ -132,146 +143,187 @@ public class Main {
     }
 
     private void startCapture(Mixer.Info mixerInfo, double targetHz) {
-        running = true;
         centsSlider.setEnabled(true);
+        DisplayPublisher display = new DisplayPublisher((freq, clarity) -> render(freq, targetHz), metrics);
+        display.start();
+        // the strobe follows every sample, fed each frame's new hop on the analysis thread
+        StrobeAnalyzer strobe = strobePanel != null ? new StrobeAnalyzer(SAMPLE_RATE, targetHz) : null;
+        if (strobe != null) strobePanel.start();
 
-        captureThread = new Thread(() -> {
-            AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
-            DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
-            TargetDataLine line = null;
+        Thread session = new Thread(() -> {
+            PcmSource source = null;
+            CaptureRecorder recorder = null;
+            AnalysisStage analysis = null;
+            Thread analysisThread = null;
             try {
-                if (mixerInfo != null) {
-                    Mixer mixer = AudioSystem.getMixer(mixerInfo);
-                    line = (TargetDataLine) mixer.getLine(info);
+                if (config.replay != null) {
+                    source = new ReplayPcmSource(Paths.get(config.replay), 1);
+                    if (source.sampleRate() != SAMPLE_RATE || source.channels() != 1) {
+                        throw new IOException(config.replay + " is not a mono " + SAMPLE_RATE + " Hz recording");
+                    }
+                } else if (config.shm != null) {
+                    source = new SharedMemorySource(Paths.get(config.shm));
+                    if (source.sampleRate() != SAMPLE_RATE || source.channels() != 1) {
+                        throw new IOException(config.shm + " is not a mono " + SAMPLE_RATE + " Hz ring");
+                    }
                 } else {
-                    line = (TargetDataLine) AudioSystem.getLine(info);
+                    source = LinePcmSource.open(mixerInfo, SAMPLE_RATE, 1, BUFFER_SIZE * 4);
                 }
-                if (line == null) {
-                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "Unable to open microphone: no line available", "Audio Error", JOptionPane.ERROR_MESSAGE));
-                    return;
-                }
-                try {
-                    line.open(format, BUFFER_SIZE * 2);
-                } catch (LineUnavailableException ex) {
-                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "Unable to open microphone: " + ex.getMessage(), "Audio Error", JOptionPane.ERROR_MESSAGE));
-                    return;
-                }
-                line.start();
-
-                byte[] buffer = new byte[BUFFER_SIZE * 2]; // 16-bit -> 2 bytes/sample
-                float[] samples = new float[BUFFER_SIZE];
+                recorder = config.createRecorder(SAMPLE_RATE, 1);
+                SharedMemorySource shared = source instanceof SharedMemorySource ? (SharedMemorySource) source : null;
+                // a shared ring decodes straight into samples unless the recorder needs the bytes
+                boolean decodeShared = shared != null && recorder == null;
 
-                int iteration = 0;
-                while (running) {
-                    int read = line.read(buffer, 0, buffer.length);
-                    if (read <= 0) continue;
-                    int samplesRead = read / 2;
-                    // convert
-                    ByteBuffer bb = ByteBuffer.wrap(buffer);
-                    bb.order(ByteOrder.LITTLE_ENDIAN);
-                    for (int i = 0; i < samplesRead; i++) {
-                        short s = bb.getShort(i * 2);
-                        samples[i] = s / 32768f;
+                // analysis runs on its own thread so a slow frame never delays line.read
+                SampleRingBuffer ring = new SampleRingBuffer(config.maxWindow(), config.hop);
+                PitchEstimator estimator = config.createEstimator(SAMPLE_RATE, config.maxWindow(), targetHz);
+                // one reading per hop, so the window holds at most windowMs * rate / hop of them
+                int capacity = (int) Math.ceil(config.smoothingMs / 1000.0 * SAMPLE_RATE / config.hop) + 1;
+                FrequencySmoother smoother = new FrequencySmoother(config.smoothingMs * 1_000_000L, capacity, config.smoothing, 0.2);
+                PitchTracker tracker = config.createTracker(SAMPLE_RATE);
+                AnalysisStage.Listener listener = new AnalysisStage.Listener() {
+                    @Override
+                    public void onFrame(PitchResult result, long frame) {
+                        onPitch(result, tracker, smoother, display);
                     }
 
-                    double freq = PitchDetector.detect(samples, SAMPLE_RATE);
-                    
-                    // Add frequency to buffer and remove old readings
-                    long currentTime = System.currentTimeMillis();
-                    if (freq > 0) {
-                        freqBuffer.offer(freq);
+                    @Override
+                    public void onHop(float[] samples, int offset, int length, long frame) {
+                        if (strobe == null) return;
+                        long start = System.nanoTime();
+                        strobe.process(samples, offset, length, null);
+                        strobePanel.show(strobe);
+                        metrics.record(PipelineMetrics.Stage.STROBE, System.nanoTime() - start);
                     }
-                    
-                    // Remove readings older than SMOOTHING_WINDOW_MS
-                    while (!freqBuffer.isEmpty() && currentTime - lastUpdateTime > SMOOTHING_WINDOW_MS) {
-                        freqBuffer.poll();
-                    }
-                    
-                    // Calculate averaged frequency
-                    double avgFreq = 0;
-                    if (!freqBuffer.isEmpty()) {
-                        avgFreq = freqBuffer.stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                    }
-                    
-                    // Only update UI once per millisecond
-                    if (currentTime - lastUpdateTime >= 1) {
-                        lastUpdateTime = currentTime;
-                        
-                        final String detectedText;
-                        final String centsText;
-                        final int centsVal;
-                        if (avgFreq <= 0) {
-                            detectedText = "Detected: --- Hz";
-                            centsText = "Cents: ---";
-                            centsVal = 0;
-                        } else {
-                            detectedText = String.format("Detected: %.2f Hz", avgFreq);
-                            double cents = 1200.0 * (Math.log(avgFreq / targetHz) / Math.log(2));
-                            centsText = String.format("Cents: %.1f", cents);
-                            centsVal = (int) Math.max(-100, Math.min(100, Math.round(cents)));
-                        }
 
-                        // Calculate musical note
-                        String noteName = "---";
-                        if (avgFreq > 0) {
-                            // A4 is 440Hz, each semitone is 2^(1/12)
-                            double a4 = 440.0;
-                            double semitones = 12 * Math.log(avgFreq / a4) / Math.log(2);
-                            int midiNote = (int) Math.round(69 + semitones); // 69 is A4 in MIDI
-                            noteName = getNoteNameFromMidi(midiNote);
+                    @Override
+                    public void onOnset(long frame) {
+                        // a new note: do not average it with the one before
+                        if (tracker != null) {
+                            tracker.reset();
+                        } else {
+                            smoother.clear();
                         }
-                        final String noteText = "Note: " + noteName;
-
-                        SwingUtilities.invokeLater(() -> {
-                            detectedLabel.setText(detectedText);
-                            noteLabel.setText(noteText);
-                            centsLabel.setText(centsText);
-                            centsSlider.setValue(centsVal);
-                        });
                     }
+                };
+                analysis = new AnalysisStage(ring, estimator, config.window, listener, metrics,
+                        config.createGate(SAMPLE_RATE), config.createFraming(SAMPLE_RATE));
+                analysisThread = new Thread(analysis, "Audio-Analysis-Thread");
+                analysisThread.setDaemon(true);
+                analysisThread.start();
 
-                    // Process every few iterations to avoid UI flooding
-                    if (++iteration % 3 == 0) {
-                        // UI update code would go here
+                byte[] buffer = new byte[config.hop * 2]; // 16-bit -> 2 bytes/sample
+                float[] samples = new float[config.hop];
+                TargetDataLine line = source instanceof LinePcmSource ? ((LinePcmSource) source).line() : null;
+                int lineBuffer = line != null ? line.getBufferSize() : 0;
+                while (captureThread == Thread.currentThread()) {
+                    // a full driver buffer means audio is being dropped before we see it
+                    if (line != null && line.available() >= lineBuffer) metrics.captureOverrun();
+                    long overruns = shared != null ? shared.overruns() : 0;
+                    long start = System.nanoTime();
+                    int read;
+                    int n;
+                    if (decodeShared) {
+                        // waiting and conversion in one call, timed as the read
+                        n = shared.read(samples, 0, samples.length);
+                        read = 2 * n;
+                    } else {
+                        read = source.read(buffer, 0, buffer.length);
+                        n = 0;
+                    }
+                    long readDone = System.nanoTime();
+                    metrics.record(PipelineMetrics.Stage.READ, readDone - start);
+                    if (read < 0) break; // end of a replay or shared ring, or the line was closed
+                    if (shared != null && shared.overruns() > overruns) metrics.captureOverrun();
+                    if (read == 0) continue;
+                    if (!decodeShared) {
+                        n = Pcm16.toFloat(buffer, read, samples);
+                        metrics.record(PipelineMetrics.Stage.CONVERT, System.nanoTime() - readDone);
+                    }
+                    if (ring.write(samples, 0, n) < n) metrics.captureOverrun();
+                    // last, so keeping the block never delays its analysis
+                    if (recorder != null) {
+                        long recordStart = System.nanoTime();
+                        recorder.write(buffer, 0, read, readDone);
+                        metrics.record(PipelineMetrics.Stage.RECORD, System.nanoTime() - recordStart);
                     }
                 }
 
             } catch (LineUnavailableException ex) {
                 SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, "Unable to open microphone: " + ex.getMessage(), "Audio Error", JOptionPane.ERROR_MESSAGE));
+            } catch (IOException ex) {
+                String what = config.replay != null ? "Replay failed: "
+                        : config.shm != null ? "Shared memory input failed: " : "Recording failed: ";
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(frame, what + ex.getMessage(), "Audio Error", JOptionPane.ERROR_MESSAGE));
             } finally {
-                if (line != null) {
-                    line.stop();
-                    line.close();
-                }
-                running = false;
+                if (analysis != null) analysis.stop();
+                if (analysisThread != null) join(analysisThread, 0);
+                close(recorder);
+                close(source);
+                if (config.printMetrics) System.err.println(metrics.report());
+                Thread self = Thread.currentThread();
                 SwingUtilities.invokeLater(() -> {
+                    display.stop();
+                    // unless the user has stopped this session and started another meanwhile
+                    if (captureThread != null && captureThread != self) return;
+                    captureThread = null;
+                    if (strobe != null) strobePanel.stop();
                     startButton.setText("Start");
                     centsSlider.setEnabled(false);
                 });
             }
         }, "Audio-Capture-Thread");
-        captureThread.setDaemon(true);
-        captureThread.start();
+        session.setDaemon(true);
+        captureThread = session;
+        session.start();
     }
 
-    private void stopCapture() {
-        running = false;
-        if (captureThread != null) {
-            try { 
-                captureThread.join(200); 
-            } catch (InterruptedException ignored) {}
-            captureThread = null;
+    private static void join(Thread thread, long millis) {
+        try {
+            thread.join(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void close(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ex) {
+            System.err.println("Close failed: " + ex);
         }
-        // Clear the frequency buffer
-        freqBuffer.clear();
-        lastUpdateTime = 0;
     }
 
-    private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
-    
-    private String getNoteNameFromMidi(int midiNote) {
-        int note = midiNote % 12;
-        int octave = (midiNote / 12) - 1;
-        return NOTE_NAMES[note] + octave;
+    // analysis thread: track or smooth the estimate and hand it to the display
+    private void onPitch(PitchResult pitch, PitchTracker tracker, FrequencySmoother smoother, DisplayPublisher display) {
+        long start = System.nanoTime();
+        double avgFreq = tracker != null ? Math.max(0, tracker.update(pitch)) : smoother.add(pitch.frequency(), start);
+        metrics.record(PipelineMetrics.Stage.SMOOTH, System.nanoTime() - start);
+        display.publish(avgFreq, pitch.clarity());
+    }
+
+    // EDT: called by the publisher only when the smoothed frequency changed
+    private void render(double avgFreq, double targetHz) {
+        if (avgFreq <= 0) {
+            detectedLabel.setText("Detected: --- Hz");
+            noteLabel.setText("Note: ---");
+            centsLabel.setText("Cents: ---");
+            centsSlider.setValue(0);
+            return;
+        }
+        double cents = Notes.cents(avgFreq, targetHz);
+        detectedLabel.setText(String.format("Detected: %.2f Hz", avgFreq));
+        noteLabel.setText("Note: " + Notes.name(Notes.nearestMidi(avgFreq)));
+        centsLabel.setText(String.format("Cents: %.1f", cents));
+        centsSlider.setValue((int) Math.max(-100, Math.min(100, Math.round(cents))));
+    }
+
+    // the session tears itself down, analysis thread included, once its loop sees it is no longer current
+    private void stopCapture() {
+        Thread session = captureThread;
+        if (session == null) return;
+        captureThread = null;
+        join(session, 200);
     }
 }
@@ -0,0 +1,150 @@
+package com.harmonic.tuner;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Ordered access to 64-bit counters in a memory-mapped file shared with
+ * other processes, as used by {@link SharedMemoryWriter} and
+ * {@link SharedMemorySource}.
+ *
+ * On Java 9 and later the {@code com.harmonic.tuner.shm} implementation, if
+ * compiled, is picked by reflection; it uses a byte-buffer view
+ * {@link java.lang.invoke.VarHandle} with acquire/release semantics. On
+ * Java 8 plain buffer accesses are surrounded by the load and store fences
+ * of {@code sun.misc.Unsafe}, also found by reflection, which are full
+ * hardware fences where the CPU needs them. Only if neither is available
+ * does the last fallback order the accesses by volatile accesses to a
+ * field; that suffices on x86, where plain loads and stores are already
+ * ordered except store-then-load, but not on weakly ordered CPUs such as
+ * ARM.
+ *
+ * Counters are little-endian and must be 8-byte aligned in the mapping.
+ */
+public abstract class MappedAtomics {
+    private static final MappedAtomics SELECTED = select();
+
+    /** @return the implementation used for shared rings */
+    public static MappedAtomics get() {
+        return SELECTED;
+    }
+
+    /** @return short description for logs and tool output */
+    public abstract String name();
+
+    /** Read the counter at index; later loads and stores are not moved before it. */
+    public abstract long getAcquire(ByteBuffer buffer, int index);
+
+    /** Write the counter at index; earlier loads and stores are not moved after it. */
+    public abstract void setRelease(ByteBuffer buffer, int index, long value);
+
+    /** Earlier loads are not moved after later loads and stores. */
+    public abstract void loadFence();
+
+    /** Earlier loads and stores are not moved after later stores. */
+    public abstract void storeFence();
+
+    private static MappedAtomics select() {
+        try {
+            return (MappedAtomics) Class.forName("com.harmonic.tuner.shm.VarHandleAtomics").getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // not compiled, or a Java 8 runtime
+        }
+        return UnsafeFences.LOAD != null ? new UnsafeFences() : new Fallback();
+    }
+
+    private static final class UnsafeFences extends MappedAtomics {
+        private static final MethodHandle LOAD;
+        private static final MethodHandle STORE;
+
+        static {
+            MethodHandle load = null;
+            MethodHandle store = null;
+            try {
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                Object unsafe = field.get(null);
+                MethodType fence = MethodType.methodType(void.class);
+                load = MethodHandles.publicLookup().findVirtual(type, "loadFence", fence).bindTo(unsafe);
+                store = MethodHandles.publicLookup().findVirtual(type, "storeFence", fence).bindTo(unsafe);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                load = null; // not a HotSpot-like runtime, or access denied
+            }
+            LOAD = load;
+            STORE = store;
+        }
+
+        @Override
+        public String name() {
+            return "unsafe-fences";
+        }
+
+        @Override
+        public long getAcquire(ByteBuffer buffer, int index) {
+            long value = buffer.getLong(index);
+            loadFence();
+            return value;
+        }
+
+        @Override
+        public void setRelease(ByteBuffer buffer, int index, long value) {
+            storeFence();
+            buffer.putLong(index, value);
+        }
+
+        @Override
+        public void loadFence() {
+            try {
+                LOAD.invokeExact();
+            } catch (Throwable ex) {
+                throw new AssertionError(ex);
+            }
+        }
+
+        @Override
+        public void storeFence() {
+            try {
+                STORE.invokeExact();
+            } catch (Throwable ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+
+    // x86 only, see the class comment
+    private static final class Fallback extends MappedAtomics {
+        private volatile int barrier;
+
+        @Override
+        public String name() {
+            return "volatile-fallback";
+        }
+
+        @Override
+        public long getAcquire(ByteBuffer buffer, int index) {
+            long value = buffer.getLong(index);
+            int ignored = barrier;
+            return value;
+        }
+
+        @Override
+        public void setRelease(ByteBuffer buffer, int index, long value) {
+            barrier = 0;
+            buffer.putLong(index, value);
+        }
+
+        @Override
+        public void loadFence() {
+            int ignored = barrier;
+        }
+
+        @Override
+        public void storeFence() {
+            barrier = 0;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.harmonic.tuner;
+
+/**
+ * McLeod Pitch Method (McLeod and Wyvill, 2005) using the normalized square
+ * difference function
+ * <pre>  n(tau) = 2 r(tau) / m(tau),  m(tau) = sum x[i]^2 + x[i+tau]^2</pre>
+ * over the overlapping part of the frame. The autocorrelation comes from an
+ * {@link FftAutocorrelator}, m(tau) from a prefix sum of squares. Among the
+ * key maxima (one per positive lobe) the first one within {@code k} of the
+ * highest is chosen, which suppresses octave-down errors. Clarity is the
+ * interpolated NSDF value at the chosen peak.
+ */
+public final class MpmEstimator implements PitchEstimator {
+    /** Fraction of the highest key maximum a peak must reach to be chosen. */
+    public static final double DEFAULT_CUTOFF = 0.93;
+
+    private final int sampleRate;
+    private final int maxFrameSize;
+    private final double cutoff;
+    private final FftAutocorrelator acf;
+    private final double lowestHz;
+    private double minHz = DEFAULT_MIN_HZ;
+    private double maxHz = DEFAULT_MAX_HZ;
+    private final double[] prefix;
+    private final double[] nsdf;
+    private final int[] keyMaxima;
+
+    public MpmEstimator(int sampleRate, int maxFrameSize) {
+        this(sampleRate, maxFrameSize, DEFAULT_CUTOFF);
+    }
+
+    public MpmEstimator(int sampleRate, int maxFrameSize, double cutoff) {
+        this(sampleRate, maxFrameSize, cutoff, DEFAULT_MIN_HZ);
+    }
+
+    /**
+     * @param lowestHz lowest fundamental {@link #setSearchRange} may ask for;
+     *                 sizes the lag buffers
+     */
+    public MpmEstimator(int sampleRate, int maxFrameSize, double cutoff, double lowestHz) {
+        this.sampleRate = sampleRate;
+        this.lowestHz = lowestHz;
+        this.maxFrameSize = maxFrameSize;
+        this.cutoff = cutoff;
+        this.acf = PitchDetector.newAutocorrelator(maxFrameSize, sampleRate, lowestHz);
+        this.prefix = new double[maxFrameSize + 1];
+        this.nsdf = new double[acf.maxLag() + 1];
+        this.keyMaxima = new int[acf.maxLag() / 2 + 1];
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSearchRange(double minHz, double maxHz) {
+        PitchDetector.checkRange(minHz, maxHz);
+        this.minHz = Math.max(minHz, lowestHz);
+        this.maxHz = maxHz;
+    }
+
+    @Override
+    public void estimate(float[] audio, int length, PitchResult result) {
+        if (length <= 0 || length > maxFrameSize) {
+            result.clear();
+            return;
+        }
+        int maxLag = PitchDetector.maxLag(length, sampleRate, minHz);
+        int minLag = Math.max(1, PitchDetector.minLag(sampleRate, maxHz));
+
+        prefix[0] = 0;
+        for (int i = 0; i < length; i++) prefix[i + 1] = prefix[i] + audio[i] * audio[i];
+        if (prefix[length] <= 1e-8) {
+            result.clear();
+            return;
+        }
+
+        double[] r = acf.autocorrelate(audio, length, maxLag);
+        for (int tau = 0; tau <= maxLag; tau++) {
+            double m = prefix[length - tau] + (prefix[length] - prefix[tau]);
+            nsdf[tau] = m > 0 ? 2 * r[tau] / m : 0;
+        }
+
+        // one key maximum per positive lobe, skipping the lobe around lag 0
+        int count = 0;
+        double highest = Double.NEGATIVE_INFINITY;
+        int tau = 1;
+        while (tau <= maxLag && nsdf[tau] > 0) tau++;
+        while (tau <= maxLag) {
+            while (tau <= maxLag && nsdf[tau] <= 0) tau++;
+            int peak = -1;
+            while (tau <= maxLag && nsdf[tau] > 0) {
+                if (peak < 0 || nsdf[tau] > nsdf[peak]) peak = tau;
+                tau++;
+            }
+            if (peak >= minLag && count < keyMaxima.length) {
+                keyMaxima[count++] = peak;
+                if (nsdf[peak] > highest) highest = nsdf[peak];
+            }
+        }
+        if (count == 0) {
+            result.clear();
+            return;
+        }
+
+        int best = keyMaxima[0];
+        double limit = cutoff * highest;
+        for (int i = 0; i < count; i++) {
+            if (nsdf[keyMaxima[i]] >= limit) {
+                best = keyMaxima[i];
+                break;
+            }
+        }
+
+        double refinedLag = best;
+        double peakValue = nsdf[best];
+        if (best > 0 && best < maxLag) {
+            double c0 = nsdf[best - 1], c1 = nsdf[best], c2 = nsdf[best + 1];
+            refinedLag = PitchDetector.refine(best, c0, c1, c2);
+            double delta = refinedLag - best;
+            peakValue = c1 - 0.25 * (c0 - c2) * delta;
+        }
+        double freq = PitchDetector.toFrequency(refinedLag, sampleRate);
+        result.set(freq, freq > 0 ? Math.max(0, Math.min(1, peakValue)) : 0);
+        if (freq <= 0) return;
+
+        // runners-up: the other key maxima
+        for (int i = 0; i < count; i++) {
+            int k = keyMaxima[i];
+            if (k == best || k >= maxLag || !result.wantsCandidate(nsdf[k])) continue;
+            double lag = PitchDetector.refine(k, nsdf[k - 1], nsdf[k], nsdf[k + 1]);
+            result.addCandidate(PitchDetector.toFrequency(lag, sampleRate), Math.min(1, nsdf[k]));
+        }
+    }
+}
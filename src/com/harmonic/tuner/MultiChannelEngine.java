@@ -0,0 +1,362 @@
+package com.harmonic.tuner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tunes many inputs at once: any number of {@link PcmSource}s, each with one
+ * or more interleaved channels, every channel with its own target and
+ * estimator.
+ *
+ * Each source has a capture thread that reads one hop of frames at a time,
+ * decodes it and de-interleaves it into per-channel {@link SampleRingBuffer}s.
+ * Analysis runs on a fixed pool of at most one thread per core. Each
+ * channel behaves as an actor on that pool: it is queued when its ring has a
+ * complete window, analyses one window per turn and is never run by two
+ * threads at once, so estimator state needs no locking and a busy channel
+ * cannot starve the others. Per-channel work is independent, so throughput
+ * grows with the channel count until the pool's cores are saturated.
+ *
+ * Results are published together: when the slowest channel finishes frame
+ * k, the listener receives the latest result of every channel, stamped as
+ * round k. Rounds that complete while the listener is still busy are
+ * coalesced into the next one, which the busy thread delivers once the
+ * listener returns, so the last round completed always reaches it.
+ */
+public final class MultiChannelEngine implements AutoCloseable {
+    /** Creates the estimator of one channel; {@link TunerConfig#createEstimator} fits. */
+    public interface EstimatorFactory {
+        PitchEstimator create(int sampleRate, int window, double targetHz);
+    }
+
+    /** Receives all channels' results once per completed round, on an analysis thread. */
+    public interface Listener {
+        /** @param results latest result of every channel; reused, valid only during the call */
+        void onResults(Results results);
+    }
+
+    /** Latest estimate of every channel at the end of a round. */
+    public static final class Results {
+        private final double[] targets;
+        private final float[] frequency;
+        private final float[] clarity;
+        private final long[] frames;
+        private long round;
+
+        Results(double[] targets) {
+            this.targets = targets.clone();
+            this.frequency = new float[targets.length];
+            this.clarity = new float[targets.length];
+            this.frames = new long[targets.length];
+        }
+
+        public int channels() {
+            return targets.length;
+        }
+
+        /** @return number of frames every channel has completed */
+        public long round() {
+            return round;
+        }
+
+        /** @return frequency in Hz, or a value <= 0 when the channel has no pitch */
+        public float frequency(int channel) {
+            return frequency[channel];
+        }
+
+        public float clarity(int channel) {
+            return clarity[channel];
+        }
+
+        public double targetHz(int channel) {
+            return targets[channel];
+        }
+
+        /** @return frames analysed on the channel so far, at least {@link #round()} */
+        public long frames(int channel) {
+            return frames[channel];
+        }
+    }
+
+    private final List<PcmSource> sources;
+    private final Channel[] channels;
+    private final int window;
+    private final int hop;
+    private final int threads;
+    private final Listener listener;
+    private final List<Thread> captureThreads = new ArrayList<>();
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final Results results;
+    private volatile long publishedRound;
+    private volatile boolean running;
+    private ExecutorService pool;
+
+    /**
+     * @param sources  inputs; their channels are numbered in list order
+     * @param targets  target frequency of every channel, one per channel across all sources
+     * @param window   analysis window in samples
+     * @param hop      samples between successive windows
+     * @param threads  analysis threads; 0 for one per core, capped at the channel count
+     * @param factory  creates each channel's estimator
+     * @param listener receives the results, or null to only poll {@link #results}
+     */
+    public MultiChannelEngine(List<? extends PcmSource> sources, double[] targets, int window, int hop,
+                              int threads, EstimatorFactory factory, Listener listener) {
+        int total = 0;
+        for (PcmSource s : sources) total += s.channels();
+        if (total != targets.length) {
+            throw new IllegalArgumentException(total + " channels but " + targets.length + " targets");
+        }
+        this.sources = new ArrayList<>(sources);
+        this.window = window;
+        this.hop = hop;
+        int cores = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.threads = Math.max(1, Math.min(cores, total));
+        this.listener = listener;
+        this.results = new Results(targets);
+        this.channels = new Channel[total];
+        int c = 0;
+        for (PcmSource s : sources) {
+            for (int i = 0; i < s.channels(); i++, c++) {
+                channels[c] = new Channel(factory.create(s.sampleRate(), window, targets[c]));
+            }
+        }
+    }
+
+    public int channels() {
+        return channels.length;
+    }
+
+    /** Start the analysis pool and one capture thread per source. */
+    public synchronized void start() {
+        if (running) throw new IllegalStateException("already running");
+        running = true;
+        AtomicInteger n = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "Multi-Analysis-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        int first = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            PcmSource source = sources.get(i);
+            int from = first;
+            Thread t = new Thread(() -> capture(source, from), "Multi-Capture-" + i);
+            t.setDaemon(true);
+            captureThreads.add(t);
+            first += source.channels();
+        }
+        for (Thread t : captureThreads) t.start();
+    }
+
+    /**
+     * Wait until every source has ended and every complete window has been
+     * analysed. Only returns early for endless sources on timeout.
+     *
+     * @return true if all input was consumed
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread t : captureThreads) {
+            long ms = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (ms <= 0) return false;
+            t.join(ms);
+            if (t.isAlive()) return false;
+        }
+        while (!idle()) {
+            if (System.nanoTime() >= deadline) return false;
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    private boolean idle() {
+        for (Channel c : channels) {
+            if (c.scheduled.get() || c.ring.ready()) return false;
+        }
+        return true;
+    }
+
+    /** Close the sources and stop all threads. */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (PcmSource s : sources) {
+            try {
+                s.close();
+            } catch (IOException ex) {
+                System.err.println("Closing " + s + ": " + ex.getMessage());
+            }
+        }
+        for (Thread t : captureThreads) {
+            try {
+                t.join(200);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        captureThreads.clear();
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Copy the latest result of every channel into into. Unlike the
+     * listener's rounds the channels may be at different frames.
+     */
+    public void results(Results into) {
+        for (int c = 0; c < channels.length; c++) channels[c].copyTo(into, c);
+    }
+
+    /** @return a {@link Results} sized for this engine, for {@link #results(Results)} */
+    public Results newResults() {
+        return new Results(results.targets);
+    }
+
+    public long framesAnalysed() {
+        long n = 0;
+        for (Channel c : channels) n += c.frames;
+        return n;
+    }
+
+    /** @return capture writes that found a channel's ring full, summed over channels */
+    public long overruns() {
+        long n = 0;
+        for (Channel c : channels) n += c.ring.overruns();
+        return n;
+    }
+
+    /** @return hops skipped because analysis fell behind, summed over channels */
+    public long droppedHops() {
+        long n = 0;
+        for (Channel c : channels) n += c.ring.droppedHops();
+        return n;
+    }
+
+    // capture thread of one source: decode, de-interleave, hand each channel its hop
+    private void capture(PcmSource source, int firstChannel) {
+        int count = source.channels();
+        byte[] block = new byte[hop * count * 2];
+        float[] decoded = new float[hop * count];
+        float[] lane = new float[hop];
+        Kernels kernels = Kernels.get();
+        try {
+            while (running) {
+                int bytes = source.readFully(block, 0, block.length);
+                int frames = bytes / (2 * count);
+                if (frames == 0) break;
+                kernels.pcm16ToFloat(block, 0, decoded, 0, frames * count);
+                for (int c = 0; c < count; c++) {
+                    for (int i = 0, p = c; i < frames; i++, p += count) lane[i] = decoded[p];
+                    Channel channel = channels[firstChannel + c];
+                    channel.ring.write(lane, 0, frames);
+                    channel.schedule();
+                }
+                if (bytes < block.length) break;
+            }
+        } catch (IOException ex) {
+            if (running) System.err.println("Capture from " + source + " failed: " + ex.getMessage());
+        }
+    }
+
+    // called after any channel finishes a frame
+    private void maybePublish() {
+        if (listener == null) return;
+        // a frame finished while the lock is held finds it taken and leaves its round to the holder,
+        // which therefore looks again after unlocking
+        while (true) {
+            long round = completedRound();
+            if (round <= publishedRound || !publishLock.tryLock()) return;
+            try {
+                round = completedRound();
+                if (round <= publishedRound) return;
+                results(results);
+                results.round = round;
+                publishedRound = round;
+                listener.onResults(results);
+            } finally {
+                publishLock.unlock();
+            }
+        }
+    }
+
+    // frames every channel has analysed
+    private long completedRound() {
+        long round = Long.MAX_VALUE;
+        for (Channel c : channels) round = Math.min(round, c.frames);
+        return round;
+    }
+
+    private final class Channel implements Runnable {
+        final SampleRingBuffer ring = new SampleRingBuffer(window, hop);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        private final PitchEstimator estimator;
+        private final float[] samples = new float[window];
+        private final PitchResult result = new PitchResult();
+        private long dropped;
+        private volatile long latest; // frequency and clarity packed as two float bit patterns
+        volatile long frames;
+
+        Channel(PitchEstimator estimator) {
+            this.estimator = estimator;
+            this.latest = (long) Float.floatToIntBits(-1f) << 32;
+        }
+
+        void schedule() {
+            if (running && scheduled.compareAndSet(false, true)) {
+                try {
+                    pool.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false); // stopping
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean analysed = false;
+            try {
+                if (running && ring.poll(samples, window)) {
+                    if (ring.droppedHops() != dropped) {
+                        dropped = ring.droppedHops();
+                        estimator.reset();
+                    }
+                    estimator.estimate(samples, window, result);
+                    latest = ((long) Float.floatToIntBits((float) result.frequency()) << 32)
+                            | (Float.floatToIntBits((float) result.clarity()) & 0xFFFFFFFFL);
+                    frames = frames + 1; // single writer: only ever run by one pool thread at a time
+                    analysed = true;
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            if (analysed) maybePublish();
+            // a hop may have arrived after poll; the producer's schedule() lost to our flag
+            if (ring.ready()) schedule();
+        }
+
+        void copyTo(Results into, int c) {
+            long bits = latest;
+            into.frequency[c] = Float.intBitsToFloat((int) (bits >>> 32));
+            into.clarity[c] = Float.intBitsToFloat((int) bits);
+            into.frames[c] = frames;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.harmonic.tuner;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Headless front end for {@link MultiChannelEngine}: tunes every channel of
+ * one or more capture lines at once and prints a line per channel a few
+ * times a second. Engine, window, hop and search mode come from the usual
+ * {@code -Dtuner.*} properties (see {@link TunerConfig}).
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.MultiChannelMonitor [options]
+ *
+ *   --mixer NAME        open a line on the first mixer whose name contains NAME;
+ *                       repeat for several interfaces (default: the system default line)
+ *   --channels 8        interleaved channels per line (default 1)
+ *   --rate 48000        sample rate (default 44100)
+ *   --targets 82.41,110 target of each channel in Hz, repeated to cover all channels
+ *                       (default the six guitar strings)
+ *   --threads 4         analysis threads (default one per core)
+ *   --synthetic         play each channel's target, detuned by a few cents, instead of capturing
+ *   --shm FILE          read the channels of a {@link SharedMemoryWriter} ring instead of capturing;
+ *                       several monitors may read the same ring
+ * </pre>
+ *
+ * Runs until interrupted.
+ */
+public final class MultiChannelMonitor {
+    private static final double[] GUITAR = {82.41, 110.0, 146.83, 196.0, 246.94, 329.63};
+    private static final long PRINT_INTERVAL_NANOS = 250_000_000L;
+
+    private final List<String> mixers = new ArrayList<>();
+    private int channels = 1;
+    private int sampleRate = 44100;
+    private double[] targets = GUITAR;
+    private int threads;
+    private boolean synthetic;
+    private Path shm;
+    private long lastPrint;
+
+    public static void main(String[] args) throws Exception {
+        MultiChannelMonitor monitor = new MultiChannelMonitor();
+        monitor.parse(args);
+        monitor.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if ("--synthetic".equals(opt)) {
+                synthetic = true;
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--mixer": mixers.add(val); break;
+                case "--channels": channels = Integer.parseInt(val); break;
+                case "--rate": sampleRate = Integer.parseInt(val); break;
+                case "--targets": targets = doubles(val); break;
+                case "--threads": threads = Integer.parseInt(val); break;
+                case "--shm": shm = Paths.get(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+    }
+
+    private static double[] doubles(String csv) {
+        String[] parts = csv.split(",");
+        double[] out = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) out[i] = Double.parseDouble(parts[i].trim());
+        return out;
+    }
+
+    private void run() throws LineUnavailableException, InterruptedException, IOException {
+        TunerConfig config = TunerConfig.fromSystemProperties();
+        SharedMemorySource shared = shm != null ? new SharedMemorySource(shm) : null;
+        if (shared != null) channels = shared.channels();
+        int lines = shared != null ? 1 : Math.max(1, mixers.size());
+        double[] channelTargets = new double[lines * channels];
+        for (int c = 0; c < channelTargets.length; c++) channelTargets[c] = targets[c % targets.length];
+
+        List<PcmSource> sources = new ArrayList<>();
+        try {
+            for (int l = 0; l < lines; l++) {
+                if (shared != null) {
+                    sources.add(shared);
+                } else if (synthetic) {
+                    double[] tones = new double[channels];
+                    for (int c = 0; c < channels; c++) {
+                        // -6, -3, 0, +3 ... cents so the readout shows something to tune
+                        tones[c] = channelTargets[l * channels + c] * Math.pow(2, 3.0 * ((c % 5) - 2) / 1200);
+                    }
+                    sources.add(new SyntheticPcmSource(sampleRate, SyntheticSignal.Type.NOISY, tones, 1, -1, l));
+                } else {
+                    Mixer.Info mixer = mixers.isEmpty() ? null : findMixer(mixers.get(l));
+                    sources.add(LinePcmSource.open(mixer, sampleRate, channels, config.hop * channels * 2 * 8));
+                }
+            }
+        } catch (LineUnavailableException | RuntimeException ex) {
+            for (PcmSource s : sources) s.close();
+            if (shared != null) shared.close();
+            throw ex;
+        }
+
+        MultiChannelEngine engine = new MultiChannelEngine(sources, channelTargets, config.window, config.hop,
+                threads, config::createEstimator, this::print);
+        CountDownLatch done = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            engine.stop();
+            System.out.printf(Locale.ROOT, "%d frames, %d overruns, %d dropped hops%n",
+                    engine.framesAnalysed(), engine.overruns(), engine.droppedHops());
+            done.countDown();
+        }));
+        System.out.printf(Locale.ROOT, "%d channels on %d %s, %s, window %d, hop %d, kernels %s%n",
+                channelTargets.length, lines,
+                shared != null ? "shared ring" : synthetic ? "synthetic source(s)" : "line(s)", config.engine,
+                config.window, config.hop, Kernels.get().name());
+        engine.start();
+        done.await();
+    }
+
+    private static Mixer.Info findMixer(String name) {
+        String wanted = name.toLowerCase(Locale.ROOT);
+        for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+            if (info.getName().toLowerCase(Locale.ROOT).contains(wanted)) return info;
+        }
+        throw new IllegalArgumentException("No mixer matching \"" + name + "\"");
+    }
+
+    // analysis thread; rounds arrive at the hop rate, print a few per second
+    private void print(MultiChannelEngine.Results results) {
+        long now = System.nanoTime();
+        if (now - lastPrint < PRINT_INTERVAL_NANOS) return;
+        lastPrint = now;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "round %d%n", results.round()));
+        for (int c = 0; c < results.channels(); c++) {
+            double target = results.targetHz(c);
+            String note = Notes.name(Notes.nearestMidi(target));
+            double hz = results.frequency(c);
+            if (hz > 0) {
+                sb.append(String.format(Locale.ROOT, "  ch%-3d %-4s %8.2f Hz  %8.2f Hz  %+7.1f cents  clarity %.2f%n",
+                        c, note, target, hz, Notes.cents(hz, target), results.clarity(c)));
+            } else {
+                sb.append(String.format(Locale.ROOT, "  ch%-3d %-4s %8.2f Hz  %11s%n", c, note, target, "---"));
+            }
+        }
+        System.out.print(sb);
+    }
+}
@@ -0,0 +1,43 @@
+package com.harmonic.tuner;
+
+/** Equal-tempered note arithmetic relative to A4 = 440 Hz (MIDI 69). */
+public final class Notes {
+    private Notes() {}
+
+    private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+    private static final double A4 = 440.0;
+    private static final double LN2 = Math.log(2);
+
+    /** @return fractional MIDI note number of the given frequency */
+    public static double midi(double hz) {
+        return 69 + 12 * Math.log(hz / A4) / LN2;
+    }
+
+    /** @return MIDI number of the closest equal-tempered note */
+    public static int nearestMidi(double hz) {
+        return (int) Math.round(midi(hz));
+    }
+
+    /** @return frequency of a (possibly fractional) MIDI note */
+    public static double frequency(double midi) {
+        return A4 * Math.pow(2, (midi - 69) / 12.0);
+    }
+
+    /** @return note name with octave, e.g. "A4" or "C#3" */
+    public static String name(int midi) {
+        int note = Math.floorMod(midi, 12);
+        int octave = Math.floorDiv(midi, 12) - 1;
+        return NOTE_NAMES[note] + octave;
+    }
+
+    /** @return deviation of hz from referenceHz in cents */
+    public static double cents(double hz, double referenceHz) {
+        return 1200.0 * (Math.log(hz / referenceHz) / LN2);
+    }
+
+    /** @return deviation of hz from the closest equal-tempered note in cents */
+    public static double centsFromNearest(double hz) {
+        double m = midi(hz);
+        return 100.0 * (m - Math.round(m));
+    }
+}
@@ -0,0 +1,16 @@
+package com.harmonic.tuner;
+
+/** Conversion of signed 16-bit little-endian PCM to float samples. */
+public final class Pcm16 {
+    private Pcm16() {}
+
+    /**
+     * Decode byteCount / 2 samples from src into dst, scaled to [-1, 1).
+     * @return number of samples written
+     */
+    public static int toFloat(byte[] src, int byteCount, float[] dst) {
+        int samplesRead = Math.min(byteCount / 2, dst.length);
+        Kernels.get().pcm16ToFloat(src, 0, dst, 0, samplesRead);
+        return samplesRead;
+    }
+}
@@ -0,0 +1,190 @@
+package com.harmonic.tuner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Sequential reader for WAV and headerless PCM files that maps the file in
+ * bounded regions instead of loading it, so arbitrarily long recordings are
+ * decoded with constant heap use. Multi-channel input is downmixed to mono.
+ * {@link #seek} moves the read position, so several readers of one file can
+ * each decode their own part of it.
+ *
+ * Supported WAV encodings: 8-bit unsigned, 16/24/32-bit signed integer and
+ * 32-bit float (plain or WAVE_FORMAT_EXTENSIBLE). Raw files are read as
+ * signed 16-bit little-endian with a caller-supplied rate and channel count.
+ */
+public final class PcmFileReader implements Closeable {
+    /** Size of one mapped window; the mapping slides through the file in steps of at most this. */
+    static final int REGION_BYTES = 32 << 20;
+
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final int bytesPerSample;
+    private final boolean floatSamples;
+    private final long dataStart;
+    private final long dataEnd;
+    private final int blockAlign;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+
+    private PcmFileReader(FileChannel channel, int sampleRate, int channels, int bitsPerSample,
+                          boolean floatSamples, long dataStart, long dataLength) throws IOException {
+        if (channels <= 0 || sampleRate <= 0) throw new IOException("Invalid format: " + channels + " ch @ " + sampleRate + " Hz");
+        if (floatSamples ? bitsPerSample != 32 : (bitsPerSample < 8 || bitsPerSample > 32 || bitsPerSample % 8 != 0)) {
+            throw new IOException("Unsupported sample size: " + bitsPerSample + " bits" + (floatSamples ? " float" : ""));
+        }
+        this.channel = channel;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bytesPerSample = bitsPerSample / 8;
+        this.floatSamples = floatSamples;
+        this.blockAlign = bytesPerSample * channels;
+        this.dataStart = dataStart;
+        long end = Math.min(channel.size(), dataStart + dataLength);
+        this.dataEnd = end - (end - dataStart) % blockAlign;
+        this.position = dataStart;
+    }
+
+    /** Open a file, choosing WAV or raw decoding from its extension. */
+    public static PcmFileReader open(Path file, int rawSampleRate, int rawChannels) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".wav") || name.endsWith(".wave") ? openWav(file) : openRaw(file, rawSampleRate, rawChannels);
+    }
+
+    public static PcmFileReader openRaw(Path file, int sampleRate, int channels) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new PcmFileReader(ch, sampleRate, channels, 16, false, 0, ch.size());
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    public static PcmFileReader openWav(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return parseWav(ch, file);
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+    }
+
+    private static PcmFileReader parseWav(FileChannel ch, Path file) throws IOException {
+        long size = ch.size();
+        MappedByteBuffer head = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, 12));
+        head.order(ByteOrder.LITTLE_ENDIAN);
+        if (size < 12 || head.getInt(0) != 0x46464952 /* RIFF */ || head.getInt(8) != 0x45564157 /* WAVE */) {
+            throw new IOException(file + ": not a RIFF/WAVE file");
+        }
+        int format = -1, channels = 0, rate = 0, bits = 0;
+        long pos = 12;
+        while (pos + 8 <= size) {
+            MappedByteBuffer chunk = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(size - pos, 48));
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            int id = chunk.getInt(0);
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+            if (id == 0x20746d66 /* "fmt " */ && chunk.limit() >= 24) {
+                format = chunk.getShort(8) & 0xFFFF;
+                channels = chunk.getShort(10) & 0xFFFF;
+                rate = chunk.getInt(12);
+                bits = chunk.getShort(22) & 0xFFFF;
+                if (format == FORMAT_EXTENSIBLE && chunk.limit() >= 34) {
+                    format = chunk.getShort(32) & 0xFFFF; // first two bytes of the sub-format GUID
+                }
+            } else if (id == 0x61746164 /* "data" */) {
+                if (format != FORMAT_PCM && format != FORMAT_FLOAT) {
+                    throw new IOException(file + ": unsupported WAV format tag " + format);
+                }
+                // streamed writers leave the length at 0 or 0xFFFFFFFF; read to end of file then
+                if (length == 0 || length == 0xFFFFFFFFL) length = size - pos - 8;
+                return new PcmFileReader(ch, rate, channels, bits, format == FORMAT_FLOAT, pos + 8, length);
+            }
+            pos += 8 + length + (length & 1);
+        }
+        throw new IOException(file + ": no data chunk");
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    /** @return number of sample frames (one sample per channel) in the file */
+    public long totalFrames() {
+        return (dataEnd - dataStart) / blockAlign;
+    }
+
+    /** Continue reading at sample frame index frame, clamped to the end of the data. */
+    public void seek(long frame) {
+        if (frame < 0) throw new IllegalArgumentException("frame " + frame + " < 0");
+        position = dataStart + Math.min(frame, totalFrames()) * blockAlign;
+    }
+
+    /**
+     * Decode up to frames sample frames, downmixed to mono, into dst.
+     * @return number of frames decoded, 0 at end of data
+     */
+    public int read(float[] dst, int offset, int frames) throws IOException {
+        int done = 0;
+        while (done < frames && position < dataEnd) {
+            if (region == null || position < regionStart || position >= regionStart + region.limit()) remap();
+            int available = (int) ((regionStart + region.limit() - position) / blockAlign);
+            int n = Math.min(frames - done, available);
+            int base = (int) (position - regionStart);
+            for (int i = 0; i < n; i++) {
+                int p = base + i * blockAlign;
+                float sum = 0;
+                for (int c = 0; c < channels; c++) sum += sample(p + c * bytesPerSample);
+                dst[offset + done + i] = channels == 1 ? sum : sum / channels;
+            }
+            done += n;
+            position += (long) n * blockAlign;
+        }
+        return done;
+    }
+
+    private float sample(int p) {
+        MappedByteBuffer b = region;
+        if (floatSamples) return b.getFloat(p);
+        switch (bytesPerSample) {
+            case 1: return ((b.get(p) & 0xFF) - 128) / 128f;
+            case 2: return b.getShort(p) / 32768f;
+            case 3: return ((b.get(p) & 0xFF) | (b.get(p + 1) & 0xFF) << 8 | b.get(p + 2) << 16) / 8388608f;
+            default: return b.getInt(p) / 2147483648f;
+        }
+    }
+
+    // map the next window, aligned so that no sample frame straddles its end
+    private void remap() throws IOException {
+        long remaining = dataEnd - position;
+        long length = Math.min(remaining, REGION_BYTES - REGION_BYTES % blockAlign);
+        region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+        regionStart = position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        channel.close();
+    }
+}
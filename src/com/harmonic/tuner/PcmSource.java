@@ -0,0 +1,43 @@
+package com.harmonic.tuner;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A stream of interleaved signed 16-bit little-endian PCM, the format the
+ * capture path consumes. Implemented over a sound card line
+ * ({@link LinePcmSource}) and by generators and recordings, so everything
+ * downstream can run without audio hardware.
+ */
+public interface PcmSource extends Closeable {
+    int sampleRate();
+
+    /** @return interleaved channels per sample frame */
+    int channels();
+
+    /**
+     * Read up to length bytes, blocking until at least one whole sample
+     * frame is available. Returns whole frames only.
+     *
+     * @return bytes read, or -1 at end of stream
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Read exactly length bytes unless the stream ends first.
+     * @return bytes read; less than length only at end of stream
+     */
+    default int readFully(byte[] buffer, int offset, int length) throws IOException {
+        int done = 0;
+        while (done < length) {
+            int n = read(buffer, offset + done, length - done);
+            if (n < 0) break;
+            done += n;
+        }
+        return done;
+    }
+
+    /** Stop the stream; a read blocked in another thread returns promptly. */
+    @Override
+    void close() throws IOException;
+}
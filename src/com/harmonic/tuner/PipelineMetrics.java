@@ -0,0 +1,183 @@
+package com.harmonic.tuner;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput counters for the capture-to-display pipeline.
+ *
+ * Each {@link Stage} has a {@link LatencyHistogram}; the threads that run
+ * the stage time it with {@link System#nanoTime()} and call {@link #record}.
+ * Together with the frame and overrun counters this shows where the time
+ * between the microphone and the screen goes, and the per-stage percentiles
+ * can be compared across machines.
+ *
+ * The data is available in-process through {@link #statistics} and
+ * {@link #report()}, over JMX once {@link #register()} has run, and as Java
+ * Flight Recorder events when the optional {@code com.harmonic.tuner.jfr}
+ * package is compiled and the runtime has JFR. Recording never blocks and
+ * never allocates unless a flight recording is active.
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+    public static final String OBJECT_NAME = "com.harmonic.tuner:type=PipelineMetrics";
+
+    public enum Stage {
+        /** Time blocked in {@code TargetDataLine.read}, i.e. waiting for the driver. */
+        READ,
+        /** PCM to float conversion of one capture block. */
+        CONVERT,
+        /** {@link StrobeAnalyzer} update for the new hop of one analysis frame. */
+        STROBE,
+        /** {@link CaptureRecorder} write of one capture block. */
+        RECORD,
+        /** The {@link SignalGate} decision ahead of detection. */
+        GATE,
+        /** One pitch estimate. */
+        DETECT,
+        /** One smoothing step. */
+        SMOOTH,
+        /** From publishing a display value to the EDT picking it up. */
+        EDT_LAG
+    }
+
+    /** Receives every recorded duration; implemented by the optional JFR bridge. */
+    public interface EventSink {
+        /** Called once from {@link #register()}, e.g. to hook periodic events. */
+        void attach(PipelineMetrics metrics);
+
+        void stage(Stage stage, long nanos);
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final EventSink NO_EVENTS = new EventSink() {
+        @Override
+        public void attach(PipelineMetrics metrics) {
+        }
+
+        @Override
+        public void stage(Stage stage, long nanos) {
+        }
+    };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGES.length];
+    private final AtomicLong frames = new AtomicLong();
+    private final AtomicLong noPitchFrames = new AtomicLong();
+    private final AtomicLong gatedFrames = new AtomicLong();
+    private final AtomicLong captureOverruns = new AtomicLong();
+    private EventSink events = NO_EVENTS;
+
+    public PipelineMetrics() {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Publish these metrics as an MXBean and, when available, as JFR events.
+     * Call before the pipeline threads start. Failures are reported and
+     * otherwise ignored; the in-process API works regardless.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException ex) {
+            // another instance in this JVM got there first
+        } catch (JMException | SecurityException ex) {
+            System.err.println("Pipeline metrics not available over JMX: " + ex);
+        }
+        try {
+            EventSink sink = (EventSink) Class.forName("com.harmonic.tuner.jfr.JfrEventSink").getConstructor().newInstance();
+            sink.attach(this);
+            events = sink;
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            // JFR bridge not compiled, or no jdk.jfr in this runtime
+        }
+    }
+
+    /** Count one duration of the given stage. */
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+        events.stage(stage, nanos);
+    }
+
+    /** Count one analysed frame. */
+    public void frame(boolean hasPitch) {
+        frames.incrementAndGet();
+        if (!hasPitch) noPitchFrames.incrementAndGet();
+    }
+
+    /** Count one frame the gate kept from the estimator; call in addition to {@link #frame}. */
+    public void gated() {
+        gatedFrames.incrementAndGet();
+    }
+
+    /** Count capture audio lost because a buffer was full. */
+    public void captureOverrun() {
+        captureOverruns.incrementAndGet();
+    }
+
+    public StageStatistics statistics(Stage stage) {
+        return histograms[stage.ordinal()].statistics(stage.name());
+    }
+
+    @Override
+    public long getFramesProcessed() {
+        return frames.get();
+    }
+
+    @Override
+    public long getNoPitchFrames() {
+        return noPitchFrames.get();
+    }
+
+    @Override
+    public long getGatedFrames() {
+        return gatedFrames.get();
+    }
+
+    @Override
+    public long getCaptureOverruns() {
+        return captureOverruns.get();
+    }
+
+    @Override
+    public StageStatistics[] getStages() {
+        StageStatistics[] s = new StageStatistics[STAGES.length];
+        for (Stage stage : STAGES) s[stage.ordinal()] = statistics(stage);
+        return s;
+    }
+
+    @Override
+    public String getReport() {
+        return report();
+    }
+
+    /** @return stage percentiles in microseconds and the counters, as a text table */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-8s %9s %10s %10s %10s %10s %10s %10s%n",
+                "stage", "count", "mean_us", "p50_us", "p90_us", "p99_us", "p99.9_us", "max_us"));
+        for (StageStatistics s : getStages()) sb.append(s).append(System.lineSeparator());
+        sb.append("frames ").append(getFramesProcessed())
+                .append(", no pitch ").append(getNoPitchFrames())
+                .append(String.format(Locale.ROOT, ", gated %d (%.1f%%)", getGatedFrames(), gatedPercent()))
+                .append(", capture overruns ").append(getCaptureOverruns());
+        return sb.toString();
+    }
+
+    private double gatedPercent() {
+        long n = getFramesProcessed();
+        return n == 0 ? 0 : 100.0 * getGatedFrames() / n;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram h : histograms) h.reset();
+        frames.set(0);
+        noPitchFrames.set(0);
+        gatedFrames.set(0);
+        captureOverruns.set(0);
+    }
+}
@@ -0,0 +1,24 @@
+package com.harmonic.tuner;
+
+/**
+ * JMX view of {@link PipelineMetrics}, registered as
+ * {@value PipelineMetrics#OBJECT_NAME}.
+ */
+public interface PipelineMetricsMXBean {
+    long getFramesProcessed();
+
+    long getNoPitchFrames();
+
+    /** @return frames the signal gate kept from the estimator, a subset of the processed frames */
+    long getGatedFrames();
+
+    long getCaptureOverruns();
+
+    /** @return latency summary of every stage, in {@link PipelineMetrics.Stage} order */
+    StageStatistics[] getStages();
+
+    /** @return the same data as a fixed-width text table */
+    String getReport();
+
+    void reset();
+}
@@ -10,26 +10,33 @@ public final class PitchDetector {
      * @return estimated frequency in Hz, or -1 if not found
      */
     public static double detect(float[] audio, int sampleRate) {
+        return detect(audio, sampleRate, PitchEstimator.DEFAULT_MIN_HZ, PitchEstimator.DEFAULT_MAX_HZ);
+    }
+
+    /**
+     * Autocorrelation estimate restricted to fundamentals in [minHz, maxHz].
+     * Only the lags of that range are evaluated, so a narrow range around a
+     * known target costs a small fraction of the full 50-2000 Hz scan.
+     * @return estimated frequency in Hz, or -1 if not found
+     */
+    public static double detect(float[] audio, int sampleRate, double minHz, double maxHz) {
         int n = audio.length;
         if (n == 0) return -1;
 
         // Autocorrelation
-        int maxLag = Math.min(n - 1, sampleRate / 50); // lowest freq 50 Hz
-        int minLag = Math.max(1, sampleRate / 2000); // highest freq ~2000 Hz
+        int maxLag = maxLag(n, sampleRate, minHz);
+        int minLag = minLag(sampleRate, maxHz);
 
         double bestCorr = Double.NEGATIVE_INFINITY;
         int bestLag = -1;
 
         // Pre-calc energy for normalization
-        double energy = 0;
-        for (int i = 0; i < n; i++) energy += audio[i] * audio[i];
+        Kernels k = Kernels.get();
+        double energy = k.dot(audio, 0, audio, 0, n);
         if (energy <= 1e-8) return -1;
 
         for (int lag = minLag; lag <= maxLag; lag++) {
-            double corr = 0;
-            for (int i = 0; i + lag < n; i++) {
-                corr += audio[i] * audio[i + lag];
-            }
+            double corr = k.dot(audio, 0, audio, lag, n - lag);
             // normalize by energy
             corr /= Math.sqrt(energy * energy);
             if (corr > bestCorr) {
@@ -46,14 +53,124 @@ public final class PitchDetector {
             double c0 = acorr(audio, n, bestLag - 1);
             double c1 = acorr(audio, n, bestLag);
             double c2 = acorr(audio, n, bestLag + 1);
-            double denom = (c0 - 2 * c1 + c2);
-            if (Math.abs(denom) > 1e-12) {
-                double delta = 0.5 * (c0 - c2) / denom;
-                refinedLag = bestLag + delta;
+            refinedLag = refine(bestLag, c0, c1, c2);
+        }
+        return toFrequency(refinedLag, sampleRate);
+    }
+
+    /**
+     * Same estimate as {@link #detect(float[], int)}, with the lag sums taken
+     * from an FFT autocorrelation instead of the O(n * maxLag) loop.
+     *
+     * The FFT path accumulates in double precision throughout, while the time
+     * domain loop rounds each product to float. For frames whose best lag is
+     * unambiguous the two agree to within 1e-6 relative frequency (about
+     * 0.002 cents); lags whose normalized correlations differ by less than
+     * ~1e-9 may resolve to either neighbour.
+     *
+     * @param acf autocorrelator sized for at least audio.length samples and
+     *            lag sampleRate / 50, see {@link #newAutocorrelator(int, int)}
+     */
+    public static double detect(float[] audio, int sampleRate, FftAutocorrelator acf) {
+        int n = audio.length;
+        if (n == 0) return -1;
+
+        int maxLag = maxLag(n, sampleRate, PitchEstimator.DEFAULT_MIN_HZ);
+        int minLag = minLag(sampleRate, PitchEstimator.DEFAULT_MAX_HZ);
+
+        double energy = Kernels.get().dot(audio, 0, audio, 0, n);
+        if (energy <= 1e-8) return -1;
+
+        double[] r = acf.autocorrelate(audio, n, maxLag);
+        return peakFrequency(r, minLag, maxLag, energy, sampleRate, null);
+    }
+
+    /**
+     * Pick the strongest normalized autocorrelation peak in [minLag, maxLag],
+     * refine it parabolically and convert it to Hz. When result is non-null
+     * the frequency and the normalized peak height are stored in it, along
+     * with the next strongest local maxima as runners-up.
+     */
+    static double peakFrequency(double[] r, int minLag, int maxLag, double energy, int sampleRate, PitchResult result) {
+        double norm = Math.sqrt(energy * energy);
+        double bestCorr = Double.NEGATIVE_INFINITY;
+        int bestLag = -1;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            double corr = r[lag] / norm;
+            if (corr > bestCorr) {
+                bestCorr = corr;
+                bestLag = lag;
+            }
+        }
+
+        double freq = -1;
+        if (bestLag > 0) {
+            double refinedLag = bestLag;
+            if (bestLag > minLag && bestLag < maxLag) {
+                refinedLag = refine(bestLag, r[bestLag - 1], r[bestLag], r[bestLag + 1]);
             }
+            freq = toFrequency(refinedLag, sampleRate);
+        }
+        if (result != null) {
+            result.set(freq, freq > 0 ? Math.max(0, Math.min(1, bestCorr)) : 0);
+            if (freq > 0) addPeakCandidates(r, norm, minLag, maxLag, bestLag, sampleRate, result);
+        }
+        return freq;
+    }
+
+    // offer the interior local maxima of r[minLag..maxLag] other than best as runners-up, scored r / norm
+    static void addPeakCandidates(double[] r, double norm, int minLag, int maxLag, int best, int sampleRate,
+                                  PitchResult result) {
+        for (int lag = minLag + 1; lag < maxLag; lag++) {
+            double v = r[lag];
+            if (lag == best || v <= r[lag - 1] || v < r[lag + 1]) continue;
+            double score = Math.min(1, v / norm);
+            if (score <= 0 || !result.wantsCandidate(score)) continue;
+            result.addCandidate(toFrequency(refine(lag, r[lag - 1], v, r[lag + 1]), sampleRate), score);
+        }
+    }
+
+    /**
+     * Create an autocorrelator able to serve {@link #detect(float[], int, FftAutocorrelator)}
+     * for frames of up to frameSize samples at the given sample rate.
+     */
+    public static FftAutocorrelator newAutocorrelator(int frameSize, int sampleRate) {
+        return newAutocorrelator(frameSize, sampleRate, PitchEstimator.DEFAULT_MIN_HZ);
+    }
+
+    /** Create an autocorrelator covering fundamentals down to lowestHz. */
+    public static FftAutocorrelator newAutocorrelator(int frameSize, int sampleRate, double lowestHz) {
+        return new FftAutocorrelator(frameSize, maxLag(frameSize, sampleRate, lowestHz));
+    }
+
+    // longest lag to search for fundamentals down to minHz in a frame of n samples
+    static int maxLag(int n, int sampleRate, double minHz) {
+        return Math.min(n - 1, (int) (sampleRate / minHz));
+    }
+
+    // shortest lag to search for fundamentals up to maxHz
+    static int minLag(int sampleRate, double maxHz) {
+        return Math.max(1, (int) (sampleRate / maxHz));
+    }
+
+    static void checkRange(double minHz, double maxHz) {
+        if (!(minHz > 0 && maxHz > minHz)) {
+            throw new IllegalArgumentException("invalid search range " + minHz + ".." + maxHz + " Hz");
+        }
+    }
+
+    // parabolic vertex through (lag-1, c0), (lag, c1), (lag+1, c2)
+    static double refine(int lag, double c0, double c1, double c2) {
+        double denom = (c0 - 2 * c1 + c2);
+        if (Math.abs(denom) > 1e-12) {
+            double delta = 0.5 * (c0 - c2) / denom;
+            return lag + delta;
         }
+        return lag;
+    }
 
-        double freq = sampleRate / refinedLag;
+    static double toFrequency(double lag, int sampleRate) {
+        double freq = sampleRate / lag;
         if (freq <= 0 || freq > sampleRate / 2.0) return -1;
         return freq;
     }
@@ -61,8 +178,6 @@ public final class PitchDetector {
     // helper to compute autocorrelation value at specific lag (normalized similar to above)
     private static double acorr(float[] audio, int n, int lag) {
         if (lag < 1 || lag >= n) return 0;
-        double sum = 0;
-        for (int i = 0; i + lag < n; i++) sum += audio[i] * audio[i + lag];
-        return sum;
+        return Kernels.get().dot(audio, 0, audio, lag, n - lag);
     }
 }
@@ -0,0 +1,45 @@
+package com.harmonic.tuner;
+
+import java.util.Locale;
+
+/**
+ * The available {@link PitchEstimator} implementations, selectable by name
+ * (see {@link TunerConfig}).
+ */
+public enum PitchEngine {
+    /** Plain autocorrelation, direct O(n * maxLag) evaluation. */
+    ACF,
+    /** Plain autocorrelation evaluated through the FFT. */
+    ACF_FFT,
+    /** Plain autocorrelation updated per hop between overlapping frames. */
+    ACF_SLIDING,
+    /** YIN cumulative mean normalized difference; fewer octave errors. */
+    YIN,
+    /** McLeod normalized square difference with key-maximum picking. */
+    MPM;
+
+    public PitchEstimator create(int sampleRate, int maxFrameSize) {
+        return create(sampleRate, maxFrameSize, PitchEstimator.DEFAULT_MIN_HZ);
+    }
+
+    /**
+     * @param lowestHz lowest fundamental the estimator must be able to search;
+     *                 the default range stays 50-2000 Hz until narrowed or
+     *                 widened with {@link PitchEstimator#setSearchRange}
+     */
+    public PitchEstimator create(int sampleRate, int maxFrameSize, double lowestHz) {
+        switch (this) {
+            case ACF: return new AutocorrelationEstimator(sampleRate, maxFrameSize, false, lowestHz);
+            case ACF_FFT: return new AutocorrelationEstimator(sampleRate, maxFrameSize, true, lowestHz);
+            case ACF_SLIDING: return new SlidingAutocorrelationEstimator(sampleRate, maxFrameSize, lowestHz);
+            case YIN: return new YinEstimator(sampleRate, maxFrameSize, YinEstimator.DEFAULT_THRESHOLD, lowestHz);
+            case MPM: return new MpmEstimator(sampleRate, maxFrameSize, MpmEstimator.DEFAULT_CUTOFF, lowestHz);
+            default: throw new AssertionError(this);
+        }
+    }
+
+    /** Parse an engine name case-insensitively, accepting '-' for '_'. */
+    public static PitchEngine fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
@@ -0,0 +1,41 @@
+package com.harmonic.tuner;
+
+/**
+ * A stateful pitch detection engine. Implementations own their scratch
+ * buffers, sized for a maximum frame length at construction, and must not
+ * allocate per frame. Instances are confined to a single analysis thread.
+ */
+public interface PitchEstimator {
+    /** Lowest frequency searched by default, matching {@link PitchDetector}. */
+    double DEFAULT_MIN_HZ = 50;
+    /** Highest frequency searched by default, matching {@link PitchDetector}. */
+    double DEFAULT_MAX_HZ = 2000;
+
+    /**
+     * Estimate the fundamental of audio[0..length).
+     *
+     * @param audio mono float samples in range [-1,1]
+     * @param length number of valid samples, at most the configured frame size
+     * @param result receives the frequency (or -1) and clarity
+     */
+    void estimate(float[] audio, int length, PitchResult result);
+
+    /**
+     * Restrict the search to fundamentals in [minHz, maxHz]. Bounds outside
+     * what the estimator was sized for are clamped to its capacity. Engines
+     * that evaluate lags directly get cheaper as the range narrows; FFT
+     * engines only narrow their peak picking.
+     *
+     * @throws IllegalArgumentException unless 0 &lt; minHz &lt; maxHz
+     */
+    void setSearchRange(double minHz, double maxHz);
+
+    /**
+     * Forget any state carried from previous frames. Called when the input
+     * stream is discontinuous, e.g. after the analysis loop skipped ahead.
+     */
+    default void reset() {
+    }
+
+    int sampleRate();
+}
@@ -0,0 +1,104 @@
+package com.harmonic.tuner;
+
+/**
+ * Mutable holder for the output of a {@link PitchEstimator}. One instance is
+ * reused for every frame so the analysis loop does not allocate.
+ *
+ * Besides the estimate, a result holds up to {@value #MAX_CANDIDATES}
+ * candidate pitches with scores on the estimate's clarity scale: the
+ * estimate first, then the engine's runners-up, strongest first. The
+ * runners-up are typically the estimate's octaves and other lags the engine
+ * almost chose; a {@link PitchTracker} picks among them the one that
+ * continues the note instead of jumping with the estimate. Engines without
+ * runners-up report the estimate alone.
+ */
+public final class PitchResult {
+    /** Most candidates a result holds, the estimate included. */
+    public static final int MAX_CANDIDATES = 4;
+
+    private double frequency = -1;
+    private double clarity;
+    private final double[] candidateHz = new double[MAX_CANDIDATES];
+    private final double[] candidateScore = new double[MAX_CANDIDATES];
+    private int candidates;
+
+    /** @return estimated fundamental in Hz, or -1 if no pitch was found */
+    public double frequency() {
+        return frequency;
+    }
+
+    /**
+     * @return confidence of the estimate in [0, 1]; the exact meaning depends
+     *         on the engine (normalized peak height, 1 - aperiodicity, ...)
+     */
+    public double clarity() {
+        return clarity;
+    }
+
+    public boolean hasPitch() {
+        return frequency > 0;
+    }
+
+    /** @return number of candidates, 0 without pitch, else at least 1 */
+    public int candidateCount() {
+        return candidates;
+    }
+
+    /** @return frequency in Hz of candidate i; candidate 0 is {@link #frequency()} */
+    public double candidateFrequency(int i) {
+        if (i >= candidates) throw new IndexOutOfBoundsException(i + " >= " + candidates);
+        return candidateHz[i];
+    }
+
+    /** @return score of candidate i in [0, 1]; candidate 0's is {@link #clarity()} */
+    public double candidateScore(int i) {
+        if (i >= candidates) throw new IndexOutOfBoundsException(i + " >= " + candidates);
+        return candidateScore[i];
+    }
+
+    /** Set the estimate, which becomes the only candidate. */
+    void set(double frequency, double clarity) {
+        this.frequency = frequency;
+        this.clarity = clarity;
+        candidates = 0;
+        if (frequency > 0) {
+            candidateHz[0] = frequency;
+            candidateScore[0] = clarity;
+            candidates = 1;
+        }
+    }
+
+    /**
+     * Offer a runner-up after {@link #set}. It is kept if there is room or it
+     * scores higher than the weakest runner-up, which it then replaces.
+     */
+    void addCandidate(double frequency, double score) {
+        if (candidates == 0 || !(frequency > 0)) return;
+        int i = candidates;
+        if (i == MAX_CANDIDATES) {
+            if (score <= candidateScore[i - 1]) return;
+            i--;
+        } else {
+            candidates++;
+        }
+        // insertion sort by score among the runners-up; the estimate stays first
+        while (i > 1 && candidateScore[i - 1] < score) {
+            candidateHz[i] = candidateHz[i - 1];
+            candidateScore[i] = candidateScore[i - 1];
+            i--;
+        }
+        candidateHz[i] = frequency;
+        candidateScore[i] = score;
+    }
+
+    /** @return whether a runner-up with this score would be kept, to skip refining one that would not */
+    boolean wantsCandidate(double score) {
+        return candidates > 0 && (candidates < MAX_CANDIDATES || score > candidateScore[MAX_CANDIDATES - 1]);
+    }
+
+    void clear() {
+        frequency = -1;
+        clarity = 0;
+        candidates = 0;
+    }
+}
@@ -0,0 +1,215 @@
+package com.harmonic.tuner;
+
+/**
+ * Frame-to-frame pitch tracking: a Kalman filter on log-frequency that
+ * follows one note through the candidates of each {@link PitchResult}.
+ *
+ * The state is the pitch in cents and its rate of change, under a
+ * constant-velocity model whose random acceleration lets the track follow
+ * vibrato and bends. Each frame the track is predicted forward by one hop,
+ * and among the frame's candidates the one nearest the prediction, within
+ * {@value #GATE_SIGMAS} standard deviations or {@value #MIN_GATE_CENTS}
+ * cents, updates it. A candidate's measurement noise grows as its score
+ * falls, so clear frames pull the track harder than murky ones. The
+ * estimator's octave and fifth errors land far outside the gate, and since
+ * its runners-up usually include the true pitch the track continues through
+ * them.
+ *
+ * A change of note is accepted once the strongest candidate has stayed
+ * within {@value #AGREE_CENTS} cents of one pitch for
+ * {@value #CONFIRM_FRAMES} frames while no candidate supports the track, or
+ * for {@value #SWITCH_FRAMES} frames while one still does: a sustained octave
+ * change by the player is followed, a brief octave error is not. Without any
+ * candidate in the gate the track holds its last pitch for the hold time and
+ * then ends. After {@link #reset()}, e.g. on an onset, the next confirmed
+ * candidate starts a new track.
+ *
+ * Each update costs O({@link PitchResult#MAX_CANDIDATES}) with no allocation.
+ * Not thread-safe.
+ */
+public final class PitchTracker {
+    /** How long the last pitch is held through frames without support. */
+    public static final double DEFAULT_HOLD_SECONDS = 0.5;
+
+    static final int CONFIRM_FRAMES = 3;
+    static final int SWITCH_FRAMES = 8;
+    static final double GATE_SIGMAS = 3;
+    static final double MIN_GATE_CENTS = 30;
+    static final double AGREE_CENTS = 50;
+    // standard deviation of a candidate of score 1, in cents
+    private static final double MEASUREMENT_CENTS = 2;
+    // candidates scoring lower are ignored
+    private static final double MIN_SCORE = 0.3;
+    // random acceleration of the pitch, in cents per second squared
+    private static final double ACCELERATION = 5000;
+    // rate-of-change uncertainty of a new track, in cents per second
+    private static final double INITIAL_RATE = 100;
+
+    private final double dt;
+    private final double q;
+    private final int holdFrames;
+
+    private boolean tracking;
+    private double x;   // cents above 1 Hz
+    private double v;   // cents per second
+    private double p00, p01, p11;
+    private int missed;
+    private double pending = Double.NaN;
+    private int pendingFrames;
+    private long acquisitions;
+
+    /** @param frameSeconds time between successive updates, i.e. hop / sample rate */
+    public PitchTracker(double frameSeconds) {
+        this(frameSeconds, DEFAULT_HOLD_SECONDS);
+    }
+
+    /**
+     * @param frameSeconds time between successive updates, i.e. hop / sample rate
+     * @param holdSeconds  how long to hold the pitch through frames without support
+     */
+    public PitchTracker(double frameSeconds, double holdSeconds) {
+        if (!(frameSeconds > 0) || holdSeconds < 0) throw new IllegalArgumentException("invalid frame or hold time");
+        this.dt = frameSeconds;
+        this.q = ACCELERATION * ACCELERATION;
+        this.holdFrames = (int) Math.ceil(holdSeconds / frameSeconds);
+    }
+
+    /** @return the tracked pitch in Hz, or -1 when no note is tracked */
+    public double frequency() {
+        return tracking ? Math.pow(2, x / 1200) : -1;
+    }
+
+    public boolean isTracking() {
+        return tracking;
+    }
+
+    /** @return standard deviation of the tracked pitch in cents, or NaN when not tracking */
+    public double uncertaintyCents() {
+        return tracking ? Math.sqrt(p00) : Double.NaN;
+    }
+
+    /** @return tracks started so far, i.e. first notes plus accepted note changes */
+    public long acquisitions() {
+        return acquisitions;
+    }
+
+    /** Forget the current note; the next confirmed candidate starts a new track. */
+    public void reset() {
+        tracking = false;
+        missed = 0;
+        pending = Double.NaN;
+        pendingFrames = 0;
+    }
+
+    /**
+     * Advance by one frame.
+     *
+     * @return the tracked pitch in Hz after this frame, or -1 when no note is tracked
+     */
+    public double update(PitchResult result) {
+        int top = -1;
+        if (result.candidateCount() > 0 && result.candidateScore(0) >= MIN_SCORE) top = 0;
+        if (!tracking) {
+            if (top < 0) {
+                pendingFrames = 0;
+            } else if (confirm(result, top) >= CONFIRM_FRAMES) {
+                start(result, top);
+            }
+            return frequency();
+        }
+
+        predict();
+        int best = -1;
+        boolean topInGate = false;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < result.candidateCount(); i++) {
+            double score = result.candidateScore(i);
+            if (score < MIN_SCORE) continue;
+            double y = cents(result.candidateFrequency(i)) - x;
+            double s = p00 + noise(score);
+            double gate = Math.max(GATE_SIGMAS * Math.sqrt(s), MIN_GATE_CENTS);
+            if (Math.abs(y) > gate) continue;
+            if (i == top) topInGate = true;
+            double distance = y * y / s;
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+
+        // a strongest candidate away from the track may be a new note
+        boolean away = top >= 0 && !topInGate;
+        int agreeing = away ? confirm(result, top) : 0;
+        if (!away) {
+            pending = Double.NaN;
+            pendingFrames = 0;
+        }
+        if (agreeing >= (best < 0 ? CONFIRM_FRAMES : SWITCH_FRAMES)) {
+            start(result, top);
+        } else if (best >= 0) {
+            correct(cents(result.candidateFrequency(best)), noise(result.candidateScore(best)));
+            missed = 0;
+        } else if (++missed > holdFrames) {
+            tracking = false;
+        } else {
+            // hold: keep the pitch, stop extrapolating it
+            v = 0;
+        }
+        return frequency();
+    }
+
+    // count the frames the strongest candidate has stayed near one pitch, this one included
+    private int confirm(PitchResult result, int i) {
+        double c = cents(result.candidateFrequency(i));
+        if (pendingFrames > 0 && Math.abs(c - pending) < AGREE_CENTS) {
+            pendingFrames++;
+        } else {
+            pendingFrames = 1;
+        }
+        pending = c;
+        return pendingFrames;
+    }
+
+    private void start(PitchResult result, int i) {
+        tracking = true;
+        x = cents(result.candidateFrequency(i));
+        v = 0;
+        p00 = noise(result.candidateScore(i));
+        p01 = 0;
+        p11 = INITIAL_RATE * INITIAL_RATE;
+        missed = 0;
+        pending = Double.NaN;
+        pendingFrames = 0;
+        acquisitions++;
+    }
+
+    private void predict() {
+        double dt2 = dt * dt;
+        x += v * dt;
+        p00 += 2 * dt * p01 + dt2 * p11 + q * dt2 * dt2 / 4;
+        p01 += dt * p11 + q * dt2 * dt / 2;
+        p11 += q * dt2;
+    }
+
+    private void correct(double z, double r) {
+        double s = p00 + r;
+        double k0 = p00 / s;
+        double k1 = p01 / s;
+        double y = z - x;
+        x += k0 * y;
+        v += k1 * y;
+        p11 -= k1 * p01;
+        p01 -= k0 * p01;
+        p00 -= k0 * p00;
+    }
+
+    // measurement variance of a candidate with this score
+    private static double noise(double score) {
+        double sd = MEASUREMENT_CENTS / Math.max(score, MIN_SCORE);
+        return sd * sd;
+    }
+
+    private static double cents(double hz) {
+        return 1200 * Math.log(hz) / Math.log(2);
+    }
+}
@@ -0,0 +1,85 @@
+package com.harmonic.tuner;
+
+import java.util.Arrays;
+
+/**
+ * Anti-aliased integer-factor decimator: a linear-phase low-pass FIR
+ * (Blackman-windowed sinc, passband up to 90% of the new Nyquist) followed by
+ * keeping every factor-th output.
+ *
+ * Only the retained outputs are computed, so the cost is
+ * {@code taps / factor} multiply-adds per input sample. The delay line is
+ * stored twice over so each output is one contiguous dot product, and it and
+ * the output phase carry across calls: a stream fed in arbitrary blocks
+ * decimates exactly as if fed at once. Not thread-safe.
+ */
+public final class PolyphaseDecimator {
+    private final int factor;
+    private final double[] coeffs;
+    private final float[] delay; // each sample at pos and pos + taps
+    private int pos;
+    private int phase;
+
+    /**
+     * @param factor       decimation factor, at least 2
+     * @param tapsPerPhase filter length per output phase; the filter has
+     *                     {@code factor * tapsPerPhase + 1} taps
+     */
+    public PolyphaseDecimator(int factor, int tapsPerPhase) {
+        if (factor < 2 || tapsPerPhase < 1) throw new IllegalArgumentException("factor must be >= 2 and taps >= 1");
+        this.factor = factor;
+        int taps = factor * tapsPerPhase + 1;
+        coeffs = new double[taps];
+        double cutoff = 0.9 * 0.5 / factor; // cycles per input sample
+        double centre = (taps - 1) / 2.0;
+        double sum = 0;
+        for (int k = 0; k < taps; k++) {
+            double t = k - centre;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double w = 0.42 - 0.5 * Math.cos(2 * Math.PI * k / (taps - 1)) + 0.08 * Math.cos(4 * Math.PI * k / (taps - 1));
+            coeffs[k] = sinc * w;
+            sum += coeffs[k];
+        }
+        for (int k = 0; k < taps; k++) coeffs[k] /= sum; // unity gain at DC
+        delay = new float[2 * taps];
+    }
+
+    public int factor() {
+        return factor;
+    }
+
+    /** @return filter delay in input samples */
+    public int delay() {
+        return (coeffs.length - 1) / 2;
+    }
+
+    /**
+     * Filter in[offset..offset+length) and write the retained samples to out.
+     * @return number of samples written, {@code length / factor} when the
+     *         stream position is a multiple of the factor before and after
+     */
+    public int process(float[] in, int offset, int length, float[] out, int outOffset) {
+        int taps = coeffs.length;
+        int produced = 0;
+        for (int i = 0; i < length; i++) {
+            pos = pos == 0 ? taps - 1 : pos - 1; // newest sample at pos, oldest at pos + taps - 1
+            float x = in[offset + i];
+            delay[pos] = x;
+            delay[pos + taps] = x;
+            if (++phase == factor) {
+                phase = 0;
+                double acc = 0;
+                for (int k = 0, p = pos; k < taps; k++, p++) acc += coeffs[k] * delay[p];
+                out[outOffset + produced++] = (float) acc;
+            }
+        }
+        return produced;
+    }
+
+    /** Clear the delay line and restart the output phase. */
+    public void reset() {
+        Arrays.fill(delay, 0);
+        pos = 0;
+        phase = 0;
+    }
+}
@@ -0,0 +1,142 @@
+package com.harmonic.tuner;
+
+/**
+ * Radix-2 FFT for real-valued signals of a fixed power-of-two length.
+ *
+ * The real input is packed into a complex sequence of half the length, so a
+ * transform of N real samples costs one N/2-point complex FFT plus an O(N)
+ * split pass. Twiddle factors, the bit-reversal table and the complex work
+ * arrays are allocated once in the constructor; {@link #forward} and
+ * {@link #inverse} do not allocate. Instances are not thread-safe.
+ */
+public final class RealFft {
+    private final int size;
+    private final int half;
+    private final double[] cos; // cos(2*pi*k/size), k < size/2
+    private final double[] sin; // sin(2*pi*k/size), k < size/2
+    private final int[] bitrev;
+    private final double[] zr;
+    private final double[] zi;
+
+    /**
+     * @param size transform length in real samples; a power of two, at least 4
+     */
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        cos = new double[half];
+        sin = new double[half];
+        for (int k = 0; k < half; k++) {
+            double theta = 2 * Math.PI * k / size;
+            cos[k] = Math.cos(theta);
+            sin[k] = Math.sin(theta);
+        }
+        bitrev = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitrev[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        zr = new double[half];
+        zi = new double[half];
+    }
+
+    /** @return transform length in real samples */
+    public int size() {
+        return size;
+    }
+
+    /** @return smallest power of two that is {@code >= n} (and at least 4) */
+    public static int sizeFor(int n) {
+        int s = 4;
+        while (s < n) s <<= 1;
+        return s;
+    }
+
+    /**
+     * Forward transform of {@code x[0..n)}, zero-padded to {@link #size()}.
+     * Writes bins 0..size/2 (inclusive) to {@code re}/{@code im}, which must
+     * hold at least size/2 + 1 values.
+     */
+    public void forward(float[] x, int n, double[] re, double[] im) {
+        if (n > size) throw new IllegalArgumentException("input longer than FFT size: " + n);
+        for (int j = 0; j < half; j++) {
+            int e = 2 * j;
+            zr[j] = e < n ? x[e] : 0;
+            zi[j] = e + 1 < n ? x[e + 1] : 0;
+        }
+        transform(zr, zi, false);
+
+        // split the packed spectrum: X[k] = E[k] + W^k O[k]
+        for (int k = 0; k <= half; k++) {
+            int k1 = k == half ? 0 : k;
+            int k2 = k == 0 ? 0 : half - k;
+            double ar = zr[k1], ai = zi[k1];
+            double br = zr[k2], bi = -zi[k2];
+            double er = 0.5 * (ar + br), ei = 0.5 * (ai + bi);
+            double or = 0.5 * (ai - bi), oi = -0.5 * (ar - br);
+            double wr = k == half ? -1 : cos[k];
+            double wi = k == half ? 0 : -sin[k];
+            re[k] = er + wr * or - wi * oi;
+            im[k] = ei + wr * oi + wi * or;
+        }
+    }
+
+    /**
+     * Inverse transform of a Hermitian spectrum given as bins 0..size/2 in
+     * {@code re}/{@code im}. Writes {@link #size()} real samples to {@code out},
+     * including the 1/N normalization.
+     */
+    public void inverse(double[] re, double[] im, double[] out) {
+        // merge back into the packed half-length spectrum: Z[k] = E[k] + i O[k]
+        for (int k = 0; k < half; k++) {
+            double ar = re[k], ai = im[k];
+            double br = re[half - k], bi = -im[half - k];
+            double er = 0.5 * (ar + br), ei = 0.5 * (ai + bi);
+            double dr = 0.5 * (ar - br), di = 0.5 * (ai - bi);
+            // O = D * W^-k
+            double c = cos[k], s = sin[k];
+            double or = dr * c - di * s;
+            double oi = dr * s + di * c;
+            zr[k] = er - oi;
+            zi[k] = ei + or;
+        }
+        transform(zr, zi, true);
+        double scale = 1.0 / half;
+        for (int j = 0; j < half; j++) {
+            out[2 * j] = zr[j] * scale;
+            out[2 * j + 1] = zi[j] * scale;
+        }
+    }
+
+    // in-place iterative radix-2 complex FFT of length size/2 (unnormalized)
+    private void transform(double[] re, double[] im, boolean inverse) {
+        for (int i = 0; i < half; i++) {
+            int j = bitrev[i];
+            if (j > i) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int len = 2; len <= half; len <<= 1) {
+            int h = len >> 1;
+            int step = size / len;
+            for (int start = 0; start < half; start += len) {
+                for (int k = 0; k < h; k++) {
+                    double wr = cos[k * step];
+                    double wi = inverse ? sin[k * step] : -sin[k * step];
+                    int a = start + k;
+                    int b = a + h;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
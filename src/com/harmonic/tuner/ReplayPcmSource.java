@@ -0,0 +1,178 @@
+package com.harmonic.tuner;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays back a {@link CaptureRecorder} recording as a {@link PcmSource}, so
+ * a captured session runs through the pipeline again without a microphone.
+ *
+ * Each recorded block is delivered when it is due by its recorded capture
+ * time, scaled by the speed, so at speed 1 the pipeline sees the original
+ * block sizes and timing including the driver's jitter. Unpaced, blocks are
+ * delivered as fast as they are read, which together with a consumer that
+ * does not drop audio gives the same results on every run. A read returns
+ * at most the rest of the current block, like a line read returning what
+ * the driver had.
+ *
+ * Segments are mapped read-only one at a time and the recording is read up
+ * to the first incomplete record, so a recording cut off by a crash plays
+ * up to its last complete block.
+ */
+public final class ReplayPcmSource implements PcmSource {
+    private final List<Path> segments;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameBytes;
+    private final long startEpochMillis;
+    private final double speed;
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private int next;      // offset of the next record header in the segment
+    private int dataPos;   // offset of the undelivered rest of the current block
+    private int pending;   // bytes left in the current block
+    private long firstNanos = -1;
+    private long startNanos;
+    private long frames;
+    private long blocks;
+    private volatile boolean closed;
+
+    /**
+     * @param directory directory holding the segments of one recording
+     * @param speed     1 for the recorded timing, 2 for twice as fast, 0 or less for unpaced
+     */
+    public ReplayPcmSource(Path directory, double speed) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(directory,
+                CaptureRecorder.SEGMENT_PREFIX + "*" + CaptureRecorder.SEGMENT_SUFFIX)) {
+            for (Path p : dir) files.add(p);
+        }
+        Collections.sort(files);
+        if (files.isEmpty()) throw new IOException(directory + ": no recording segments");
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).getFileName().toString().equals(CaptureRecorder.segmentName(i))) {
+                throw new IOException(directory + ": missing " + CaptureRecorder.segmentName(i));
+            }
+        }
+        this.segments = files;
+        this.speed = speed;
+        MappedByteBuffer first = map(0);
+        this.sampleRate = first.getInt(8);
+        this.channels = first.getInt(12);
+        this.frameBytes = 2 * channels;
+        this.startEpochMillis = first.getLong(24);
+        if (sampleRate <= 0 || channels <= 0) throw new IOException(files.get(0) + ": invalid format");
+        open(0, first);
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int channels() {
+        return channels;
+    }
+
+    /** @return wall-clock time the recording was started, in epoch milliseconds */
+    public long startEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /** @return sample frames delivered so far */
+    public long frames() {
+        return frames;
+    }
+
+    /** @return recorded blocks started so far */
+    public long blocks() {
+        return blocks;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length < frameBytes) throw new IllegalArgumentException("Buffer of " + length + " bytes holds no whole frame");
+        if (closed || pending == 0 && !nextBlock()) return -1;
+        int n = Math.min(pending, length - length % frameBytes);
+        segment.position(dataPos);
+        segment.get(buffer, offset, n);
+        dataPos += n;
+        pending -= n;
+        frames += n / frameBytes;
+        return n;
+    }
+
+    // step to the next non-empty record, in this segment or the following ones, and wait until it is due
+    private boolean nextBlock() throws IOException {
+        while (true) {
+            if (next + CaptureRecorder.RECORD_HEADER_BYTES <= segment.limit()) {
+                int length = segment.getInt(next);
+                if (length > 0) {
+                    if (length % frameBytes != 0 || length > segment.limit() - next - CaptureRecorder.RECORD_HEADER_BYTES) {
+                        throw new IOException(segments.get(segmentIndex) + ": corrupt record at offset " + next);
+                    }
+                    pace(segment.getLong(next + 8));
+                    if (closed) return false;
+                    dataPos = next + CaptureRecorder.RECORD_HEADER_BYTES;
+                    pending = length;
+                    next = dataPos + ((length + 7) & ~7);
+                    blocks++;
+                    return true;
+                }
+            }
+            if (segmentIndex + 1 >= segments.size()) return false;
+            open(segmentIndex + 1, map(segmentIndex + 1));
+        }
+    }
+
+    // hold back until the block captured at recordedNanos is due
+    private void pace(long recordedNanos) {
+        long now = System.nanoTime();
+        if (firstNanos < 0) {
+            firstNanos = recordedNanos;
+            startNanos = now;
+        }
+        if (speed <= 0) return;
+        long due = startNanos + (long) ((recordedNanos - firstNanos) / speed);
+        while (!closed && (now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+    }
+
+    private MappedByteBuffer map(int index) throws IOException {
+        Path file = segments.get(index);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < CaptureRecorder.HEADER_BYTES || size > Integer.MAX_VALUE) throw new IOException(file + ": not a recording segment");
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            if (b.getInt(0) != CaptureRecorder.MAGIC) throw new IOException(file + ": not a recording segment");
+            if (b.getInt(4) != CaptureRecorder.VERSION) throw new IOException(file + ": unsupported version " + b.getInt(4));
+            if (b.getInt(16) != index) throw new IOException(file + ": segment index " + b.getInt(16) + ", expected " + index);
+            return b;
+        }
+    }
+
+    private void open(int index, MappedByteBuffer b) throws IOException {
+        if (b.getInt(8) != sampleRate || b.getInt(12) != channels) {
+            throw new IOException(segments.get(index) + ": format differs from the first segment");
+        }
+        segment = b;
+        segmentIndex = index;
+        next = CaptureRecorder.HEADER_BYTES;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,194 @@
+package com.harmonic.tuner;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer / single-consumer lock-free ring of float samples that
+ * hands the consumer overlapping analysis windows.
+ *
+ * The producer (capture thread) appends blocks of samples; it never blocks.
+ * If the consumer has not released enough space the excess samples are
+ * dropped and counted as an overrun. The consumer (analysis thread) reads a
+ * window ending at its read position and then advances by the hop, so
+ * successive windows overlap by {@code window - hop} samples and the frame
+ * rate is {@code sampleRate / hop} regardless of window length. A consumer
+ * that falls more than one window behind skips ahead to the newest complete
+ * hop, counted as dropped hops, so analysis stays live instead of working
+ * through stale audio.
+ *
+ * Positions are absolute sample counts held in atomics, one owned by each
+ * side; the only other shared state is the waiting consumer thread, which
+ * the producer unparks after publishing new samples.
+ */
+public final class SampleRingBuffer {
+    private final float[] data;
+    private final int mask;
+    private final int maxWindow;
+    private final int hop;
+
+    private final AtomicLong written = new AtomicLong();  // producer-owned
+    private final AtomicLong released = new AtomicLong(); // consumer-owned
+    private long readEnd;                                 // consumer-only
+
+    private volatile Thread waiter;
+
+    private final AtomicLong overrunSamples = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+    private final AtomicLong droppedHops = new AtomicLong();
+
+    /**
+     * @param maxWindow largest window the consumer will request
+     * @param hop       samples the read position advances per window
+     */
+    public SampleRingBuffer(int maxWindow, int hop) {
+        if (hop <= 0 || hop > maxWindow) throw new IllegalArgumentException("hop must be in 1.." + maxWindow);
+        // room for the window being read plus at least two windows of backlog
+        int capacity = Integer.highestOneBit(3 * maxWindow - 1) << 1;
+        this.data = new float[capacity];
+        this.mask = capacity - 1;
+        this.maxWindow = maxWindow;
+        this.hop = hop;
+        this.readEnd = maxWindow;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public int hop() {
+        return hop;
+    }
+
+    /**
+     * Producer side: append src[offset..offset+length). Never blocks.
+     * @return number of samples stored; the rest were dropped as an overrun
+     */
+    public int write(float[] src, int offset, int length) {
+        long w = written.get();
+        int free = (int) (data.length - (w - released.get()));
+        int n = Math.min(length, free);
+        if (n < length) {
+            overruns.incrementAndGet();
+            overrunSamples.addAndGet(length - n);
+        }
+        int start = (int) (w & mask);
+        int first = Math.min(n, data.length - start);
+        System.arraycopy(src, offset, data, start, first);
+        System.arraycopy(src, offset + first, data, 0, n - first);
+        // volatile store: must not be reordered with the waiter check below
+        written.set(w + n);
+
+        Thread t = waiter;
+        if (t != null) LockSupport.unpark(t);
+        return n;
+    }
+
+    /**
+     * Producer side: whether length more samples can be written without
+     * making the consumer skip hops to catch up. A producer that is not tied
+     * to real time, such as an unpaced replay, waits for this so every hop is
+     * analysed and the results do not depend on thread scheduling.
+     */
+    public boolean canWriteWithoutSkip(int length) {
+        // the consumer skips once it is a whole window behind, i.e. maxWindow past its released window
+        return written.get() + length - released.get() < 2L * maxWindow;
+    }
+
+    /**
+     * Consumer side: copy the next window of the given length into dst,
+     * waiting up to timeout for the producer to supply it.
+     *
+     * @param window window length, at most the configured maximum
+     * @return true if a window was copied, false on timeout or interrupt
+     */
+    public boolean read(float[] dst, int window, long timeout, TimeUnit unit) {
+        if (window > maxWindow) throw new IllegalArgumentException("window " + window + " > " + maxWindow);
+        long available = written.get();
+        if (available < readEnd) {
+            underruns.incrementAndGet();
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            waiter = Thread.currentThread();
+            try {
+                while ((available = written.get()) < readEnd) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || Thread.currentThread().isInterrupted()) return false;
+                    LockSupport.parkNanos(this, remaining);
+                }
+            } finally {
+                waiter = null;
+            }
+        }
+
+        take(dst, window, available);
+        return true;
+    }
+
+    /**
+     * Consumer side: copy the next window into dst if it is complete, without
+     * waiting. For consumers driven by an executor rather than a dedicated
+     * thread; a false return is not counted as an underrun.
+     *
+     * @return true if a window was copied
+     */
+    public boolean poll(float[] dst, int window) {
+        if (window > maxWindow) throw new IllegalArgumentException("window " + window + " > " + maxWindow);
+        long available = written.get();
+        if (available < readEnd) return false;
+        take(dst, window, available);
+        return true;
+    }
+
+    /** Consumer side: whether the next window is complete, i.e. {@link #poll} would succeed. */
+    public boolean ready() {
+        return written.get() >= readEnd;
+    }
+
+    private void take(float[] dst, int window, long available) {
+        // more than a window behind: jump to the newest complete hop
+        long behind = available - readEnd;
+        if (behind >= maxWindow) {
+            long skip = behind / hop;
+            readEnd += skip * hop;
+            droppedHops.addAndGet(skip);
+        }
+
+        long start = readEnd - window;
+        int from = (int) (start & mask);
+        int first = Math.min(window, data.length - from);
+        System.arraycopy(data, from, dst, 0, first);
+        System.arraycopy(data, 0, dst, first, window - first);
+
+        readEnd += hop;
+        released.lazySet(Math.max(0, readEnd - maxWindow));
+    }
+
+    /** Consumer side: forget buffered audio and restart windowing at the producer's position. */
+    public void resync() {
+        long w = written.get();
+        readEnd = w + maxWindow;
+        released.lazySet(w);
+    }
+
+    /** @return number of producer writes that had to drop samples */
+    public long overruns() {
+        return overruns.get();
+    }
+
+    /** @return total samples dropped by the producer because the ring was full */
+    public long overrunSamples() {
+        return overrunSamples.get();
+    }
+
+    /** @return number of consumer reads that found no complete window and had to wait */
+    public long underruns() {
+        return underruns.get();
+    }
+
+    /** @return hops skipped by the consumer to catch up with the producer */
+    public long droppedHops() {
+        return droppedHops.get();
+    }
+}
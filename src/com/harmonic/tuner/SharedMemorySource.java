@@ -0,0 +1,242 @@
+package com.harmonic.tuner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads a {@link SharedMemoryWriter} ring as a {@link PcmSource}, so audio
+ * published by another local process goes through the same pipeline as a
+ * sound card line. Any number of sources, in one process or several, can
+ * read the same ring at once, up to its reader slots; each keeps its own
+ * position and never blocks the writer or the other readers.
+ *
+ * A source starts at the newest audio and reads onwards. If it falls a
+ * whole ring behind, or the writer overwrites a block while it is being
+ * read, the block is discarded and reading resumes at the newest audio: an
+ * overrun, counted like a line's. Waiting for audio polls the published
+ * sequence with a backoff from {@value #MIN_PARK_NANOS} ns to
+ * {@value #MAX_PARK_NANOS} ns, so a block is picked up within a millisecond
+ * of its publication at little CPU cost. While the writer is silent a read
+ * returns 0 every {@value #IDLE_NANOS} ns, as a line read may, so the
+ * caller can notice that it should stop.
+ *
+ * {@link #read(float[], int, int)} decodes straight from the mapping into
+ * float samples, the only copy between the writer's buffer and the ring
+ * buffer of the analysis; the byte {@link #read(byte[], int, int)} is for
+ * consumers that need the PCM, such as the capture recorder. One thread
+ * reads; {@link #close()} may be called from any thread.
+ */
+public final class SharedMemorySource implements PcmSource {
+    static final long MIN_PARK_NANOS = 50_000;
+    static final long MAX_PARK_NANOS = 1_000_000;
+    static final long IDLE_NANOS = 100_000_000;
+
+    private final Path file;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameBytes;
+    private final int capacity;
+    private final int slot;
+    private final int slotOffset;
+    private final MappedAtomics atomics = MappedAtomics.get();
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer ring;
+    private final ByteBuffer data; // the ring alone, for bulk copies
+    private long position;
+    private long lostBytes;
+    private long overruns;
+    private volatile boolean closed;
+
+    /** Attach to the ring at file, taking the first free reader slot. */
+    public SharedMemorySource(Path file) throws IOException {
+        this.file = file;
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (ch.size() < SharedMemoryWriter.HEADER_BYTES) throw new IOException(file + ": not a shared-memory ring");
+            MappedByteBuffer header = ch.map(FileChannel.MapMode.READ_ONLY, 0, SharedMemoryWriter.HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != SharedMemoryWriter.MAGIC) throw new IOException(file + ": not a shared-memory ring");
+            if (header.getInt(4) != SharedMemoryWriter.VERSION) throw new IOException(file + ": unsupported version " + header.getInt(4));
+            this.sampleRate = header.getInt(8);
+            this.channels = header.getInt(12);
+            this.frameBytes = 2 * channels;
+            this.capacity = header.getInt(16);
+            int slots = header.getInt(20);
+            if (sampleRate <= 0 || channels <= 0 || capacity <= 0 || capacity % frameBytes != 0
+                    || slots < 1 || slots > SharedMemoryWriter.MAX_READER_SLOTS
+                    || ch.size() < (long) SharedMemoryWriter.HEADER_BYTES + capacity) {
+                throw new IOException(file + ": invalid ring header");
+            }
+            ring = ch.map(FileChannel.MapMode.READ_WRITE, 0, (long) SharedMemoryWriter.HEADER_BYTES + capacity);
+            ring.order(ByteOrder.LITTLE_ENDIAN);
+            ring.position(SharedMemoryWriter.HEADER_BYTES);
+            data = ring.slice();
+            ring.position(0);
+
+            int claimed = -1;
+            FileLock held = null;
+            for (int s = 0; s < slots && held == null; s++) {
+                try {
+                    held = ch.tryLock(SharedMemoryWriter.SLOTS_OFFSET + (long) s * SharedMemoryWriter.SLOT_BYTES,
+                            SharedMemoryWriter.SLOT_BYTES, false);
+                } catch (OverlappingFileLockException ex) {
+                    // taken by another source in this JVM
+                }
+                if (held != null) claimed = s;
+            }
+            if (held == null) throw new IOException(file + ": all " + slots + " reader slots are in use");
+            this.slot = claimed;
+            this.slotOffset = SharedMemoryWriter.SLOTS_OFFSET + claimed * SharedMemoryWriter.SLOT_BYTES;
+            this.lock = held;
+            this.channel = ch;
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            throw ex;
+        }
+        position = atomics.getAcquire(ring, SharedMemoryWriter.PUBLISHED_OFFSET);
+        ring.putLong(slotOffset + 8, 0);
+        ring.putLong(slotOffset + 16, 0);
+        atomics.setRelease(ring, slotOffset, position);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int channels() {
+        return channels;
+    }
+
+    /** @return the reader slot this source holds */
+    public int slot() {
+        return slot;
+    }
+
+    /** @return stream bytes consumed so far, i.e. how far into the writer's sequence this source has read */
+    public long position() {
+        return position;
+    }
+
+    /** @return blocks discarded because the writer got a ring ahead */
+    public long overruns() {
+        return overruns;
+    }
+
+    /** @return sample frames lost to overruns */
+    public long lostFrames() {
+        return lostBytes / frameBytes;
+    }
+
+    /** @return sample frames the writer has published that this source has not read yet */
+    public long pendingFrames() {
+        return (atomics.getAcquire(ring, SharedMemoryWriter.PUBLISHED_OFFSET) - position) / frameBytes;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length < frameBytes) throw new IllegalArgumentException("Buffer of " + length + " bytes holds no whole frame");
+        while (true) {
+            int n = await(length - length % frameBytes);
+            if (n <= 0) return n;
+            int at = (int) (position % capacity);
+            int first = Math.min(n, capacity - at);
+            data.position(at);
+            data.get(buffer, offset, first);
+            if (first < n) {
+                data.position(0);
+                data.get(buffer, offset + first, n - first);
+            }
+            if (commit(n)) return n;
+        }
+    }
+
+    /**
+     * Read up to maxSamples samples, whole interleaved frames, decoded to
+     * [-1, 1) straight from the mapping; blocks until at least one frame is
+     * available or the writer has been silent for {@value #IDLE_NANOS} ns.
+     *
+     * @return samples read, 0 if none arrived, or -1 at end of stream
+     */
+    public int read(float[] dst, int offset, int maxSamples) {
+        int maxBytes = (maxSamples - maxSamples % channels) * 2;
+        if (maxBytes < frameBytes) throw new IllegalArgumentException(maxSamples + " samples hold no whole frame");
+        Kernels kernels = Kernels.get();
+        while (true) {
+            int n = await(maxBytes);
+            if (n <= 0) return n;
+            int at = (int) (position % capacity);
+            int first = Math.min(n, capacity - at);
+            kernels.pcm16ToFloat(ring, SharedMemoryWriter.HEADER_BYTES + at, dst, offset, first / 2);
+            if (first < n) kernels.pcm16ToFloat(ring, SharedMemoryWriter.HEADER_BYTES, dst, offset + first / 2, (n - first) / 2);
+            if (commit(n)) return n / 2;
+        }
+    }
+
+    // wait until a frame is published; returns how many bytes up to max can be read at position, 0 when idle, -1 at end
+    private int await(int max) {
+        long park = MIN_PARK_NANOS;
+        long idle = System.nanoTime() + IDLE_NANOS;
+        while (true) {
+            long published = atomics.getAcquire(ring, SharedMemoryWriter.PUBLISHED_OFFSET);
+            if (published - position > capacity) overrun(published);
+            if (published > position) return (int) Math.min(max, published - position);
+            // closed is only final once everything published before it has been read
+            if (closed || atomics.getAcquire(ring, SharedMemoryWriter.STATE_OFFSET) != SharedMemoryWriter.STATE_OPEN
+                    && atomics.getAcquire(ring, SharedMemoryWriter.PUBLISHED_OFFSET) == position) {
+                return -1;
+            }
+            if (System.nanoTime() - idle >= 0) return 0;
+            LockSupport.parkNanos(park);
+            park = Math.min(park * 2, MAX_PARK_NANOS);
+        }
+    }
+
+    // keep the n bytes just copied unless the writer has started overwriting them meanwhile
+    private boolean commit(int n) {
+        atomics.loadFence();
+        long reserved = atomics.getAcquire(ring, SharedMemoryWriter.RESERVED_OFFSET);
+        if (reserved - position > capacity) {
+            overrun(atomics.getAcquire(ring, SharedMemoryWriter.PUBLISHED_OFFSET));
+            return false;
+        }
+        position += n;
+        atomics.setRelease(ring, slotOffset, position);
+        return true;
+    }
+
+    // skip to the newest audio
+    private void overrun(long published) {
+        lostBytes += published - position;
+        overruns++;
+        position = published;
+        ring.putLong(slotOffset + 8, lostBytes);
+        atomics.setRelease(ring, slotOffset + 16, overruns);
+    }
+
+    /** Release the reader slot; a read blocked in another thread returns -1 promptly. */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            lock.release();
+        } catch (IOException ignored) {
+            // the channel closes next, which releases it anyway
+        }
+        channel.close();
+    }
+}
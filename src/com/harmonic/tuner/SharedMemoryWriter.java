@@ -0,0 +1,368 @@
+package com.harmonic.tuner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Producer side of a shared-memory PCM ring: another local process, e.g. a
+ * DAW bridge, publishes signed 16-bit PCM into a memory-mapped file, and
+ * any number of tuners read it with {@link SharedMemorySource}. The writer
+ * never waits for readers; one that falls a whole ring behind loses audio,
+ * as a sound card line would.
+ *
+ * The file starts with a {@value #HEADER_BYTES}-byte header, little-endian:
+ * int magic 'TSHM', int version (1), int sampleRate, int channels, int ring
+ * capacity in bytes (whole sample frames), int reader slots, long wall-clock
+ * creation time in epoch milliseconds, long state (1 open, 2 closed). At
+ * offset {@value #RESERVED_OFFSET} the long reserved sequence and at
+ * {@value #PUBLISHED_OFFSET} the long published sequence count the bytes
+ * ever written; byte n of the stream lives at ring offset n % capacity.
+ * From {@value #SLOTS_OFFSET} follow the reader slots, {@value #SLOT_BYTES}
+ * bytes each: long position (bytes consumed), long bytes lost to overruns,
+ * long overruns. The ring starts at {@value #HEADER_BYTES}.
+ *
+ * A write advances the reserved sequence past the block, copies the block
+ * in, then advances the published sequence to match: readers take data up
+ * to the published sequence, and once they have copied it check that the
+ * reserved sequence has not come within a ring of it, i.e. that the writer
+ * did not overwrite it meanwhile. Neither side takes a lock; see
+ * {@link MappedAtomics} for the ordering. A reader owns its slot by holding
+ * an OS file lock on the slot's bytes, so a slot whose reader died is free
+ * again, and publishes its position there for monitoring.
+ *
+ * A new ring is built under a temporary name and renamed over the path, so
+ * readers never see it half-initialised; a ring it replaces is first marked
+ * closed, ending its readers' streams.
+ *
+ * Also a command-line tool that plays a test tone or a file into a ring, to
+ * run tuners against it on one machine:
+ *
+ * <pre>
+ * java -cp out com.harmonic.tuner.SharedMemoryWriter [options] ring-file
+ *
+ *   --tone 110,164.81    fundamental of each channel in Hz (default 110)
+ *   --file take.wav      play a WAV or raw file instead, downmixed to mono
+ *   --rate 44100         sample rate of the tone, or of raw input
+ *   --block 512          sample frames per write
+ *   --capacity-ms 2000   length of the ring
+ *   --slots 8            reader slots
+ *   --speed 1            1 for real time, 0 for as fast as possible
+ *   --seconds 0          stop after this long, 0 to run until the input ends or forever
+ * </pre>
+ *
+ * On Linux, put the ring under /dev/shm to keep it off the disk. Once a
+ * second the tool prints how far each active reader lags behind.
+ * Not thread-safe; one thread owns the writer.
+ */
+public final class SharedMemoryWriter implements Closeable {
+    /** Default ring: about two seconds of mono 16-bit audio at 44.1 kHz. */
+    public static final int DEFAULT_CAPACITY_BYTES = 176400;
+    public static final int DEFAULT_READER_SLOTS = 8;
+
+    static final int MAGIC = 0x4D485354; // "TSHM" in file byte order
+    static final int VERSION = 1;
+    static final int STATE_OFFSET = 32;
+    static final int RESERVED_OFFSET = 64;
+    static final int PUBLISHED_OFFSET = 72;
+    static final int SLOTS_OFFSET = 128;
+    static final int SLOT_BYTES = 64;
+    static final int HEADER_BYTES = 4096;
+    static final int MAX_READER_SLOTS = (HEADER_BYTES - SLOTS_OFFSET) / SLOT_BYTES;
+    static final long STATE_OPEN = 1;
+    static final long STATE_CLOSED = 2;
+    private static final long PRINT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final Path file;
+    private final int sampleRate;
+    private final int channels;
+    private final int frameBytes;
+    private final int capacity;
+    private final int slots;
+    private final MappedAtomics atomics = MappedAtomics.get();
+    private final FileChannel channel;
+    private MappedByteBuffer ring;
+    private ByteBuffer data; // the ring alone, for bulk copies
+    private long sequence;
+
+    /**
+     * Create a ring at file, replacing any ring or file there.
+     *
+     * @param capacityBytes ring size, rounded down to whole sample frames; a single write may not exceed it
+     * @param readerSlots   readers that can attach at once, 1 to {@value #MAX_READER_SLOTS}
+     */
+    public SharedMemoryWriter(Path file, int sampleRate, int channels, int capacityBytes, int readerSlots) throws IOException {
+        if (channels <= 0 || sampleRate <= 0) throw new IllegalArgumentException("Invalid format: " + channels + " ch @ " + sampleRate + " Hz");
+        if (readerSlots < 1 || readerSlots > MAX_READER_SLOTS) {
+            throw new IllegalArgumentException("readerSlots must be in 1.." + MAX_READER_SLOTS);
+        }
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.frameBytes = 2 * channels;
+        this.capacity = capacityBytes - capacityBytes % frameBytes;
+        this.slots = readerSlots;
+        if (capacity < frameBytes) throw new IllegalArgumentException("capacityBytes holds no sample frame");
+
+        closeExisting(file);
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName() + ".", ".tmp");
+        FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, (long) HEADER_BYTES + capacity);
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            b.putInt(0, MAGIC);
+            b.putInt(4, VERSION);
+            b.putInt(8, sampleRate);
+            b.putInt(12, channels);
+            b.putInt(16, capacity);
+            b.putInt(20, readerSlots);
+            b.putLong(24, System.currentTimeMillis());
+            b.putLong(STATE_OFFSET, STATE_OPEN);
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            ring = b;
+            b.position(HEADER_BYTES);
+            data = b.slice();
+            channel = ch;
+        } catch (IOException | RuntimeException ex) {
+            ch.close();
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+    }
+
+    // mark a ring already at file closed, so readers mapping it stop instead of waiting forever
+    private static void closeExisting(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (ch.size() < HEADER_BYTES) return;
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            b.order(ByteOrder.LITTLE_ENDIAN);
+            if (b.getInt(0) == MAGIC) MappedAtomics.get().setRelease(b, STATE_OFFSET, STATE_CLOSED);
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public int channels() {
+        return channels;
+    }
+
+    /** @return ring size in bytes */
+    public int capacity() {
+        return capacity;
+    }
+
+    /** @return bytes published so far */
+    public long sequence() {
+        return sequence;
+    }
+
+    public int readerSlots() {
+        return slots;
+    }
+
+    /**
+     * Publish one block of whole sample frames of interleaved signed 16-bit
+     * little-endian PCM. Never blocks.
+     */
+    public void write(byte[] pcm, int offset, int length) throws IOException {
+        if (ring == null) throw new IOException("Writer is closed");
+        if (length <= 0) return;
+        if (length % frameBytes != 0) throw new IllegalArgumentException(length + " bytes is not a whole number of frames");
+        if (length > capacity) throw new IllegalArgumentException("Block of " + length + " bytes exceeds the " + capacity + "-byte ring");
+        long end = sequence + length;
+        // announce the overwrite before making it, so readers of the old bytes can tell
+        atomics.setRelease(ring, RESERVED_OFFSET, end);
+        atomics.storeFence();
+        int at = (int) (sequence % capacity);
+        int first = Math.min(length, capacity - at);
+        data.position(at);
+        data.put(pcm, offset, first);
+        if (first < length) {
+            data.position(0);
+            data.put(pcm, offset + first, length - first);
+        }
+        atomics.setRelease(ring, PUBLISHED_OFFSET, end);
+        sequence = end;
+    }
+
+    /** @return whether a reader holds the slot */
+    public boolean readerActive(int slot) throws IOException {
+        checkSlot(slot);
+        try (FileLock lock = channel.tryLock(SLOTS_OFFSET + (long) slot * SLOT_BYTES, SLOT_BYTES, false)) {
+            return lock == null;
+        } catch (OverlappingFileLockException ex) {
+            return true; // held by a reader in this JVM
+        }
+    }
+
+    /** @return bytes the reader of the slot has consumed, as last published by it */
+    public long readerPosition(int slot) {
+        checkSlot(slot);
+        return atomics.getAcquire(ring, SLOTS_OFFSET + slot * SLOT_BYTES);
+    }
+
+    /** @return overruns the reader of the slot has reported */
+    public long readerOverruns(int slot) {
+        checkSlot(slot);
+        return atomics.getAcquire(ring, SLOTS_OFFSET + slot * SLOT_BYTES + 16);
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= slots) throw new IndexOutOfBoundsException("slot " + slot + " of " + slots);
+    }
+
+    /** Mark the ring closed; readers deliver what is left and then end of stream. */
+    @Override
+    public void close() throws IOException {
+        if (ring == null) return;
+        atomics.setRelease(ring, STATE_OFFSET, STATE_CLOSED);
+        ring = null;
+        data = null;
+        channel.close();
+    }
+
+    // ---- command-line tool ----
+
+    public static void main(String[] args) throws IOException {
+        double[] tones = {110};
+        Path input = null;
+        int rate = 44100;
+        int block = 512;
+        int capacityMs = 2000;
+        int slots = DEFAULT_READER_SLOTS;
+        double speed = 1;
+        double seconds = 0;
+        Path ringFile = null;
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if (!opt.startsWith("--")) {
+                ringFile = Paths.get(opt);
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--tone": tones = doubles(val); break;
+                case "--file": input = Paths.get(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--block": block = Integer.parseInt(val); break;
+                case "--capacity-ms": capacityMs = Integer.parseInt(val); break;
+                case "--slots": slots = Integer.parseInt(val); break;
+                case "--speed": speed = Double.parseDouble(val); break;
+                case "--seconds": seconds = Double.parseDouble(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        if (ringFile == null) {
+            System.err.println("usage: SharedMemoryWriter [options] ring-file");
+            System.exit(2);
+        }
+        if (block <= 0) throw new IllegalArgumentException("block must be positive");
+
+        PcmFileReader reader = input != null ? PcmFileReader.open(input, rate, 1) : null;
+        int channels = reader != null ? 1 : tones.length;
+        if (reader != null) rate = reader.sampleRate();
+        PcmSource tone = reader == null ? new SyntheticPcmSource(rate, SyntheticSignal.Type.HARMONIC, tones, 0, -1, 1) : null;
+        int frameBytes = 2 * channels;
+        int capacity = Math.max(block, (int) ((long) capacityMs * rate / 1000)) * frameBytes;
+        long maxFrames = seconds > 0 ? (long) (seconds * rate) : -1;
+
+        try (SharedMemoryWriter writer = new SharedMemoryWriter(ringFile, rate, channels, capacity, slots)) {
+            // on Ctrl-C, let the loop end so the ring is marked closed for its readers
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread main = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                stop.set(true);
+                try {
+                    main.join(1000);
+                } catch (InterruptedException ignored) {
+                    // exiting anyway
+                }
+            }));
+            System.out.printf(Locale.ROOT, "%s: %d ch @ %d Hz, ring %d ms, %d slots, %s, atomics %s%n", ringFile,
+                    channels, rate, capacity / frameBytes * 1000L / rate, slots,
+                    input != null ? input.toString() : "tone", MappedAtomics.get().name());
+            byte[] pcm = new byte[block * frameBytes];
+            float[] samples = reader != null ? new float[block] : null;
+            long frames = 0;
+            long start = System.nanoTime();
+            long lastPrint = start;
+            while (!stop.get() && (maxFrames < 0 || frames < maxFrames)) {
+                int n = (int) (maxFrames < 0 ? block : Math.min(block, maxFrames - frames));
+                if (reader != null) {
+                    n = reader.read(samples, 0, n);
+                    if (n == 0) break;
+                    toPcm16(samples, n, pcm);
+                } else {
+                    n = tone.read(pcm, 0, n * frameBytes) / frameBytes;
+                }
+                if (speed > 0) {
+                    long due = start + (long) ((frames + n) * 1e9 / (rate * speed));
+                    for (long now; (now = System.nanoTime()) < due; ) LockSupport.parkNanos(due - now);
+                }
+                writer.write(pcm, 0, n * frameBytes);
+                frames += n;
+                long now = System.nanoTime();
+                if (now - lastPrint >= PRINT_INTERVAL_NANOS) {
+                    lastPrint = now;
+                    printReaders(writer, frames, frameBytes);
+                }
+            }
+            printReaders(writer, frames, frameBytes);
+        } finally {
+            if (reader != null) reader.close();
+        }
+    }
+
+    private static void printReaders(SharedMemoryWriter writer, long frames, int frameBytes) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%.1f s written", (double) frames / writer.sampleRate()));
+        for (int s = 0; s < writer.readerSlots(); s++) {
+            if (!writer.readerActive(s)) continue;
+            double lagMs = (writer.sequence() - writer.readerPosition(s)) / frameBytes * 1000.0 / writer.sampleRate();
+            sb.append(String.format(Locale.ROOT, ", reader %d lag %.1f ms overruns %d", s, lagMs, writer.readerOverruns(s)));
+        }
+        System.out.println(sb);
+    }
+
+    private static void toPcm16(float[] samples, int n, byte[] pcm) {
+        for (int i = 0; i < n; i++) {
+            int v = (int) Math.round(samples[i] * 32767.0);
+            v = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+            pcm[2 * i] = (byte) v;
+            pcm[2 * i + 1] = (byte) (v >> 8);
+        }
+    }
+
+    private static double[] doubles(String csv) {
+        String[] parts = csv.split(",");
+        double[] out = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) out[i] = Double.parseDouble(parts[i].trim());
+        return out;
+    }
+}
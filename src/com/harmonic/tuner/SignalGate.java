@@ -0,0 +1,257 @@
+package com.harmonic.tuner;
+
+import java.util.Arrays;
+
+/**
+ * Cheap pre-detection stage that decides, per analysis frame, whether the
+ * pitch estimator needs to run at all.
+ *
+ * Only the end of each window is examined: the level over the newest hop
+ * and the spectrum of the newest {@value #FLUX_MS} ms, so the cost is one
+ * small FFT against the estimator's O(window * lags). Three signals are
+ * combined:
+ *
+ * <ul>
+ *   <li>An adaptive noise floor: the hop's RMS level in dB, followed
+ *       quickly downwards and slowly upwards, so it settles on the room
+ *       noise between notes. While the gate is open it rises even more
+ *       slowly, so a held note is not absorbed into the floor.</li>
+ *   <li>Hysteresis: the gate opens when the level exceeds the floor by
+ *       openDb and closes only after it has stayed within openDb / 2 of the
+ *       floor for {@value #HOLD_MS} ms, so decaying notes are not chopped.</li>
+ *   <li>Spectral flux: the normalized rise in magnitude spectrum over the
+ *       last ~{@value #FLUX_LAG_MS} ms. A jump above {@value #ONSET_FLUX} while the level
+ *       is clearly above the floor marks a new note even if the gate was
+ *       already open, e.g. a string re-plucked before the last one died.</li>
+ * </ul>
+ *
+ * While closed, frames are skipped, or only every idleEvery-th is analysed
+ * so that a steady tone the floor has adapted to is still shown. An opening
+ * gate or a detected onset is reported as {@link Decision#ONSET}, on which
+ * callers drop smoothing and estimator state from the previous note. Not
+ * thread-safe.
+ */
+public final class SignalGate {
+    public enum Decision {
+        /** Nothing is being played; do not analyse this frame. */
+        SKIP,
+        /** Analyse as usual. */
+        DETECT,
+        /** A new note started; reset per-note state, then analyse. */
+        ONSET
+    }
+
+    /** Default dB above the noise floor at which the gate opens. */
+    public static final double DEFAULT_OPEN_DB = 10;
+    /** Default analysis interval while closed. */
+    public static final int DEFAULT_IDLE_EVERY = 8;
+
+    static final int HOLD_MS = 250;
+    // spectrum length for the flux: two periods of the lowest string, so a held note's
+    // spectrum does not change with the phase at which the block cuts it
+    static final int FLUX_MS = 40;
+    // the flux compares with the spectrum about this long ago, so small hops do not split a
+    // note's attack into several rises that each stay below the threshold
+    private static final int FLUX_LAG_MS = 10;
+    private static final int MAX_FLUX_LAG_HOPS = 8;
+    static final double ONSET_FLUX = 0.35;
+    private static final int REFRACTORY_MS = 80;
+    private static final double ONSET_MAX_FALL_DB = 3;
+    // never open below this level: digital silence and dither
+    private static final double MIN_LEVEL_DB = -75;
+    private static final double FLOOR_FALL = 0.5;            // fraction of the gap closed per hop
+    private static final double IDLE_RISE_DB_PER_S = 6;
+    private static final double OPEN_RISE_DB_PER_S = 0.5;
+
+    private final int hop;
+    private final double openDb;
+    private final double closeDb;
+    private final int idleEvery;
+    private final int holdFrames;
+    private final int refractoryFrames;
+    private final double idleRise;
+    private final double openRise;
+    private final int fluxLength;
+    private final RealFft fft;
+    private final float[] block;
+    private final float[] taper;
+    private final double[] re;
+    private final double[] im;
+    private final double[][] history;
+    private boolean primed;
+    private boolean open;
+    private double floorDb;
+    private double levelDb;
+    private double previousLevelDb;
+    private double flux;
+    private int hold;
+    private int sinceOnset;
+    private int idleCount;
+    private long frames;
+    private long skipped;
+    private long onsets;
+
+    public SignalGate(int sampleRate, int hop) {
+        this(sampleRate, hop, DEFAULT_OPEN_DB, DEFAULT_IDLE_EVERY);
+    }
+
+    /**
+     * @param hop       samples between successive frames; only these newest samples are examined
+     * @param openDb    level above the noise floor that opens the gate
+     * @param idleEvery analyse every idleEvery-th frame while closed; 0 to skip them all
+     */
+    public SignalGate(int sampleRate, int hop, double openDb, int idleEvery) {
+        if (hop <= 0) throw new IllegalArgumentException("hop must be positive");
+        if (!(openDb > 0)) throw new IllegalArgumentException("openDb must be positive");
+        double hopsPerSecond = sampleRate / (double) hop;
+        this.hop = hop;
+        this.openDb = openDb;
+        this.closeDb = openDb / 2;
+        this.idleEvery = idleEvery;
+        this.holdFrames = Math.max(1, (int) Math.round(HOLD_MS / 1000.0 * hopsPerSecond));
+        this.refractoryFrames = Math.max(1, (int) Math.round(REFRACTORY_MS / 1000.0 * hopsPerSecond));
+        this.idleRise = IDLE_RISE_DB_PER_S / hopsPerSecond;
+        this.openRise = OPEN_RISE_DB_PER_S / hopsPerSecond;
+        int size = RealFft.sizeFor(Math.max(4, (int) ((long) sampleRate * FLUX_MS / 1000)));
+        this.fluxLength = size;
+        this.fft = new RealFft(size);
+        this.block = new float[size];
+        this.taper = new float[size];
+        for (int i = 0; i < size; i++) taper[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * (i + 0.5) / size));
+        this.re = new double[size / 2 + 1];
+        this.im = new double[size / 2 + 1];
+        int lag = (int) Math.round(FLUX_LAG_MS / 1000.0 * hopsPerSecond);
+        this.history = new double[Math.max(1, Math.min(MAX_FLUX_LAG_HOPS, lag))][size / 2 + 1];
+    }
+
+    /**
+     * Classify the frame audio[0..length), whose newest samples are at the end.
+     */
+    public Decision update(float[] audio, int length) {
+        int from = Math.max(0, length - hop);
+        int n = length - from;
+        frames++;
+        sinceOnset++;
+        double energy = Kernels.get().dot(audio, from, audio, from, n);
+        previousLevelDb = levelDb;
+        levelDb = 10 * Math.log10(energy / Math.max(1, n) + 1e-20);
+        if (!primed) {
+            primed = true;
+            floorDb = levelDb;
+            previousLevelDb = levelDb;
+        }
+
+        boolean loud = levelDb > MIN_LEVEL_DB;
+        // the spectrum is only needed where an onset is possible, so quiet frames cost one dot product
+        if (loud && levelDb > floorDb + openDb) {
+            flux = spectralFlux(audio, Math.max(0, length - fluxLength), Math.min(length, fluxLength));
+        } else {
+            flux = 0;
+            Arrays.fill(history[(int) (frames % history.length)], 0);
+        }
+        // a muted string also changes the spectrum, but the level drops with it
+        boolean onset = loud && flux >= ONSET_FLUX && levelDb > floorDb + openDb
+                && levelDb > previousLevelDb - ONSET_MAX_FALL_DB && sinceOnset > refractoryFrames;
+        Decision decision;
+        if (!open) {
+            if (loud && levelDb > floorDb + openDb) {
+                open = true;
+                hold = holdFrames;
+                decision = Decision.ONSET;
+            } else {
+                trackFloor(idleRise);
+                decision = idleEvery > 0 && ++idleCount % idleEvery == 0 ? Decision.DETECT : Decision.SKIP;
+            }
+        } else {
+            trackFloor(openRise);
+            if (levelDb > floorDb + closeDb) {
+                hold = holdFrames;
+                decision = onset ? Decision.ONSET : Decision.DETECT;
+            } else if (--hold > 0) {
+                decision = Decision.DETECT;
+            } else {
+                open = false;
+                idleCount = 0;
+                decision = Decision.SKIP;
+            }
+        }
+        if (decision == Decision.ONSET) {
+            sinceOnset = 0;
+            onsets++;
+        } else if (decision == Decision.SKIP) {
+            skipped++;
+        }
+        return decision;
+    }
+
+    /** Forget the floor and the previous spectrum, e.g. after a gap in the input. */
+    public void reset() {
+        primed = false;
+        open = false;
+        hold = 0;
+        idleCount = 0;
+        for (double[] m : history) Arrays.fill(m, 0);
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /** @return current noise floor estimate in dB relative to full scale */
+    public double floorDb() {
+        return floorDb;
+    }
+
+    /** @return level of the newest hop in dB relative to full scale */
+    public double levelDb() {
+        return levelDb;
+    }
+
+    /** @return spectral flux of the newest hop, in [0, 1] */
+    public double flux() {
+        return flux;
+    }
+
+    public long frames() {
+        return frames;
+    }
+
+    public long skippedFrames() {
+        return skipped;
+    }
+
+    public long onsets() {
+        return onsets;
+    }
+
+    /** @return fraction of frames skipped so far */
+    public double skippedFraction() {
+        return frames == 0 ? 0 : (double) skipped / frames;
+    }
+
+    private void trackFloor(double rise) {
+        if (levelDb < floorDb) {
+            floorDb += FLOOR_FALL * (levelDb - floorDb);
+        } else {
+            floorDb += Math.min(rise, levelDb - floorDb);
+        }
+    }
+
+    // positive change of the magnitude spectrum against the oldest one kept, relative to the
+    // current total magnitude; the history is a ring indexed by frame count
+    private double spectralFlux(float[] audio, int from, int n) {
+        for (int i = 0; i < n; i++) block[i] = audio[from + i] * taper[i];
+        fft.forward(block, n, re, im);
+        double[] magnitude = history[(int) (frames % history.length)];
+        double rise = 0;
+        double total = 0;
+        for (int k = 1; k < magnitude.length; k++) {
+            double m = Math.sqrt(re[k] * re[k] + im[k] * im[k]);
+            double d = m - magnitude[k];
+            if (d > 0) rise += d;
+            total += m;
+            magnitude[k] = m;
+        }
+        return total > 0 ? rise / total : 0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.harmonic.tuner;
+
+/**
+ * The {@link AutocorrelationEstimator} method on a {@link SlidingAutocorrelator}:
+ * when successive frames overlap, as they do in the capture loop, each frame
+ * costs O(hop * maxLag) instead of O(frame * maxLag). Results match the
+ * time-domain estimator to rounding. Frames that do not continue the
+ * previous one are recomputed in full.
+ */
+public final class SlidingAutocorrelationEstimator implements PitchEstimator {
+    private final int sampleRate;
+    private final int maxFrameSize;
+    private final double lowestHz;
+    private final SlidingAutocorrelator acf;
+    private double minHz = DEFAULT_MIN_HZ;
+    private double maxHz = DEFAULT_MAX_HZ;
+
+    public SlidingAutocorrelationEstimator(int sampleRate, int maxFrameSize) {
+        this(sampleRate, maxFrameSize, DEFAULT_MIN_HZ);
+    }
+
+    /**
+     * @param lowestHz lowest fundamental {@link #setSearchRange} may ask for;
+     *                 sizes the lag buffers
+     */
+    public SlidingAutocorrelationEstimator(int sampleRate, int maxFrameSize, double lowestHz) {
+        this.sampleRate = sampleRate;
+        this.maxFrameSize = maxFrameSize;
+        this.lowestHz = lowestHz;
+        this.acf = new SlidingAutocorrelator(maxFrameSize, PitchDetector.maxLag(maxFrameSize, sampleRate, lowestHz));
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSearchRange(double minHz, double maxHz) {
+        PitchDetector.checkRange(minHz, maxHz);
+        this.minHz = Math.max(minHz, lowestHz);
+        this.maxHz = maxHz;
+    }
+
+    @Override
+    public void reset() {
+        acf.invalidate();
+    }
+
+    /** @return the lag sums' state, for benchmarks and diagnostics */
+    public SlidingAutocorrelator autocorrelator() {
+        return acf;
+    }
+
+    @Override
+    public void estimate(float[] audio, int length, PitchResult result) {
+        if (length <= 1 || length > maxFrameSize) {
+            result.clear();
+            return;
+        }
+        int maxLag = PitchDetector.maxLag(length, sampleRate, minHz);
+        int minLag = Math.min(PitchDetector.minLag(sampleRate, maxHz), maxLag);
+        double[] r = acf.autocorrelate(audio, length, minLag, maxLag);
+        if (r[0] <= 1e-8) {
+            result.clear();
+            return;
+        }
+        PitchDetector.peakFrequency(r, minLag, maxLag, r[0], sampleRate, result);
+    }
+}
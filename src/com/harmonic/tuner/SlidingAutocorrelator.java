@@ -0,0 +1,133 @@
+package com.harmonic.tuner;
+
+/**
+ * Autocorrelation of a window that slides over a stream, updated per hop
+ * instead of recomputed per frame.
+ *
+ * The lag sums r[lag] = sum x[i] * x[i + lag] of the previous window are
+ * kept. When the next window is the previous one moved on by s samples, the
+ * products involving the s samples that left are subtracted and those
+ * involving the s samples that arrived are added, 2 * s multiply-adds per
+ * lag instead of n. The shift is found by comparing the new window with a
+ * copy of the old one, so callers need not tell it the hop and any
+ * discontinuity (skipped hops, a different stream) falls back to a full
+ * recomputation. The update only relies on the overlapping samples being
+ * equal, so it stays exact even when a periodic signal matches at more than
+ * one shift.
+ *
+ * Each update adds and subtracts rounded partial sums, so errors accumulate.
+ * All sums are therefore taken with {@link Kernels#dotDouble}, whose only
+ * rounding is that of double additions; float partial sums would drift by
+ * enough to move the refined peak by cents within a few dozen hops. The
+ * remaining drift is bounded by recomputing everything every
+ * {@value #REFRESH_EVERY} updates, and also whenever the energy has fallen
+ * far below its level at the last recomputation, where the error from the
+ * loud past would otherwise dominate the quiet present.
+ */
+public final class SlidingAutocorrelator {
+    /** Incremental updates between full recomputations. */
+    public static final int REFRESH_EVERY = 64;
+    // recompute once the energy falls below this fraction of the largest energy since the last recomputation
+    private static final double DRIFT_GUARD = 1e-3;
+
+    private final int maxFrameSize;
+    private final double[] r;
+    private final float[] previous;
+    private int size = -1;
+    private int lowLag;
+    private int highLag;
+    private int updates;
+    private double peakEnergy;
+    private long recomputations;
+    private long slides;
+
+    /**
+     * @param maxLag longest lag that will be requested
+     */
+    public SlidingAutocorrelator(int maxFrameSize, int maxLag) {
+        this.maxFrameSize = maxFrameSize;
+        this.r = new double[maxLag + 1];
+        this.previous = new float[maxFrameSize];
+    }
+
+    /**
+     * Autocorrelate window[0..n) at lag 0 and at lags minLag..maxLag.
+     *
+     * @return lag sums indexed by lag; other entries are unspecified. The
+     *         array is reused by the next call.
+     */
+    public double[] autocorrelate(float[] window, int n, int minLag, int maxLag) {
+        if (n > maxFrameSize || maxLag >= r.length || maxLag >= n) {
+            throw new IllegalArgumentException("window " + n + ", lags " + minLag + ".." + maxLag);
+        }
+        int shift = -1;
+        if (n == size && minLag == lowLag && maxLag == highLag && updates < REFRESH_EVERY
+                && r[0] >= DRIFT_GUARD * peakEnergy) {
+            shift = findShift(window, n);
+        }
+        if (shift < 0) {
+            recompute(window, n, minLag, maxLag);
+        } else if (shift > 0) {
+            slide(window, n, shift);
+        }
+        System.arraycopy(window, 0, previous, 0, n);
+        return r;
+    }
+
+    /** Forget the previous window; the next call recomputes from scratch. */
+    public void invalidate() {
+        size = -1;
+    }
+
+    /** @return full recomputations so far */
+    public long recomputations() {
+        return recomputations;
+    }
+
+    /** @return incremental updates so far */
+    public long slides() {
+        return slides;
+    }
+
+    // smallest s with window[0..n-s) == previous[s..n), or -1 if none up to n / 2,
+    // beyond which sliding costs more than recomputing
+    private int findShift(float[] window, int n) {
+        float first = window[0];
+        for (int s = 0; s <= n / 2; s++) {
+            if (previous[s] != first) continue;
+            int i = 1;
+            while (i < n - s && window[i] == previous[s + i]) i++;
+            if (i == n - s) return s;
+        }
+        return -1;
+    }
+
+    private void recompute(float[] x, int n, int minLag, int maxLag) {
+        Kernels k = Kernels.get();
+        r[0] = k.dotDouble(x, 0, x, 0, n);
+        for (int lag = minLag; lag <= maxLag; lag++) r[lag] = k.dotDouble(x, 0, x, lag, n - lag);
+        size = n;
+        lowLag = minLag;
+        highLag = maxLag;
+        updates = 0;
+        peakEnergy = r[0];
+        recomputations++;
+    }
+
+    private void slide(float[] x, int n, int s) {
+        Kernels k = Kernels.get();
+        float[] old = previous;
+        for (int lag = 0; lag <= highLag; lag = lag == 0 ? lowLag : lag + 1) {
+            // pairs (i, i + lag) of the old window with i among the s samples that left
+            int gone = Math.min(s, n - lag);
+            double removed = gone > 0 ? k.dotDouble(old, 0, old, lag, gone) : 0;
+            // pairs (j - lag, j) of the new window with j among the s samples that arrived
+            int from = Math.max(n - s, lag);
+            double added = from < n ? k.dotDouble(x, from - lag, x, from, n - from) : 0;
+            r[lag] += added - removed;
+        }
+        updates++;
+        peakEnergy = Math.max(peakEnergy, r[0]);
+        slides++;
+    }
+}
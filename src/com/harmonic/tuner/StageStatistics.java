@@ -0,0 +1,71 @@
+package com.harmonic.tuner;
+
+import java.beans.ConstructorProperties;
+import java.util.Locale;
+
+/**
+ * Immutable summary of one pipeline stage's latency histogram, in
+ * microseconds. The getters make it a JMX open type, so it shows up as
+ * composite data in JConsole and other MXBean clients.
+ */
+public final class StageStatistics {
+    private final String stage;
+    private final long count;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p90Micros;
+    private final double p99Micros;
+    private final double p999Micros;
+    private final double maxMicros;
+
+    @ConstructorProperties({"stage", "count", "meanMicros", "p50Micros", "p90Micros", "p99Micros", "p999Micros", "maxMicros"})
+    public StageStatistics(String stage, long count, double meanMicros, double p50Micros, double p90Micros,
+                           double p99Micros, double p999Micros, double maxMicros) {
+        this.stage = stage;
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public double getP50Micros() {
+        return p50Micros;
+    }
+
+    public double getP90Micros() {
+        return p90Micros;
+    }
+
+    public double getP99Micros() {
+        return p99Micros;
+    }
+
+    public double getP999Micros() {
+        return p999Micros;
+    }
+
+    public double getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-8s %9d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f",
+                stage, count, meanMicros, p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
@@ -0,0 +1,402 @@
+package com.harmonic.tuner;
+
+import java.util.Arrays;
+
+/**
+ * Strobe-tuner analysis for a known target: a bank of streaming single-bin
+ * DFT filters at the target, its harmonics and a few cents either side of
+ * each, updated sample by sample.
+ *
+ * Each bin mixes the input down with a complex oscillator at its frequency
+ * and smooths the product with two cascaded one-pole low-passes (a sliding
+ * DFT with a smooth exponential window), O(1) per sample and bin; the
+ * second pole keeps neighbouring partials of low notes, only a few Hz
+ * away, out of the bin. A partial near the bin leaves a phasor that turns
+ * at the difference frequency, so every {@code updateEvery} samples the
+ * phase advance of each bin gives the partial's frequency, averaged over
+ * the filter's response time; no window has to hold several periods, and
+ * readings come hundreds of times a second instead of once per hop. Per
+ * harmonic the strongest of its offset bins is used, which keeps a partial
+ * that is well off the target inside a bin's passband; the harmonics are
+ * combined weighted by level.
+ *
+ * Besides the cents deviation the analyzer reports the level of every
+ * partial (corrected for the bin's attenuation at the measured offset) and
+ * a strobe phase, the accumulated drift of the fundamental against the
+ * target in cycles, which a display turns into the moving pattern of a
+ * mechanical strobe. Not thread-safe; one instance per stream.
+ */
+public final class StrobeAnalyzer {
+    /** Receives each completed reading, on the thread that calls {@link #process}. */
+    public interface Listener {
+        /** @param sample index since the start of the stream of the sample that completed the reading */
+        void onReading(StrobeAnalyzer strobe, long sample);
+    }
+
+    public static final int DEFAULT_HARMONICS = 4;
+    public static final double DEFAULT_RESPONSE_MS = 30;
+    public static final int DEFAULT_UPDATE_EVERY = 64;
+    private static final double[] DEFAULT_OFFSETS_CENTS = {-40, -20, 0, 20, 40};
+    // fraction of the input power the tracked partials must carry for a reading to count
+    private static final double LOCK_CLARITY = 0.4;
+    private static final double SILENCE_POWER = 1e-8; // -80 dBFS
+    // harmonics weaker than this fraction of the strongest one do not vote
+    private static final double MIN_PARTIAL_LEVEL = 0.1;
+    // capture range beyond the outermost offsets when there is only one
+    private static final double SINGLE_OFFSET_CAPTURE_CENTS = 50;
+
+    private final int sampleRate;
+    private final double targetHz;
+    private final int harmonics;
+    private final int offsets;
+    private final int updateEvery;
+    private final double[] alpha;
+    private final double beta;
+    private final double powerPole;
+    private final double lowestRatio;
+    private final double highestRatio;
+    private final double[] binHz;
+    private final double[] stepRe;
+    private final double[] stepIm;
+    private final double[] oscRe;
+    private final double[] oscIm;
+    private final double[] zRe;
+    private final double[] zIm;
+    private final double[] yRe;
+    private final double[] yIm;
+    private final double[] drift;
+    private final double[] lastPhase;
+    private final double[] partialHz;
+    private final double[] partialLevel;
+    private final int[] best;
+    private double power;
+    private int pending;
+    private long samples;
+    private long readings;
+    private boolean phased; // lastPhase holds the previous reading's phases
+    private boolean primed; // drift holds a measured offset
+    private boolean locked;
+    private double frequency;
+    private double clarity;
+    private double phase;
+
+    public StrobeAnalyzer(int sampleRate, double targetHz) {
+        this(sampleRate, targetHz, DEFAULT_UPDATE_EVERY);
+    }
+
+    public StrobeAnalyzer(int sampleRate, double targetHz, int updateEvery) {
+        this(sampleRate, targetHz, DEFAULT_HARMONICS, DEFAULT_OFFSETS_CENTS, DEFAULT_RESPONSE_MS, updateEvery);
+    }
+
+    /**
+     * @param harmonics    partials to track, including the fundamental; those at or above
+     *                     Nyquist are dropped
+     * @param offsetsCents bin offsets around each partial; more and wider offsets capture
+     *                     notes further from the target
+     * @param responseMs   averaging time of the readings, and the longest time constant
+     *                     of the bin filters; bins of high partials are made shorter so
+     *                     that they reach halfway to the next offset
+     * @param updateEvery  samples per reading
+     */
+    public StrobeAnalyzer(int sampleRate, double targetHz, int harmonics, double[] offsetsCents, double responseMs,
+                          int updateEvery) {
+        if (!(targetHz > 0)) throw new IllegalArgumentException("target must be positive: " + targetHz);
+        if (offsetsCents.length == 0) throw new IllegalArgumentException("no offsets");
+        if (updateEvery <= 0) throw new IllegalArgumentException("updateEvery must be positive");
+        double widest = 0;
+        for (double c : offsetsCents) widest = Math.max(widest, c);
+        int usable = 0;
+        while (usable < harmonics && (usable + 1) * targetHz * Math.pow(2, widest / 1200) < sampleRate / 2.0) usable++;
+        if (usable == 0) throw new IllegalArgumentException("target " + targetHz + " Hz is above Nyquist");
+        this.sampleRate = sampleRate;
+        this.targetHz = targetHz;
+        this.harmonics = usable;
+        this.offsets = offsetsCents.length;
+        this.updateEvery = updateEvery;
+        this.powerPole = Math.exp(-1000.0 / (responseMs * sampleRate));
+        this.beta = 1 - Math.pow(powerPole, updateEvery);
+        // a partial may sit halfway between two offsets; the bins must be at least that wide
+        double[] sorted = offsetsCents.clone();
+        Arrays.sort(sorted);
+        double halfGap = Double.MAX_VALUE;
+        for (int o = 1; o < sorted.length; o++) halfGap = Math.min(halfGap, (sorted[o] - sorted[o - 1]) / 2);
+        // partials beyond the outermost bins are leakage, however well it is corrected for
+        double capture = sorted.length > 1 ? halfGap : SINGLE_OFFSET_CAPTURE_CENTS;
+        this.lowestRatio = Math.pow(2, (sorted[0] - capture) / 1200);
+        this.highestRatio = Math.pow(2, (sorted[sorted.length - 1] + capture) / 1200);
+        int bins = usable * offsets;
+        binHz = new double[bins];
+        stepRe = new double[bins];
+        stepIm = new double[bins];
+        oscRe = new double[bins];
+        oscIm = new double[bins];
+        zRe = new double[bins];
+        zIm = new double[bins];
+        yRe = new double[bins];
+        yIm = new double[bins];
+        drift = new double[bins];
+        lastPhase = new double[bins];
+        alpha = new double[bins];
+        for (int h = 0; h < usable; h++) {
+            for (int o = 0; o < offsets; o++) {
+                int k = h * offsets + o;
+                binHz[k] = (h + 1) * targetHz * Math.pow(2, offsetsCents[o] / 1200);
+                double tau = responseMs / 1000;
+                if (halfGap < Double.MAX_VALUE) {
+                    tau = Math.min(tau, 1 / (2 * Math.PI * binHz[k] * (Math.pow(2, halfGap / 1200) - 1)));
+                }
+                alpha[k] = 1 - Math.exp(-1 / (tau * sampleRate));
+                double w = 2 * Math.PI * binHz[k] / sampleRate;
+                stepRe[k] = Math.cos(w);
+                stepIm[k] = -Math.sin(w);
+            }
+        }
+        partialHz = new double[usable];
+        partialLevel = new double[usable];
+        best = new int[usable];
+        reset();
+    }
+
+    /**
+     * Feed samples x[offset..offset+length), calling the listener (if any)
+     * for every reading they complete.
+     *
+     * @return readings completed
+     */
+    public int process(float[] x, int offset, int length, Listener listener) {
+        int done = 0;
+        int end = offset + length;
+        for (int from = offset; from < end; ) {
+            int n = Math.min(end - from, updateEvery - pending);
+            filter(x, from, n);
+            from += n;
+            pending += n;
+            samples += n;
+            if (pending == updateEvery) {
+                pending = 0;
+                read();
+                done++;
+                if (listener != null) listener.onReading(this, samples - 1);
+            }
+        }
+        return done;
+    }
+
+    /** Forget all state, e.g. when the input is interrupted. */
+    public void reset() {
+        for (int k = 0; k < binHz.length; k++) {
+            oscRe[k] = 1;
+            oscIm[k] = 0;
+            zRe[k] = 0;
+            zIm[k] = 0;
+            yRe[k] = 0;
+            yIm[k] = 0;
+            drift[k] = 0;
+            lastPhase[k] = 0;
+        }
+        power = 0;
+        pending = 0;
+        phased = false;
+        primed = false;
+        locked = false;
+        frequency = 0;
+        clarity = 0;
+        phase = 0;
+    }
+
+    /** @return true when the last reading found the target's partials clearly in the input */
+    public boolean locked() {
+        return locked;
+    }
+
+    /** @return measured fundamental in Hz at the last reading, or 0 when not locked */
+    public double frequency() {
+        return locked ? frequency : 0;
+    }
+
+    /** @return deviation from the target in cents at the last reading, or 0 when not locked */
+    public double cents() {
+        return locked ? Notes.cents(frequency, targetHz) : 0;
+    }
+
+    /** @return share of the input power in the tracked partials, in [0, 1] */
+    public double clarity() {
+        return clarity;
+    }
+
+    /**
+     * @return accumulated drift of the fundamental against the target, in
+     *         cycles modulo 1; stands still when in tune and turns once per
+     *         second per Hz of error
+     */
+    public double strobePhase() {
+        return phase;
+    }
+
+    public double targetHz() {
+        return targetHz;
+    }
+
+    /** @return partials tracked, including the fundamental */
+    public int harmonics() {
+        return harmonics;
+    }
+
+    /**
+     * @return amplitude of partial h (1 = fundamental) at the last reading,
+     *         relative to full scale; 0 when nothing is within the offsets
+     */
+    public double partialLevel(int h) {
+        return partialLevel[h - 1];
+    }
+
+    /** @return frequency of partial h (1 = fundamental) at the last reading */
+    public double partialFrequency(int h) {
+        return partialHz[h - 1];
+    }
+
+    /** @return readings per second */
+    public double readingRate() {
+        return (double) sampleRate / updateEvery;
+    }
+
+    public long readings() {
+        return readings;
+    }
+
+    // mix down and low-pass n samples in every bin. Each bin is a chain of dependent multiply-adds
+    // per sample, so bins go through the inner loop in pairs to keep two chains in flight
+    private void filter(float[] x, int from, int n) {
+        double sum = 0;
+        for (int i = from; i < from + n; i++) sum += (double) x[i] * x[i];
+        double decay = Math.pow(powerPole, n);
+        power = power * decay + (1 - decay) * sum / n;
+        int bins = binHz.length;
+        int k = 0;
+        for (; k + 1 < bins; k += 2) {
+            double a0 = alpha[k], a1 = alpha[k + 1];
+            double cr0 = stepRe[k], ci0 = stepIm[k], cr1 = stepRe[k + 1], ci1 = stepIm[k + 1];
+            double or0 = oscRe[k], oi0 = oscIm[k], or1 = oscRe[k + 1], oi1 = oscIm[k + 1];
+            double zr0 = zRe[k], zi0 = zIm[k], zr1 = zRe[k + 1], zi1 = zIm[k + 1];
+            double yr0 = yRe[k], yi0 = yIm[k], yr1 = yRe[k + 1], yi1 = yIm[k + 1];
+            for (int i = from; i < from + n; i++) {
+                double s = x[i];
+                zr0 += a0 * (s * or0 - zr0);
+                zi0 += a0 * (s * oi0 - zi0);
+                zr1 += a1 * (s * or1 - zr1);
+                zi1 += a1 * (s * oi1 - zi1);
+                yr0 += a0 * (zr0 - yr0);
+                yi0 += a0 * (zi0 - yi0);
+                yr1 += a1 * (zr1 - yr1);
+                yi1 += a1 * (zi1 - yi1);
+                double t0 = or0 * cr0 - oi0 * ci0;
+                oi0 = or0 * ci0 + oi0 * cr0;
+                or0 = t0;
+                double t1 = or1 * cr1 - oi1 * ci1;
+                oi1 = or1 * ci1 + oi1 * cr1;
+                or1 = t1;
+            }
+            store(k, or0, oi0, zr0, zi0, yr0, yi0);
+            store(k + 1, or1, oi1, zr1, zi1, yr1, yi1);
+        }
+        for (; k < bins; k++) {
+            double a = alpha[k];
+            double cr = stepRe[k], ci = stepIm[k];
+            double or = oscRe[k], oi = oscIm[k];
+            double zr = zRe[k], zi = zIm[k];
+            double yr = yRe[k], yi = yIm[k];
+            for (int i = from; i < from + n; i++) {
+                double s = x[i];
+                zr += a * (s * or - zr);
+                zi += a * (s * oi - zi);
+                yr += a * (zr - yr);
+                yi += a * (zi - yi);
+                double t = or * cr - oi * ci;
+                oi = or * ci + oi * cr;
+                or = t;
+            }
+            store(k, or, oi, zr, zi, yr, yi);
+        }
+    }
+
+    private void store(int k, double or, double oi, double zr, double zi, double yr, double yi) {
+        zRe[k] = zr;
+        zIm[k] = zi;
+        yRe[k] = yr;
+        yIm[k] = yi;
+        // renormalize so rounding does not grow or shrink the oscillator over a long stream
+        double norm = 1 / Math.sqrt(or * or + oi * oi);
+        oscRe[k] = or * norm;
+        oscIm[k] = oi * norm;
+    }
+
+    private void read() {
+        readings++;
+        double seconds = (double) updateEvery / sampleRate;
+        for (int k = 0; k < binHz.length; k++) {
+            double ph = Math.atan2(yIm[k], yRe[k]);
+            // the first reading only gives the phase the second one's advance is measured from
+            if (phased) {
+                double advance = ph - lastPhase[k];
+                advance -= 2 * Math.PI * Math.floor(advance / (2 * Math.PI) + 0.5);
+                double offsetHz = advance / (2 * Math.PI * seconds);
+                drift[k] = primed ? drift[k] + beta * (offsetHz - drift[k]) : offsetHz;
+            }
+            lastPhase[k] = ph;
+        }
+        double strongest = 0;
+        for (int h = 0; h < harmonics; h++) {
+            int pick = h * offsets;
+            double pickMag = -1;
+            for (int o = 0; o < offsets; o++) {
+                int k = h * offsets + o;
+                double mag = yRe[k] * yRe[k] + yIm[k] * yIm[k];
+                if (mag > pickMag) {
+                    pickMag = mag;
+                    pick = k;
+                }
+            }
+            best[h] = pick;
+            strongest = Math.max(strongest, pickMag);
+        }
+        double weightSum = 0;
+        double weighted = 0;
+        double tracked = 0;
+        for (int h = 0; h < harmonics; h++) {
+            int k = best[h];
+            double mag2 = yRe[k] * yRe[k] + yIm[k] * yIm[k];
+            // a sine of amplitude A leaves |y| = A / 2 * |H|, with H the low-pass response at the offset
+            double level = 2 * Math.sqrt(mag2 / gain2(k, drift[k]));
+            partialHz[h] = binHz[k] + drift[k];
+            double ratio = partialHz[h] / ((h + 1) * targetHz);
+            if (ratio < lowestRatio || ratio > highestRatio) {
+                partialLevel[h] = 0;
+                continue;
+            }
+            partialLevel[h] = level;
+            tracked += level * level / 2;
+            if (mag2 >= MIN_PARTIAL_LEVEL * MIN_PARTIAL_LEVEL * strongest) {
+                weighted += mag2 * partialHz[h] / (h + 1);
+                weightSum += mag2;
+            }
+        }
+        clarity = power > SILENCE_POWER ? Math.min(1, tracked / power) : 0;
+        locked = phased && weightSum > 0 && clarity >= LOCK_CLARITY;
+        if (locked) {
+            frequency = weighted / weightSum;
+            phase += (frequency - targetHz) * seconds;
+            phase -= Math.floor(phase);
+        }
+        primed = phased;
+        phased = true;
+    }
+
+    // squared magnitude of bin k's two-pole low-pass at offsetHz from the bin
+    private double gain2(int k, double offsetHz) {
+        double w = 2 * Math.PI * offsetHz / sampleRate;
+        double a = alpha[k];
+        double b = 1 - a;
+        double onePole = a * a / (1 - 2 * b * Math.cos(w) + b * b);
+        return onePole * onePole;
+    }
+}
@@ -0,0 +1,118 @@
+package com.harmonic.tuner;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * Strobe display for a {@link StrobeAnalyzer}: one row of bands per
+ * partial, drifting right when sharp and left when flat at a speed
+ * proportional to the error, and standing still in tune. Row brightness
+ * follows the partial's level.
+ *
+ * The analysis thread calls {@link #show} after feeding the analyzer; it
+ * copies the few values the display needs under a lock held only for the
+ * copy. A Swing timer repaints at about 60 Hz while the panel is started.
+ */
+public final class StrobePanel extends JComponent {
+    private static final long serialVersionUID = 1L;
+    private static final int BAND_PX = 48; // width of one light and dark band pair on the fundamental row
+    private static final int MAX_ROWS = 8;
+    private static final Color LIT = new Color(255, 150, 40);
+    private static final Color UNLIT = new Color(40, 40, 40);
+
+    private final Timer timer = new Timer(16, e -> repaint());
+    private final Object lock = new Object();
+    // guarded by lock; written by the analysis thread, read on the EDT
+    private final double[] levels = new double[MAX_ROWS];
+    private int rows;
+    private boolean locked;
+    private double cents;
+    private double phase;
+    // EDT only
+    private final double[] shownLevels = new double[MAX_ROWS];
+
+    public StrobePanel() {
+        setPreferredSize(new Dimension(400, 90));
+        setOpaque(true);
+        timer.setCoalesce(true);
+    }
+
+    /** Start repainting; call on the EDT. */
+    public void start() {
+        timer.start();
+    }
+
+    /** Stop repainting and blank the bands; call on the EDT. */
+    public void stop() {
+        timer.stop();
+        synchronized (lock) {
+            locked = false;
+            rows = 0;
+        }
+        repaint();
+    }
+
+    /** Take the analyzer's latest reading; safe from any thread and allocation-free. */
+    public void show(StrobeAnalyzer strobe) {
+        synchronized (lock) {
+            rows = Math.min(MAX_ROWS, strobe.harmonics());
+            locked = strobe.locked();
+            cents = strobe.cents();
+            phase = strobe.strobePhase();
+            for (int h = 1; h <= rows; h++) levels[h - 1] = strobe.partialLevel(h);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int n;
+        boolean on;
+        double c;
+        double p;
+        synchronized (lock) {
+            n = rows;
+            on = locked;
+            c = cents;
+            p = phase;
+            System.arraycopy(levels, 0, shownLevels, 0, n);
+        }
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        int w = getWidth();
+        int h = getHeight();
+        g2.setColor(Color.BLACK);
+        g2.fillRect(0, 0, w, h);
+        int label = g2.getFontMetrics().getHeight() + 4;
+        if (n > 0) {
+            double loudest = 0;
+            for (int i = 0; i < n; i++) loudest = Math.max(loudest, shownLevels[i]);
+            int rowHeight = Math.max(1, (h - label) / n);
+            for (int i = 0; i < n; i++) {
+                // every row moves by the same distance; higher partials have proportionally narrower bands
+                double brightness = on && loudest > 0 ? shownLevels[i] / loudest : 0;
+                g2.setColor(blend(brightness));
+                double period = (double) BAND_PX / (i + 1);
+                double shift = (p * BAND_PX) % period;
+                int y = label + i * rowHeight;
+                for (double x = shift - period; x < w; x += period) {
+                    g2.fillRect((int) Math.round(x), y + 1, (int) Math.round(period / 2), rowHeight - 2);
+                }
+            }
+        }
+        g2.setColor(Color.LIGHT_GRAY);
+        String text = on ? String.format("Strobe: %+.1f cents", c) : "Strobe: ---";
+        g2.drawString(text, 4, label - 6);
+    }
+
+    private static Color blend(double brightness) {
+        double b = Math.max(0.15, Math.min(1, brightness));
+        return new Color((int) (UNLIT.getRed() + b * (LIT.getRed() - UNLIT.getRed())),
+                (int) (UNLIT.getGreen() + b * (LIT.getGreen() - UNLIT.getGreen())),
+                (int) (UNLIT.getBlue() + b * (LIT.getBlue() - UNLIT.getBlue())));
+    }
+}
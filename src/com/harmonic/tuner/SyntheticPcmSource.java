@@ -0,0 +1,143 @@
+package com.harmonic.tuner;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Endless multi-channel test tone as a {@link PcmSource}: channel c plays
+ * frequencies[c] with the spectrum of {@link SyntheticSignal.Type} SINE,
+ * HARMONIC, NOISY or SILENCE, phase continuous across reads. Paced to real
+ * time (or a multiple of it) so the capture path sees the same timing as a
+ * sound card, or unpaced to measure throughput.
+ */
+public final class SyntheticPcmSource implements PcmSource {
+    private static final int MAX_HARMONICS = 8;
+
+    private final int sampleRate;
+    private final SyntheticSignal.Type type;
+    private final double[] frequencies;
+    private final double[] cosPhase; // per-channel phasor, rotated sample by sample
+    private final double[] sinPhase;
+    private final double speed;
+    private final long maxFrames;
+    private final Random rnd;
+    private long frames;
+    private long startNanos = -1;
+    private volatile boolean closed;
+
+    /**
+     * @param frequencies fundamental of each channel in Hz; may be changed later with {@link #setFrequency}
+     * @param speed       1 for real time, 2 for twice as fast, 0 or less for unpaced
+     * @param maxFrames   sample frames before end of stream, or -1 for endless
+     */
+    public SyntheticPcmSource(int sampleRate, SyntheticSignal.Type type, double[] frequencies,
+                              double speed, long maxFrames, long seed) {
+        if (frequencies.length == 0) throw new IllegalArgumentException("need at least one channel");
+        switch (type) {
+            case SINE: case HARMONIC: case NOISY: case SILENCE: break;
+            default: throw new IllegalArgumentException("Unsupported signal type " + type);
+        }
+        this.sampleRate = sampleRate;
+        this.type = type;
+        this.frequencies = frequencies.clone();
+        this.cosPhase = new double[frequencies.length];
+        this.sinPhase = new double[frequencies.length];
+        this.speed = speed;
+        this.maxFrames = maxFrames;
+        this.rnd = new Random(seed);
+        for (int c = 0; c < frequencies.length; c++) {
+            double phase = rnd.nextDouble() * 2 * Math.PI;
+            cosPhase[c] = Math.cos(phase);
+            sinPhase[c] = Math.sin(phase);
+        }
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int channels() {
+        return frequencies.length;
+    }
+
+    /** Retune one channel; takes effect from the next read. Not thread-safe with respect to reads. */
+    public void setFrequency(int channel, double hz) {
+        frequencies[channel] = hz;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (closed) return -1;
+        int channels = frequencies.length;
+        int n = length / (2 * channels);
+        if (maxFrames >= 0) {
+            if (frames >= maxFrames) return -1;
+            n = (int) Math.min(n, maxFrames - frames);
+        }
+        pace(n);
+        if (closed) return -1;
+        for (int c = 0; c < channels; c++) generate(c, buffer, offset, n);
+        frames += n;
+        return n * 2 * channels;
+    }
+
+    // hold back until n more frames are due
+    private void pace(int n) {
+        if (speed <= 0) return;
+        long now = System.nanoTime();
+        if (startNanos < 0) startNanos = now;
+        long due = startNanos + (long) ((frames + n) * 1e9 / (sampleRate * speed));
+        while (!closed && (now = System.nanoTime()) < due) LockSupport.parkNanos(due - now);
+    }
+
+    private void generate(int c, byte[] buffer, int offset, int n) {
+        int channels = frequencies.length;
+        double f = frequencies[c];
+        double w = 2 * Math.PI * f / sampleRate;
+        int harmonics = 1;
+        double power = 0.5;
+        if (type == SyntheticSignal.Type.HARMONIC || type == SyntheticSignal.Type.NOISY) {
+            while (harmonics < MAX_HARMONICS && f * (harmonics + 1) < sampleRate / 2.0) {
+                harmonics++;
+                power += 0.5 / (harmonics * harmonics);
+            }
+        }
+        double gain = type == SyntheticSignal.Type.SINE ? 0.5 : 0.5 / 2.72;
+        double noise = type == SyntheticSignal.Type.NOISY ? gain * Math.sqrt(power) * Math.pow(10, -10 / 20.0) : 0;
+        double cosW = Math.cos(w), sinW = Math.sin(w);
+        double cos = cosPhase[c], sin = sinPhase[c];
+        for (int i = 0, p = offset + 2 * c; i < n; i++, p += 2 * channels) {
+            double s = 0;
+            if (type != SyntheticSignal.Type.SILENCE) {
+                // sin(h x) by the Chebyshev recurrence from sin x and cos x: no trig calls per sample
+                double twoCos = 2 * cos;
+                double prev = 0, cur = sin;
+                for (int h = 1; h <= harmonics; h++) {
+                    s += cur / h;
+                    double next = twoCos * cur - prev;
+                    prev = cur;
+                    cur = next;
+                }
+                s = gain * s + (noise > 0 ? noise * rnd.nextGaussian() : 0);
+            }
+            int v = (int) Math.round(s * 32767);
+            v = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+            buffer[p] = (byte) v;
+            buffer[p + 1] = (byte) (v >> 8);
+            double nextCos = cos * cosW - sin * sinW;
+            sin = sin * cosW + cos * sinW;
+            cos = nextCos;
+        }
+        // renormalize so rounding cannot make the amplitude drift over long runs
+        double norm = 1 / Math.sqrt(cos * cos + sin * sin);
+        cosPhase[c] = cos * norm;
+        sinPhase[c] = sin * norm;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
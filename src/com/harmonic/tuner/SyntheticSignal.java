@@ -0,0 +1,144 @@
+package com.harmonic.tuner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic test signals for benchmarks and headless tools. All
+ * generators are seeded so repeated runs see identical input.
+ */
+public final class SyntheticSignal {
+    private SyntheticSignal() {}
+
+    public enum Type {
+        /** Single sine at the fundamental. */
+        SINE,
+        /** Eight harmonics with 1/h amplitudes, a rough string/brass spectrum. */
+        HARMONIC,
+        /** Harmonic tone plus white noise at about 10 dB SNR. */
+        NOISY,
+        /** Digital silence. */
+        SILENCE,
+        /** Band-limited sawtooth: every harmonic below Nyquist with 1/h amplitude. */
+        SAWTOOTH,
+        /** The sawtooth without its fundamental; the pitch heard is still the fundamental's. */
+        MISSING_FUNDAMENTAL,
+        /**
+         * Stiff-string partials as on a piano: partial h at
+         * h * f * sqrt((1 + B h^2) / (1 + B)) with B = {@value #PIANO_INHARMONICITY},
+         * 1/h amplitudes and random phases. The first partial is at the given frequency.
+         */
+        INHARMONIC
+    }
+
+    /** Inharmonicity coefficient B of {@link Type#INHARMONIC}, typical of a mid-range piano string. */
+    public static final double PIANO_INHARMONICITY = 4e-4;
+    private static final int MAX_INHARMONIC_PARTIALS = 24;
+
+    /**
+     * Fill out[0..length) with the given signal type at peak amplitude ~0.5.
+     */
+    public static void fill(Type type, double frequency, int sampleRate, float[] out, int length, long seed) {
+        Random rnd = new Random(seed);
+        double phase = rnd.nextDouble() * 2 * Math.PI;
+        double w = 2 * Math.PI * frequency / sampleRate;
+        switch (type) {
+            case SINE:
+                for (int i = 0; i < length; i++) out[i] = (float) (0.5 * Math.sin(w * i + phase));
+                break;
+            case HARMONIC:
+            case NOISY:
+                int harmonics = 1;
+                double power = 0.5;
+                while (harmonics < 8 && frequency * (harmonics + 1) < sampleRate / 2.0) {
+                    harmonics++;
+                    power += 0.5 / (harmonics * harmonics);
+                }
+                double gain = 0.5 / 2.72; // 2.72 ~ sum of 1/h for h = 1..8
+                double noise = type == Type.NOISY ? gain * Math.sqrt(power) * Math.pow(10, -10 / 20.0) : 0;
+                for (int i = 0; i < length; i++) {
+                    double s = 0;
+                    for (int h = 1; h <= harmonics; h++) s += Math.sin(h * (w * i + phase)) / h;
+                    out[i] = (float) (gain * s + noise * rnd.nextGaussian());
+                }
+                break;
+            case SILENCE:
+                Arrays.fill(out, 0, length, 0f);
+                break;
+            case SAWTOOTH:
+            case MISSING_FUNDAMENTAL:
+                sawtooth(type == Type.SAWTOOTH ? 1 : 2, w, phase, sampleRate / 2.0 / frequency, out, length);
+                normalize(out, length);
+                break;
+            case INHARMONIC:
+                inharmonic(frequency, sampleRate, rnd, out, length);
+                normalize(out, length);
+                break;
+            default:
+                throw new AssertionError(type);
+        }
+    }
+
+    /**
+     * Add white Gaussian noise to out[0..length) at the given signal-to-noise
+     * ratio, measured against the power already in the buffer.
+     */
+    public static void addNoise(float[] out, int length, double snrDb, long seed) {
+        double power = 0;
+        for (int i = 0; i < length; i++) power += out[i] * out[i];
+        power /= Math.max(1, length);
+        double sigma = Math.sqrt(power / Math.pow(10, snrDb / 10));
+        Random rnd = new Random(seed);
+        for (int i = 0; i < length; i++) out[i] += (float) (sigma * rnd.nextGaussian());
+    }
+
+    // sum of sin(h x) / h for first <= h < limit, with sin(h x) from the Chebyshev recurrence
+    // so the many harmonics of a low note cost no trig calls
+    private static void sawtooth(int first, double w, double phase, double limit, float[] out, int length) {
+        for (int i = 0; i < length; i++) {
+            double x = w * i + phase;
+            double twoCos = 2 * Math.cos(x);
+            double prev = 0, cur = Math.sin(x);
+            double s = 0;
+            for (int h = 1; h < limit; h++) {
+                if (h >= first) s += cur / h;
+                double next = twoCos * cur - prev;
+                prev = cur;
+                cur = next;
+            }
+            out[i] = (float) s;
+        }
+    }
+
+    private static void inharmonic(double frequency, int sampleRate, Random rnd, float[] out, int length) {
+        Arrays.fill(out, 0, length, 0f);
+        double b = PIANO_INHARMONICITY;
+        for (int h = 1; h <= MAX_INHARMONIC_PARTIALS; h++) {
+            double f = h * frequency * Math.sqrt((1 + b * h * h) / (1 + b));
+            if (f >= sampleRate / 2.0) break;
+            double w = 2 * Math.PI * f / sampleRate;
+            double phase = rnd.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < length; i++) out[i] += (float) (Math.sin(w * i + phase) / h);
+        }
+    }
+
+    // scale to a peak of 0.5
+    private static void normalize(float[] out, int length) {
+        float peak = 0;
+        for (int i = 0; i < length; i++) peak = Math.max(peak, Math.abs(out[i]));
+        if (peak == 0) return;
+        float gain = 0.5f / peak;
+        for (int i = 0; i < length; i++) out[i] *= gain;
+    }
+
+    /** Encode float samples as signed 16-bit little-endian PCM. */
+    public static void toPcm16(float[] samples, int length, byte[] out) {
+        for (int i = 0; i < length; i++) {
+            int v = Math.round(samples[i] * 32767f);
+            if (v > Short.MAX_VALUE) v = Short.MAX_VALUE;
+            if (v < Short.MIN_VALUE) v = Short.MIN_VALUE;
+            out[2 * i] = (byte) v;
+            out[2 * i + 1] = (byte) (v >> 8);
+        }
+    }
+}
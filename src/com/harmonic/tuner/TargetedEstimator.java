@@ -0,0 +1,111 @@
+package com.harmonic.tuner;
+
+/**
+ * Search mode for tuning to a known note: each frame evaluates only the lags
+ * within +/- N semitones of the expected pitch, using the direct
+ * autocorrelation whose cost is proportional to the number of lags.
+ *
+ * To catch the player switching strings or the detector locking onto the
+ * wrong octave, a full-range coarse pass runs every K frames, and on any
+ * frame whose clarity drops below a floor. It works on a copy of the frame
+ * low-pass filtered and decimated by {@value #DECIMATION} (see
+ * {@link PolyphaseDecimator}), so it costs about 1/16 of a full-rate scan.
+ * If the coarse pitch lies outside the window around the target, the window
+ * follows it; once the player returns near the target the window snaps back.
+ */
+public final class TargetedEstimator implements PitchEstimator {
+    static final int DECIMATION = 4;
+
+    private final int sampleRate;
+    private final int maxFrameSize;
+    private final double targetHz;
+    private final double ratio;
+    private final int coarseEvery;
+    private final double clarityFloor;
+    private final AutocorrelationEstimator fine;
+    private final PitchEstimator coarse;
+    private final PolyphaseDecimator decimator;
+    private final float[] decimated;
+    private final PitchResult coarseResult = new PitchResult();
+
+    private double minHz = DEFAULT_MIN_HZ;
+    private double maxHz = DEFAULT_MAX_HZ;
+    private double centerHz;
+    private long frame;
+    private double lastClarity;
+
+    /**
+     * @param targetHz     expected pitch; the search window starts centred here
+     * @param semitones    half-width N of the search window
+     * @param coarseEvery  run the full-range pass every K frames
+     * @param clarityFloor run it also after any frame less clear than this
+     * @param coarseEngine engine for the full-range pass on the decimated frame
+     */
+    public TargetedEstimator(int sampleRate, int maxFrameSize, double targetHz, double semitones,
+                             int coarseEvery, double clarityFloor, PitchEngine coarseEngine) {
+        if (targetHz <= 0 || semitones <= 0 || coarseEvery <= 0) {
+            throw new IllegalArgumentException("target, semitones and coarse interval must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.maxFrameSize = maxFrameSize;
+        this.targetHz = targetHz;
+        this.ratio = Math.pow(2, semitones / 12.0);
+        this.coarseEvery = coarseEvery;
+        this.clarityFloor = clarityFloor;
+        this.fine = new AutocorrelationEstimator(sampleRate, maxFrameSize, false);
+        this.coarse = coarseEngine.create(sampleRate / DECIMATION, maxFrameSize / DECIMATION);
+        this.decimator = new PolyphaseDecimator(DECIMATION, 16);
+        this.decimated = new float[maxFrameSize / DECIMATION];
+        this.centerHz = targetHz;
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    /** Bounds for the coarse pass and the outer limits of the fine window. */
+    @Override
+    public void setSearchRange(double minHz, double maxHz) {
+        PitchDetector.checkRange(minHz, maxHz);
+        this.minHz = minHz;
+        this.maxHz = maxHz;
+    }
+
+    /** @return centre of the current fine search window in Hz */
+    public double centerHz() {
+        return centerHz;
+    }
+
+    @Override
+    public void estimate(float[] audio, int length, PitchResult result) {
+        if (length <= 0 || length > maxFrameSize) {
+            result.clear();
+            return;
+        }
+        if (frame++ % coarseEvery == 0 || lastClarity < clarityFloor) {
+            coarsePass(audio, length);
+        }
+        double lo = Math.max(minHz, centerHz / ratio);
+        double hi = Math.min(maxHz, centerHz * ratio);
+        if (lo >= hi) {
+            result.clear();
+        } else {
+            fine.setSearchRange(lo, hi);
+            fine.estimate(audio, length, result);
+        }
+        lastClarity = result.clarity();
+    }
+
+    private void coarsePass(float[] audio, int length) {
+        // coarse passes are sporadic, so the filter starts afresh on each frame
+        decimator.reset();
+        int n = decimator.process(audio, 0, length - length % DECIMATION, decimated, 0);
+        coarse.setSearchRange(minHz, Math.min(maxHz, 0.4 * sampleRate / DECIMATION));
+        coarse.estimate(decimated, n, coarseResult);
+        if (!coarseResult.hasPitch() || coarseResult.clarity() < clarityFloor) return;
+
+        double hz = coarseResult.frequency();
+        centerHz = Math.abs(Math.log(hz / targetHz)) <= Math.log(ratio) ? targetHz : hz;
+    }
+}
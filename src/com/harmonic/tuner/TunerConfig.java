@@ -0,0 +1,237 @@
+package com.harmonic.tuner;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Runtime settings, read from {@code -Dtuner.*} system properties so the
+ * launcher scripts can pass them without touching the GUI.
+ *
+ * <ul>
+ *   <li>{@code tuner.engine} - pitch engine, one of acf, acf-fft, acf-sliding, yin, mpm (default acf-fft)</li>
+ *   <li>{@code tuner.window} - analysis window in samples; longer windows resolve lower
+ *       notes (default 4096)</li>
+ *   <li>{@code tuner.hop} - samples between analysis frames; frames overlap when this
+ *       is smaller than the window (default 512)</li>
+ *   <li>{@code tuner.window.adaptive} - size each window to {@code tuner.window.periods}
+ *       periods of the current pitch, see {@link AdaptiveFraming}; {@code tuner.window}
+ *       is then the window for the first estimate of each note (default false)</li>
+ *   <li>{@code tuner.window.min}, {@code tuner.window.max} - bounds of the adaptive window
+ *       (default 1024 and 16384)</li>
+ *   <li>{@code tuner.window.periods} - periods of the pitch in an adaptive window (default 8)</li>
+ *   <li>{@code tuner.smoothing} - how the displayed frequency follows the estimates: track
+ *       (follow the note from frame to frame, see {@link PitchTracker}), or an average over
+ *       a window: mean, median or trimmed (20% trimmed mean) (default track)</li>
+ *   <li>{@code tuner.smoothing.ms} - length of the averaging window (default 4000)</li>
+ *   <li>{@code tuner.search} - full (scan 50-2000 Hz every frame), target (scan only
+ *       around the target frequency, see {@link TargetedEstimator}) or multirate (scan
+ *       27.5-2000 Hz on a decimated copy and refine at full rate, see
+ *       {@link CoarseToFineEstimator}) (default full)</li>
+ *   <li>{@code tuner.search.semitones} - half-width of the target window (default 2)</li>
+ *   <li>{@code tuner.search.coarse-every} - frames between full-range passes in target mode (default 8)</li>
+ *   <li>{@code tuner.search.decimation} - decimation factor of the coarse pass in multirate
+ *       mode, 2 or 4 (default 4)</li>
+ *   <li>{@code tuner.gate} - skip detection while the input is idle and reset smoothing on
+ *       each new note, see {@link SignalGate}; false analyses every frame (default true)</li>
+ *   <li>{@code tuner.gate.open-db} - level above the noise floor that counts as playing (default 10)</li>
+ *   <li>{@code tuner.gate.idle-every} - while idle, analyse only every n-th frame, 0 for none
+ *       (default 8)</li>
+ *   <li>{@code tuner.strobe} - show the {@link StrobePanel} under the cents meter
+ *       (default true)</li>
+ *   <li>{@code tuner.record} - directory under which each capture session is kept as a
+ *       {@link CaptureRecorder} recording in its own time-stamped subdirectory (default none)</li>
+ *   <li>{@code tuner.replay} - recording directory to play back at real time through
+ *       {@link ReplayPcmSource} instead of capturing from the microphone (default none)</li>
+ *   <li>{@code tuner.shm} - {@link SharedMemoryWriter} ring file to read as a
+ *       {@link SharedMemorySource} instead of capturing from the microphone, e.g. audio
+ *       published by a DAW bridge (default none)</li>
+ *   <li>{@code tuner.metrics} - print the {@link PipelineMetrics} report to stderr when
+ *       capture stops (default false)</li>
+ * </ul>
+ */
+final class TunerConfig {
+    enum Search { FULL, TARGET, MULTIRATE }
+
+    /**
+     * Lowest fundamental searched in multirate mode and by the longest adaptive windows:
+     * A0, the bottom of the piano and 4/5-string bass.
+     */
+    static final double MULTIRATE_LOWEST_HZ = 27.5;
+
+    final PitchEngine engine;
+    final int window;
+    final int hop;
+    final boolean adaptiveWindow;
+    final int windowMin;
+    final int windowMax;
+    final int windowPeriods;
+    final boolean track;
+    final FrequencySmoother.Mode smoothing;
+    final int smoothingMs;
+    final Search search;
+    final int searchSemitones;
+    final int coarseEvery;
+    final int decimation;
+    final boolean gate;
+    final int gateOpenDb;
+    final int gateIdleEvery;
+    final boolean strobe;
+    final String record;
+    final String replay;
+    final String shm;
+    final boolean printMetrics;
+
+    private TunerConfig(PitchEngine engine, int window, int hop, boolean adaptiveWindow, int windowMin, int windowMax,
+                        int windowPeriods, boolean track, FrequencySmoother.Mode smoothing, int smoothingMs, Search search, int searchSemitones, int coarseEvery, int decimation, boolean gate,
+                        int gateOpenDb, int gateIdleEvery, boolean strobe, String record, String replay, String shm,
+                        boolean printMetrics) {
+        this.engine = engine;
+        this.window = window;
+        this.hop = hop;
+        this.adaptiveWindow = adaptiveWindow;
+        this.windowMin = windowMin;
+        this.windowMax = windowMax;
+        this.windowPeriods = windowPeriods;
+        this.track = track;
+        this.smoothing = smoothing;
+        this.smoothingMs = smoothingMs;
+        this.search = search;
+        this.searchSemitones = searchSemitones;
+        this.coarseEvery = coarseEvery;
+        this.decimation = decimation;
+        this.gate = gate;
+        this.gateOpenDb = gateOpenDb;
+        this.gateIdleEvery = gateIdleEvery;
+        this.strobe = strobe;
+        this.record = record;
+        this.replay = replay;
+        this.shm = shm;
+        this.printMetrics = printMetrics;
+    }
+
+    /** @return the longest window analysed, which sizes the ring buffer and the estimator */
+    int maxWindow() {
+        return adaptiveWindow ? windowMax : window;
+    }
+
+    /** @return the tracker following the displayed pitch, or null when it is averaged instead */
+    PitchTracker createTracker(int sampleRate) {
+        return track ? new PitchTracker((double) hop / sampleRate) : null;
+    }
+
+    /** Create the estimator for a session tuning towards targetHz. */
+    PitchEstimator createEstimator(int sampleRate, int frameSize, double targetHz) {
+        switch (search) {
+            case TARGET:
+                return new TargetedEstimator(sampleRate, frameSize, targetHz, searchSemitones, coarseEvery, 0.5, engine);
+            case MULTIRATE:
+                return new CoarseToFineEstimator(sampleRate, frameSize, hop, decimation, engine, MULTIRATE_LOWEST_HZ);
+            default:
+                return adaptiveWindow ? engine.create(sampleRate, frameSize, MULTIRATE_LOWEST_HZ) : engine.create(sampleRate, frameSize);
+        }
+    }
+
+    /** @return the window policy for a session, or null for the fixed window */
+    AdaptiveFraming createFraming(int sampleRate) {
+        if (!adaptiveWindow) return null;
+        // the targeted estimator's fine pass only reaches down to the default range
+        double lowest = search == Search.TARGET ? PitchEstimator.DEFAULT_MIN_HZ : MULTIRATE_LOWEST_HZ;
+        return new AdaptiveFraming(sampleRate, hop, windowMin, window, windowMax, windowPeriods, lowest, PitchEstimator.DEFAULT_MAX_HZ);
+    }
+
+    /** @return the gate for a session, or null when gating is off */
+    SignalGate createGate(int sampleRate) {
+        return gate ? new SignalGate(sampleRate, hop, gateOpenDb, gateIdleEvery) : null;
+    }
+
+    /** @return a recorder for a new session, or null when recording is off */
+    CaptureRecorder createRecorder(int sampleRate, int channels) throws IOException {
+        if (record == null) return null;
+        String session = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT));
+        return new CaptureRecorder(Paths.get(record, session), sampleRate, channels, CaptureRecorder.DEFAULT_SEGMENT_BYTES);
+    }
+
+    static TunerConfig fromSystemProperties() {
+        PitchEngine engine = PitchEngine.ACF_FFT;
+        String name = System.getProperty("tuner.engine");
+        if (name != null) {
+            try {
+                engine = PitchEngine.fromName(name);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Unknown tuner.engine '" + name + "', using " + engine);
+            }
+        }
+        int window = intProperty("tuner.window", 4096, 1024, 32768);
+        int hop = intProperty("tuner.hop", Math.min(512, window), 1, window);
+        boolean adaptiveWindow = Boolean.getBoolean("tuner.window.adaptive");
+        int windowMin = intProperty("tuner.window.min", Math.min(AdaptiveFraming.DEFAULT_MIN_WINDOW, window), 256, window);
+        int windowMax = intProperty("tuner.window.max", Math.max(AdaptiveFraming.DEFAULT_MAX_WINDOW, window), window, 32768);
+        int windowPeriods = intProperty("tuner.window.periods", (int) AdaptiveFraming.DEFAULT_PERIODS, 2, 64);
+        if (adaptiveWindow && hop > windowMin) {
+            System.err.println("tuner.hop " + hop + " exceeds tuner.window.min " + windowMin + "; using " + windowMin);
+            hop = windowMin;
+        }
+
+        boolean track = true;
+        FrequencySmoother.Mode smoothing = FrequencySmoother.Mode.MEAN;
+        String mode = System.getProperty("tuner.smoothing");
+        if (mode != null) {
+            switch (mode.trim().toLowerCase(Locale.ROOT)) {
+                case "track": break;
+                case "mean": track = false; smoothing = FrequencySmoother.Mode.MEAN; break;
+                case "median": track = false; smoothing = FrequencySmoother.Mode.MEDIAN; break;
+                case "trimmed": track = false; smoothing = FrequencySmoother.Mode.TRIMMED_MEAN; break;
+                default: System.err.println("Unknown tuner.smoothing '" + mode + "', using track");
+            }
+        }
+        int smoothingMs = intProperty("tuner.smoothing.ms", 4000, 1, 60000);
+
+        Search search = Search.FULL;
+        String searchName = System.getProperty("tuner.search");
+        if (searchName != null) {
+            try {
+                search = Search.valueOf(searchName.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Unknown tuner.search '" + searchName + "', using full");
+            }
+        }
+        int semitones = intProperty("tuner.search.semitones", 2, 1, 12);
+        int coarseEvery = intProperty("tuner.search.coarse-every", 8, 1, 1000);
+        int decimation = intProperty("tuner.search.decimation", 4, 2, 4);
+        if (decimation == 3) {
+            System.err.println("Invalid tuner.search.decimation '3', expected 2 or 4; using 4");
+            decimation = 4;
+        }
+        boolean gate = !"false".equalsIgnoreCase(System.getProperty("tuner.gate", "true").trim());
+        int gateOpenDb = intProperty("tuner.gate.open-db", (int) SignalGate.DEFAULT_OPEN_DB, 3, 40);
+        int gateIdleEvery = intProperty("tuner.gate.idle-every", SignalGate.DEFAULT_IDLE_EVERY, 0, 1000);
+        boolean strobe = !"false".equalsIgnoreCase(System.getProperty("tuner.strobe", "true").trim());
+        String record = pathProperty("tuner.record");
+        String replay = pathProperty("tuner.replay");
+        String shm = pathProperty("tuner.shm");
+        boolean printMetrics = Boolean.getBoolean("tuner.metrics");
+        return new TunerConfig(engine, window, hop, adaptiveWindow, windowMin, windowMax, windowPeriods, track, smoothing, smoothingMs, search, semitones, coarseEvery, decimation,
+                gate, gateOpenDb, gateIdleEvery, strobe, record, replay, shm, printMetrics);
+    }
+
+    // null when unset or blank
+    private static String pathProperty(String key) {
+        String value = System.getProperty(key);
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private static int intProperty(String key, int def, int min, int max) {
+        String value = System.getProperty(key);
+        if (value == null) return def;
+        try {
+            int v = Integer.parseInt(value.trim());
+            if (v >= min && v <= max) return v;
+        } catch (NumberFormatException ignored) {
+        }
+        System.err.println("Invalid " + key + " '" + value + "', expected " + min + ".." + max + "; using " + def);
+        return def;
+    }
+}
@@ -0,0 +1,127 @@
+package com.harmonic.tuner;
+
+/**
+ * YIN pitch estimator (de Cheveigne and Kawahara, 2002).
+ *
+ * The difference function d(tau) = sum (x[i] - x[i+tau])^2 is expanded into
+ * two energy terms, read from a prefix sum of squares, and the
+ * autocorrelation, taken from an {@link FftAutocorrelator}. Summation runs
+ * over the overlapping part of the frame, so the window tapers with lag; the
+ * cumulative mean normalization compensates for most of that bias. The first
+ * dip of the normalized function below the threshold is chosen, which favours
+ * the fundamental over its sub-octaves. Clarity is 1 - d'(tau).
+ */
+public final class YinEstimator implements PitchEstimator {
+    /** Absolute threshold on the normalized difference, as suggested in the paper. */
+    public static final double DEFAULT_THRESHOLD = 0.10;
+
+    private final int sampleRate;
+    private final int maxFrameSize;
+    private final double threshold;
+    private final FftAutocorrelator acf;
+    private final double lowestHz;
+    private double minHz = DEFAULT_MIN_HZ;
+    private double maxHz = DEFAULT_MAX_HZ;
+    private final double[] prefix;
+    private final double[] cmnd;
+
+    public YinEstimator(int sampleRate, int maxFrameSize) {
+        this(sampleRate, maxFrameSize, DEFAULT_THRESHOLD);
+    }
+
+    public YinEstimator(int sampleRate, int maxFrameSize, double threshold) {
+        this(sampleRate, maxFrameSize, threshold, DEFAULT_MIN_HZ);
+    }
+
+    /**
+     * @param lowestHz lowest fundamental {@link #setSearchRange} may ask for;
+     *                 sizes the lag buffers
+     */
+    public YinEstimator(int sampleRate, int maxFrameSize, double threshold, double lowestHz) {
+        this.sampleRate = sampleRate;
+        this.lowestHz = lowestHz;
+        this.maxFrameSize = maxFrameSize;
+        this.threshold = threshold;
+        this.acf = PitchDetector.newAutocorrelator(maxFrameSize, sampleRate, lowestHz);
+        this.prefix = new double[maxFrameSize + 1];
+        this.cmnd = new double[acf.maxLag() + 1];
+    }
+
+    @Override
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSearchRange(double minHz, double maxHz) {
+        PitchDetector.checkRange(minHz, maxHz);
+        this.minHz = Math.max(minHz, lowestHz);
+        this.maxHz = maxHz;
+    }
+
+    @Override
+    public void estimate(float[] audio, int length, PitchResult result) {
+        if (length <= 0 || length > maxFrameSize) {
+            result.clear();
+            return;
+        }
+        int maxLag = PitchDetector.maxLag(length, sampleRate, minHz);
+        int minLag = Math.max(2, PitchDetector.minLag(sampleRate, maxHz));
+
+        prefix[0] = 0;
+        for (int i = 0; i < length; i++) prefix[i + 1] = prefix[i] + audio[i] * audio[i];
+        if (prefix[length] <= 1e-8 || maxLag <= minLag) {
+            result.clear();
+            return;
+        }
+
+        double[] r = acf.autocorrelate(audio, length, maxLag);
+
+        // cumulative mean normalized difference
+        cmnd[0] = 1;
+        double running = 0;
+        for (int tau = 1; tau <= maxLag; tau++) {
+            double d = prefix[length - tau] + (prefix[length] - prefix[tau]) - 2 * r[tau];
+            if (d < 0) d = 0; // rounding
+            running += d;
+            cmnd[tau] = running > 0 ? d * tau / running : 1;
+        }
+
+        int best = -1;
+        for (int tau = minLag; tau <= maxLag; tau++) {
+            if (cmnd[tau] < threshold) {
+                while (tau + 1 <= maxLag && cmnd[tau + 1] < cmnd[tau]) tau++;
+                best = tau;
+                break;
+            }
+        }
+        if (best < 0) {
+            // no dip below threshold: fall back to the global minimum
+            double min = Double.POSITIVE_INFINITY;
+            for (int tau = minLag; tau <= maxLag; tau++) {
+                if (cmnd[tau] < min) {
+                    min = cmnd[tau];
+                    best = tau;
+                }
+            }
+        }
+
+        double refinedLag = best;
+        if (best > minLag && best < maxLag) {
+            refinedLag = PitchDetector.refine(best, cmnd[best - 1], cmnd[best], cmnd[best + 1]);
+        }
+        double freq = PitchDetector.toFrequency(refinedLag, sampleRate);
+        result.set(freq, freq > 0 ? Math.max(0, Math.min(1, 1 - cmnd[best])) : 0);
+        if (freq <= 0) return;
+
+        // runners-up: the other dips, scored like the estimate
+        for (int tau = minLag + 1; tau < maxLag; tau++) {
+            double d = cmnd[tau];
+            if (tau == best || d >= cmnd[tau - 1] || d > cmnd[tau + 1]) continue;
+            double score = 1 - d;
+            if (score <= 0 || !result.wantsCandidate(score)) continue;
+            double lag = PitchDetector.refine(tau, cmnd[tau - 1], d, cmnd[tau + 1]);
+            result.addCandidate(PitchDetector.toFrequency(lag, sampleRate), Math.min(1, score));
+        }
+    }
+}
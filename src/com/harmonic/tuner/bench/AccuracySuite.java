@@ -0,0 +1,395 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.PitchDetector;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Accuracy against cost of the pitch detectors over sweeps of synthetic
+ * signals, so an optimization can show that it did not trade away accuracy.
+ *
+ * Every detector sees the same frames: for each signal shape and noise level,
+ * fundamentals spaced --steps per octave from --min-hz to --max-hz, each
+ * played --trials times with a random detune of up to 50 cents and a random
+ * phase. Shapes are those of {@link SyntheticSignal}: sine, band-limited
+ * sawtooth, sawtooth with the fundamental removed (its pitch is still the
+ * fundamental), stiff-string partials as on a piano (the pitch is the first
+ * partial) and the eight-harmonic tone; noise is added at each --snr, "inf"
+ * meaning none. The detectors search --min-hz / 1.1 to --max-hz * 1.1,
+ * except the legacy default-package {@code PitchDetector}, whose range is
+ * fixed.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.AccuracySuite [options]
+ *
+ *   --detectors detect,legacy,acf-fft,yin,mpm   detect is {@link PitchDetector#detect}, legacy the
+ *                                               default-package detector, the rest {@link PitchEngine}s
+ *   --signals sine,sawtooth,missing_fundamental,inharmonic,harmonic
+ *   --snr inf,20,10,0       noise levels in dB
+ *   --min-hz 27.5 --max-hz 4000 --steps 3 --trials 3
+ *   --frame 4096 --rate 44100
+ *   --by-band               one row per band (below 110 Hz, to 880 Hz, above) as well
+ *   --save FILE             write the table as CSV
+ *   --baseline FILE         compare with a saved table; exit 1 on an accuracy regression
+ * </pre>
+ *
+ * Per row: frames; mean and 95th percentile of the absolute error in cents
+ * over the frames within 50 cents of the true pitch; the share of octave
+ * errors, within 50 cents of the pitch times a power of two; the share of
+ * other misses, including frames without a pitch; and the mean detection
+ * time. The frames are deterministic, so against a baseline made with the
+ * same options any rise in error is the detector's. A row regresses when its
+ * octave errors or misses grow by more than max(1, 1%) of its frames or its
+ * 95th percentile error grows by more than 0.1 cents plus 5%. Detection time
+ * is reported as a speed-up over the baseline but not checked.
+ */
+public final class AccuracySuite {
+    private static final double SEARCH_MARGIN = 1.1;
+    private static final double MAX_DETUNE_CENTS = 50;
+    private static final double CORRECT_CENTS = 50;
+    private static final double[] BAND_EDGES = {110, 880};
+    private static final String[] BAND_NAMES = {"low", "mid", "high"};
+    private static final int WARMUP_FRAMES = 200;
+
+    private List<String> detectors = Arrays.asList("detect", "legacy", "acf-fft", "yin", "mpm");
+    private List<SyntheticSignal.Type> signals = Arrays.asList(SyntheticSignal.Type.SINE, SyntheticSignal.Type.SAWTOOTH,
+            SyntheticSignal.Type.MISSING_FUNDAMENTAL, SyntheticSignal.Type.INHARMONIC);
+    private double[] snrs = {Double.POSITIVE_INFINITY, 20, 10, 0};
+    private double minHz = 27.5;
+    private double maxHz = 4000;
+    private int steps = 3;
+    private int trials = 3;
+    private int frame = 4096;
+    private int rate = 44100;
+    private boolean byBand;
+    private Path save;
+    private Path baseline;
+
+    /** One detector under test; returns Hz or a value <= 0 for no pitch. */
+    private interface Detector {
+        double detect(float[] audio);
+    }
+
+    /** Error statistics of one table row. */
+    private static final class Row {
+        final String key;
+        int frames;
+        int octaves;
+        int misses;
+        long nanos;
+        double[] cents = new double[64];
+        int correct;
+        double meanCents;
+        double p95Cents;
+
+        Row(String key) {
+            this.key = key;
+        }
+
+        void add(double cents) {
+            if (correct == this.cents.length) this.cents = Arrays.copyOf(this.cents, correct * 2);
+            this.cents[correct++] = Math.abs(cents);
+        }
+
+        void finish() {
+            Arrays.sort(cents, 0, correct);
+            double sum = 0;
+            for (int i = 0; i < correct; i++) sum += cents[i];
+            meanCents = correct == 0 ? 0 : sum / correct;
+            p95Cents = correct == 0 ? 0 : cents[Math.min(correct - 1, (int) Math.ceil(0.95 * correct) - 1)];
+        }
+
+        double octavePercent() {
+            return frames == 0 ? 0 : 100.0 * octaves / frames;
+        }
+
+        double missPercent() {
+            return frames == 0 ? 0 : 100.0 * misses / frames;
+        }
+
+        double nsPerFrame() {
+            return frames == 0 ? 0 : (double) nanos / frames;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        AccuracySuite suite = new AccuracySuite();
+        suite.parse(args);
+        if (!suite.run()) System.exit(1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if ("--by-band".equals(opt)) {
+                byBand = true;
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--detectors": detectors = Arrays.asList(val.split(",")); break;
+                case "--signals":
+                    signals = new ArrayList<>();
+                    for (String s : val.split(",")) signals.add(SyntheticSignal.Type.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+                    break;
+                case "--snr":
+                    String[] parts = val.split(",");
+                    snrs = new double[parts.length];
+                    for (int k = 0; k < parts.length; k++) {
+                        String p = parts[k].trim();
+                        snrs[k] = "inf".equalsIgnoreCase(p) ? Double.POSITIVE_INFINITY : Double.parseDouble(p);
+                    }
+                    break;
+                case "--min-hz": minHz = Double.parseDouble(val); break;
+                case "--max-hz": maxHz = Double.parseDouble(val); break;
+                case "--steps": steps = Integer.parseInt(val); break;
+                case "--trials": trials = Integer.parseInt(val); break;
+                case "--frame": frame = Integer.parseInt(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--save": save = Paths.get(val); break;
+                case "--baseline": baseline = Paths.get(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        if (!(minHz > 0 && maxHz > minHz)) throw new IllegalArgumentException("invalid range " + minHz + ".." + maxHz + " Hz");
+    }
+
+    private String settings() {
+        StringBuilder snr = new StringBuilder();
+        for (double s : snrs) snr.append(snr.length() == 0 ? "" : ",").append(Double.isInfinite(s) ? "inf" : fmt(s));
+        return String.format(Locale.ROOT, "range %s-%s Hz, %d steps/octave, %d trials, frame %d, rate %d, snr %s",
+                fmt(minHz), fmt(maxHz), steps, trials, frame, rate, snr);
+    }
+
+    private boolean run() throws IOException {
+        Map<String, Detector> active = new LinkedHashMap<>();
+        for (String name : detectors) {
+            Detector d = create(name.trim());
+            if (d != null) active.put(name.trim(), d);
+        }
+        double[] sweep = sweep();
+        System.out.println("# kernels: " + Kernels.get().name());
+        System.out.println("# " + settings() + ", " + sweep.length + " pitches");
+        warmUp(active);
+
+        Map<String, Row> rows = new LinkedHashMap<>();
+        float[] audio = new float[frame];
+        for (SyntheticSignal.Type signal : signals) {
+            for (int s = 0; s < snrs.length; s++) {
+                // rows in print order: each detector's total, then its bands
+                for (String name : active.keySet()) {
+                    String base = name + "," + signal.name().toLowerCase(Locale.ROOT) + "," + snrName(snrs[s]);
+                    rows.put(base + ",all", new Row(base + ",all"));
+                    if (byBand) for (String b : BAND_NAMES) rows.put(base + "," + b, new Row(base + "," + b));
+                }
+                for (int f = 0; f < sweep.length; f++) {
+                    for (int t = 0; t < trials; t++) {
+                        // the frame depends only on its position in the sweep, not on which other cases run
+                        Random rnd = new Random(1000L * f + t);
+                        double hz = sweep[f] * Math.pow(2, (2 * rnd.nextDouble() - 1) * MAX_DETUNE_CENTS / 1200);
+                        SyntheticSignal.fill(signal, hz, rate, audio, frame, rnd.nextLong());
+                        if (!Double.isInfinite(snrs[s])) SyntheticSignal.addNoise(audio, frame, snrs[s], rnd.nextLong());
+                        for (Map.Entry<String, Detector> e : active.entrySet()) {
+                            long start = System.nanoTime();
+                            double found = e.getValue().detect(audio);
+                            long nanos = System.nanoTime() - start;
+                            String base = e.getKey() + "," + signal.name().toLowerCase(Locale.ROOT) + "," + snrName(snrs[s]);
+                            count(rows, base + ",all", hz, found, nanos);
+                            if (byBand) count(rows, base + "," + BAND_NAMES[band(sweep[f])], hz, found, nanos);
+                        }
+                    }
+                }
+            }
+        }
+        for (Row r : rows.values()) r.finish();
+
+        Map<String, double[]> reference = baseline != null ? load(baseline) : null;
+        boolean ok = print(rows, reference);
+        if (save != null) save(rows, save);
+        return ok;
+    }
+
+    private void count(Map<String, Row> rows, String key, double truth, double found, long nanos) {
+        Row row = rows.get(key);
+        row.frames++;
+        row.nanos += nanos;
+        if (!(found > 0)) {
+            row.misses++;
+            return;
+        }
+        double cents = 1200 * Math.log(found / truth) / Math.log(2);
+        long octave = Math.round(cents / 1200);
+        if (Math.abs(cents - 1200 * octave) >= CORRECT_CENTS) {
+            row.misses++;
+        } else if (octave != 0) {
+            row.octaves++;
+        } else {
+            row.add(cents);
+        }
+    }
+
+    private boolean print(Map<String, Row> rows, Map<String, double[]> reference) {
+        System.out.printf(Locale.ROOT, "%-8s %-19s %4s %-4s %6s %9s %9s %8s %8s %10s%s%n", "detector", "signal", "snr",
+                "band", "frames", "mean_c", "p95_c", "octave%", "miss%", "ns/frame", reference != null ? "   speedup" : "");
+        boolean ok = true;
+        for (Row r : rows.values()) {
+            String[] k = r.key.split(",");
+            String speedup = "";
+            String verdict = "";
+            if (reference != null) {
+                double[] b = reference.get(r.key);
+                if (b == null) {
+                    verdict = "  (new)";
+                } else {
+                    speedup = String.format(Locale.ROOT, " %9.2fx", b[5] / Math.max(1, r.nsPerFrame()));
+                    String why = regression(r, b);
+                    if (why != null) {
+                        verdict = "  REGRESSION: " + why;
+                        ok = false;
+                    }
+                }
+            }
+            System.out.printf(Locale.ROOT, "%-8s %-19s %4s %-4s %6d %9.3f %9.3f %8.2f %8.2f %10.0f%s%s%n",
+                    k[0], k[1], k[2], k[3], r.frames, r.meanCents, r.p95Cents, r.octavePercent(), r.missPercent(),
+                    r.nsPerFrame(), speedup, verdict);
+        }
+        if (reference != null) System.out.println(ok ? "# no accuracy regressions against " + baseline : "# accuracy regressions against " + baseline);
+        return ok;
+    }
+
+    // null if the row is at least as accurate as baseline b = frames, mean, p95, octave%, miss%, ns
+    private static String regression(Row r, double[] b) {
+        double allowed = Math.max(1, 0.01 * r.frames);
+        if (r.octaves - b[3] / 100 * b[0] > allowed) {
+            return String.format(Locale.ROOT, "octave errors %.2f%% -> %.2f%%", b[3], r.octavePercent());
+        }
+        if (r.misses - b[4] / 100 * b[0] > allowed) {
+            return String.format(Locale.ROOT, "misses %.2f%% -> %.2f%%", b[4], r.missPercent());
+        }
+        if (r.p95Cents > b[2] * 1.05 + 0.1) {
+            return String.format(Locale.ROOT, "p95 error %.3f -> %.3f cents", b[2], r.p95Cents);
+        }
+        return null;
+    }
+
+    private void save(Map<String, Row> rows, Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("# " + settings());
+            out.println("detector,signal,snr,band,frames,mean_cents,p95_cents,octave_pct,miss_pct,ns_per_frame");
+            for (Row r : rows.values()) {
+                out.printf(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f,%.1f%n", r.key, r.frames, r.meanCents, r.p95Cents,
+                        r.octavePercent(), r.missPercent(), r.nsPerFrame());
+            }
+        }
+    }
+
+    // saved rows by key, each as frames, mean, p95, octave%, miss%, ns
+    private Map<String, double[]> load(Path file) throws IOException {
+        Map<String, double[]> rows = new HashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals("# " + settings())) {
+            throw new IllegalArgumentException(file + " was made with different settings: "
+                    + (lines.isEmpty() ? "empty" : lines.get(0).substring(Math.min(2, lines.get(0).length()))));
+        }
+        for (String line : lines.subList(Math.min(2, lines.size()), lines.size())) {
+            String[] f = line.split(",");
+            if (f.length != 10) continue;
+            double[] v = new double[6];
+            for (int i = 0; i < 6; i++) v[i] = Double.parseDouble(f[4 + i]);
+            rows.put(f[0] + "," + f[1] + "," + f[2] + "," + f[3], v);
+        }
+        return rows;
+    }
+
+    private Detector create(String name) {
+        double low = minHz / SEARCH_MARGIN;
+        double high = maxHz * SEARCH_MARGIN;
+        switch (name) {
+            case "detect":
+                return audio -> PitchDetector.detect(audio, rate, low, high);
+            case "legacy":
+                try {
+                    Class<?> legacyClass = Class.forName("PitchDetector");
+                    Object legacy = legacyClass.getConstructor(int.class).newInstance(rate);
+                    MethodHandle detectPitch = MethodHandles.publicLookup()
+                            .findVirtual(legacyClass, "detectPitch", MethodType.methodType(double.class, float[].class))
+                            .bindTo(legacy);
+                    return audio -> invoke(detectPitch, audio);
+                } catch (ReflectiveOperationException ex) {
+                    System.out.println("# legacy skipped: compile src/PitchDetector.java onto the classpath");
+                    return null;
+                }
+            default:
+                PitchEstimator estimator = PitchEngine.fromName(name).create(rate, frame, low);
+                estimator.setSearchRange(low, high);
+                PitchResult result = new PitchResult();
+                return audio -> {
+                    // every frame is a new signal; no state may carry over from the previous one
+                    estimator.reset();
+                    estimator.estimate(audio, audio.length, result);
+                    return result.frequency();
+                };
+        }
+    }
+
+    private static double invoke(MethodHandle handle, float[] audio) {
+        try {
+            return (double) handle.invokeExact(audio);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    // compile the detectors before timing them, on frames outside the measured set
+    private void warmUp(Map<String, Detector> active) {
+        float[] audio = new float[frame];
+        Random rnd = new Random(-1);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            double hz = minHz * Math.pow(maxHz / minHz, rnd.nextDouble());
+            SyntheticSignal.fill(SyntheticSignal.Type.HARMONIC, hz, rate, audio, frame, i);
+            for (Detector d : active.values()) d.detect(audio);
+        }
+    }
+
+    private double[] sweep() {
+        int n = (int) Math.floor(steps * Math.log(maxHz / minHz) / Math.log(2) + 1e-9) + 1;
+        double[] hz = new double[n];
+        for (int i = 0; i < n; i++) hz[i] = minHz * Math.pow(2, (double) i / steps);
+        return hz;
+    }
+
+    private static int band(double hz) {
+        int b = 0;
+        while (b < BAND_EDGES.length && hz >= BAND_EDGES[b]) b++;
+        return b;
+    }
+
+    private static String snrName(double snr) {
+        return Double.isInfinite(snr) ? "inf" : fmt(snr);
+    }
+
+    private static String fmt(double v) {
+        return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+    }
+}
@@ -0,0 +1,269 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.AnalysisStage;
+import com.harmonic.tuner.AutocorrelationEstimator;
+import com.harmonic.tuner.CoarseToFineEstimator;
+import com.harmonic.tuner.FftAutocorrelator;
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.PipelineMetrics;
+import com.harmonic.tuner.PitchDetector;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.SampleRingBuffer;
+import com.harmonic.tuner.SignalGate;
+import com.harmonic.tuner.SlidingAutocorrelationEstimator;
+import com.harmonic.tuner.SlidingAutocorrelator;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checks the selected {@link Kernels} against the scalar reference, and the
+ * time-domain detector built on them against the FFT detector, which does
+ * not use them. Exits with status 1 on any mismatch.
+ *
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp ../out com.harmonic.tuner.bench.CorrectnessCheck
+ * </pre>
+ *
+ * PCM decoding, from arrays and from direct buffers of either byte order,
+ * must match bit for bit. Dot products may differ by float rounding of the
+ * partial sums: at most 1e-5 of the sum of |a[i] * b[i]|, or 1e-13 for the
+ * double-precision variant. The sliding autocorrelation must give the same
+ * estimates as full recomputation, frame by frame, over long signals, to
+ * 1e-6 of the frequency and 2e-6 in clarity. The
+ * multirate estimator behind a closed {@link SignalGate}, which analyses
+ * only every few frames, must give what a fresh estimator gives on each
+ * analysed frame.
+ */
+public final class CorrectnessCheck {
+    private static final double DOT_TOLERANCE = 1e-5;
+    private static final double DOUBLE_DOT_TOLERANCE = 1e-13;
+    private static final double FREQUENCY_TOLERANCE = 1e-5;
+    // what the sliding sums guarantee; scalar kernels stay near 5e-9 and 2e-8, vector ones near 4e-7 and 6e-7
+    private static final double SLIDING_FREQUENCY_TOLERANCE = 1e-6;
+    private static final double SLIDING_CLARITY_TOLERANCE = 2e-6;
+
+    private int failures;
+    private int checks;
+
+    public static void main(String[] args) {
+        CorrectnessCheck check = new CorrectnessCheck();
+        Kernels kernels = Kernels.get();
+        System.out.println("kernels: " + kernels.name());
+        check.kernels(kernels, Kernels.scalar());
+        check.detector();
+        check.sliding();
+        check.gatedMultirate();
+        System.out.printf(Locale.ROOT, "%d checks, %d failures%n", check.checks, check.failures);
+        if (check.failures > 0) System.exit(1);
+    }
+
+    private void kernels(Kernels tested, Kernels reference) {
+        Random rnd = new Random(7);
+        int[] lengths = new int[300 + 5];
+        for (int i = 0; i < 300; i++) lengths[i] = i;
+        lengths[300] = 1023;
+        lengths[301] = 1024;
+        lengths[302] = 4096;
+        lengths[303] = 16384 + 7;
+        lengths[304] = 65536 + 13;
+
+        for (int length : lengths) {
+            for (int offset = 0; offset < 4; offset++) {
+                byte[] pcm = new byte[2 * (length + offset)];
+                rnd.nextBytes(pcm);
+                float[] expected = new float[length + offset];
+                float[] actual = new float[length + offset];
+                reference.pcm16ToFloat(pcm, 2 * offset, expected, offset, length);
+                tested.pcm16ToFloat(pcm, 2 * offset, actual, offset, length);
+                checks++;
+                if (!Arrays.equals(expected, actual)) {
+                    fail("pcm16ToFloat length " + length + " offset " + offset);
+                }
+                for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+                    ByteBuffer direct = ByteBuffer.allocateDirect(pcm.length).order(order);
+                    direct.put(pcm).flip();
+                    Arrays.fill(actual, 0);
+                    tested.pcm16ToFloat(direct, 2 * offset, actual, offset, length);
+                    checks++;
+                    if (!Arrays.equals(expected, actual)) {
+                        fail("pcm16ToFloat direct " + order + " length " + length + " offset " + offset);
+                    }
+                }
+
+                float[] a = new float[length + 2 * offset];
+                for (int i = 0; i < a.length; i++) a[i] = (float) (rnd.nextGaussian() * 0.3);
+                double want = reference.dot(a, offset, a, 2 * offset, length);
+                double got = tested.dot(a, offset, a, 2 * offset, length);
+                double scale = 0;
+                for (int i = 0; i < length; i++) scale += Math.abs((double) a[offset + i] * a[2 * offset + i]);
+                checks++;
+                if (Math.abs(got - want) > DOT_TOLERANCE * scale + 1e-12) {
+                    fail(String.format(Locale.ROOT, "dot length %d offset %d: %.9g vs %.9g", length, offset, got, want));
+                }
+
+                want = reference.dotDouble(a, offset, a, 2 * offset, length);
+                got = tested.dotDouble(a, offset, a, 2 * offset, length);
+                checks++;
+                if (Math.abs(got - want) > DOUBLE_DOT_TOLERANCE * scale + 1e-300) {
+                    fail(String.format(Locale.ROOT, "dotDouble length %d offset %d: %.17g vs %.17g",
+                            length, offset, got, want));
+                }
+            }
+        }
+    }
+
+    private void detector() {
+        int[] rates = {22050, 44100, 48000};
+        int[] frames = {1024, 2048, 4096};
+        double[] freqs = {55, 82.41, 110, 196, 440, 987.8, 1500};
+        for (int rate : rates) {
+            for (int frame : frames) {
+                FftAutocorrelator acf = PitchDetector.newAutocorrelator(frame, rate);
+                for (SyntheticSignal.Type type : new SyntheticSignal.Type[]{SyntheticSignal.Type.SINE, SyntheticSignal.Type.HARMONIC}) {
+                    for (double freq : freqs) {
+                        if (rate / freq > frame - 1) continue;
+                        float[] audio = new float[frame];
+                        SyntheticSignal.fill(type, freq, rate, audio, frame, 11);
+                        double time = PitchDetector.detect(audio, rate);
+                        double fft = PitchDetector.detect(audio, rate, acf);
+                        checks++;
+                        if (Math.abs(time - fft) > FREQUENCY_TOLERANCE * Math.abs(fft)) {
+                            fail(String.format(Locale.ROOT, "detect %s %.2f Hz, %d @ %d: %.6f vs fft %.6f",
+                                    type, freq, frame, rate, time, fft));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // incremental lag sums against full recomputation, frame by frame over long streams
+    private void sliding() {
+        int rate = 44100;
+        int frame = 2048;
+        float[] stream = longSignal(rate, 30);
+        int[] hops = {64, 441, 1024, 2047};
+        for (int hop : hops) {
+            // small hops make many frames; bound the run time
+            int end = Math.min(stream.length, (hop < 256 ? 5 : 30) * rate);
+            SlidingAutocorrelationEstimator sliding = new SlidingAutocorrelationEstimator(rate, frame);
+            AutocorrelationEstimator full = new AutocorrelationEstimator(rate, frame, false);
+            float[] window = new float[frame];
+            PitchResult a = new PitchResult();
+            PitchResult b = new PitchResult();
+            double worstHz = 0;
+            double worstClarity = 0;
+            int frames = 0;
+            for (int start = 0; start + frame <= end; start += hop, frames++) {
+                System.arraycopy(stream, start, window, 0, frame);
+                sliding.estimate(window, frame, a);
+                full.estimate(window, frame, b);
+                checks++;
+                if (a.hasPitch() != b.hasPitch()
+                        || a.hasPitch() && Math.abs(a.frequency() - b.frequency()) > SLIDING_FREQUENCY_TOLERANCE * b.frequency()
+                        || Math.abs(a.clarity() - b.clarity()) > SLIDING_CLARITY_TOLERANCE) {
+                    fail(String.format(Locale.ROOT, "sliding hop %d at %.3f s: %.6f Hz %.6f vs full %.6f Hz %.6f",
+                            hop, start / (double) rate, a.frequency(), a.clarity(), b.frequency(), b.clarity()));
+                }
+                if (a.hasPitch() && b.hasPitch()) {
+                    worstHz = Math.max(worstHz, Math.abs(a.frequency() - b.frequency()) / b.frequency());
+                }
+                worstClarity = Math.max(worstClarity, Math.abs(a.clarity() - b.clarity()));
+            }
+            SlidingAutocorrelator acf = sliding.autocorrelator();
+            System.out.printf(Locale.ROOT, "sliding hop %4d: %5d frames, %5d slides, %3d recomputations, "
+                    + "max rel. Hz diff %.2g, max clarity diff %.2g%n",
+                    hop, frames, acf.slides(), acf.recomputations(), worstHz, worstClarity);
+            checks++;
+            if (hop < frame / 2 && acf.slides() < frames / 2) fail("sliding hop " + hop + " rarely slid");
+        }
+    }
+
+    // a steady tone the gate never opens on, so only every idle-th frame is analysed, changing pitch between them
+    private void gatedMultirate() {
+        int rate = 44100;
+        int window = 4096;
+        int hop = 1024;
+        int frameCount = 32;
+        float[] stream = new float[window + frameCount * hop];
+        double phase = 0;
+        for (int i = 0; i < stream.length; i++) {
+            phase += 2 * Math.PI * (i < 12 * hop ? 82.41 : 196) / rate;
+            stream[i] = (float) (0.3 * Math.sin(phase));
+        }
+        for (PitchEngine engine : new PitchEngine[]{PitchEngine.MPM, PitchEngine.YIN}) {
+            SampleRingBuffer ring = new SampleRingBuffer(window, hop);
+            double[] got = new double[frameCount];
+            AnalysisStage stage = new AnalysisStage(ring, new CoarseToFineEstimator(rate, window, hop, 4, engine, 27.5),
+                    window, (result, frame) -> {
+                        if (frame < frameCount) got[(int) frame] = result.hasPitch() ? result.frequency() : 0;
+                    }, new PipelineMetrics(), new SignalGate(rate, hop));
+            Thread thread = new Thread(stage, "Check-Analysis");
+            thread.start();
+            for (int at = 0; at < stream.length; at += hop) {
+                int n = Math.min(hop, stream.length - at);
+                while (!ring.canWriteWithoutSkip(n)) LockSupport.parkNanos(100_000);
+                ring.write(stream, at, n);
+            }
+            while (stage.frames() < frameCount) LockSupport.parkNanos(1_000_000);
+            stage.stop();
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            float[] frame = new float[window];
+            PitchResult fresh = new PitchResult();
+            int analysed = 0;
+            for (int k = 0; k < frameCount; k++) {
+                if (got[k] == 0) continue;
+                analysed++;
+                System.arraycopy(stream, k * hop, frame, 0, window);
+                new CoarseToFineEstimator(rate, window, hop, 4, engine, 27.5).estimate(frame, window, fresh);
+                checks++;
+                if (!fresh.hasPitch() || Math.abs(got[k] - fresh.frequency()) > FREQUENCY_TOLERANCE * fresh.frequency()) {
+                    fail(String.format(Locale.ROOT, "gated multirate %s frame %d: %.3f Hz vs fresh %.3f Hz",
+                            engine, k, got[k], fresh.frequency()));
+                }
+            }
+            checks++;
+            if (analysed < frameCount / SignalGate.DEFAULT_IDLE_EVERY) fail("gated multirate " + engine + ": " + analysed + " frames analysed");
+        }
+    }
+
+    // notes with vibrato, decaying to near silence and separated by digital silence, quantized like 16-bit input
+    private static float[] longSignal(int rate, int seconds) {
+        float[] x = new float[rate * seconds];
+        double[] notes = {82.41, 220, 146.83, 329.63, 110, 440, 196, 659.26, 61.74, 246.94};
+        Random rnd = new Random(5);
+        double phase = 0;
+        int noteSamples = 3 * rate;
+        int gap = rate / 5;
+        for (int i = 0; i < x.length; i++) {
+            int pos = i % noteSamples;
+            if (pos >= noteSamples - gap) continue;
+            double t = pos / (double) rate;
+            double f = notes[i / noteSamples % notes.length] * Math.pow(2, 0.3 * Math.sin(2 * Math.PI * 5 * t) / 12);
+            phase += 2 * Math.PI * f / rate;
+            double env = Math.min(1, t / 0.01) * Math.exp(-t * 2.5); // about -60 dB by the end of the note
+            double s = 0;
+            for (int h = 1; h <= 6 && f * h < rate / 2.0; h++) s += Math.sin(h * phase) / h;
+            s = 0.4 * env * s + 1e-4 * rnd.nextGaussian();
+            x[i] = Math.max(-32768, Math.min(32767, Math.round(s * 32767))) / 32768f;
+        }
+        return x;
+    }
+
+    private void fail(String message) {
+        failures++;
+        System.out.println("FAIL " + message);
+    }
+}
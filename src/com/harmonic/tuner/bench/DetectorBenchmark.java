@@ -0,0 +1,298 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.FftAutocorrelator;
+import com.harmonic.tuner.FrequencySmoother;
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.Pcm16;
+import com.harmonic.tuner.PitchDetector;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.StrobeAnalyzer;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * Microbenchmarks for the per-frame hot paths: pitch detection (every
+ * engine plus the legacy default-package detector), the strobe filter bank
+ * (streaming a frame's worth of samples, tuned to --freq), PCM to float
+ * conversion and frequency smoothing. The convert-scalar and dot/dot-scalar cases pit
+ * the selected {@link Kernels} against the scalar ones; run the whole suite
+ * with {@code -Dtuner.simd=false} to see the end-to-end difference.
+ *
+ * Each case is warmed up, then run for a fixed wall time on the benchmark
+ * thread. Reported per case: throughput (ops/s), ns per frame, bytes
+ * allocated per frame and allocation rate, the latter two taken from the
+ * HotSpot per-thread allocation counter.
+ *
+ * <pre>
+ * cd src
+ * javac -d ../out PitchDetector.java com/harmonic/tuner/*.java com/harmonic/tuner/bench/*.java
+ * java -cp ../out com.harmonic.tuner.bench.DetectorBenchmark [options]
+ *
+ *   --frames 1024,4096     frame sizes (default 1024,2048,4096,8192,16384)
+ *   --rates 44100          sample rates (default 22050,44100,48000,96000)
+ *   --signals sine,noisy   signal types (default sine,harmonic,noisy,silence)
+ *   --cases detect,yin     cases (default all: detect, detect-fft, acf-sliding, yin, mpm, legacy,
+ *                          strobe, convert, convert-scalar, dot, dot-scalar, smooth, smooth-list)
+ *   --freq 220             fundamental of the synthetic signals in Hz
+ *   --hop 512              frame advance of the acf-sliding case, which analyses
+ *                          successive overlapping frames of a longer signal
+ *   --warmup-ms 200 --measure-ms 500
+ * </pre>
+ */
+public final class DetectorBenchmark {
+    private static final List<String> ALL_CASES =
+            Arrays.asList("detect", "detect-fft", "acf-sliding", "yin", "mpm", "legacy", "strobe", "convert",
+                    "convert-scalar", "dot", "dot-scalar", "smooth", "smooth-list");
+    // frames per pass over the sliding-case stream; the wrap-around costs one full recomputation
+    private static final int SLIDING_FRAMES = 64;
+    private static final int SMOOTHING_WINDOW_MS = 4000;
+
+    // results are folded in here so the JIT cannot drop the measured work
+    private static volatile double sink;
+
+    private int[] frames = {1024, 2048, 4096, 8192, 16384};
+    private int[] rates = {22050, 44100, 48000, 96000};
+    // the shapes the matrix has always had, so default runs stay comparable; --signals selects others
+    private List<SyntheticSignal.Type> signals = Arrays.asList(SyntheticSignal.Type.SINE,
+            SyntheticSignal.Type.HARMONIC, SyntheticSignal.Type.NOISY, SyntheticSignal.Type.SILENCE);
+    private List<String> cases = ALL_CASES;
+    private double freq = 220;
+    private int hop = 512;
+    private long warmupMs = 200;
+    private long measureMs = 500;
+
+    private interface Op {
+        double run();
+    }
+
+    public static void main(String[] args) throws Throwable {
+        DetectorBenchmark bench = new DetectorBenchmark();
+        bench.parse(args);
+        bench.runAll();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--frames": frames = ints(val); break;
+                case "--rates": rates = ints(val); break;
+                case "--signals":
+                    signals = new ArrayList<>();
+                    for (String s : val.split(",")) signals.add(SyntheticSignal.Type.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+                    break;
+                case "--cases": cases = Arrays.asList(val.split(",")); break;
+                case "--freq": freq = Double.parseDouble(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--warmup-ms": warmupMs = Long.parseLong(val); break;
+                case "--measure-ms": measureMs = Long.parseLong(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+    }
+
+    private static int[] ints(String csv) {
+        String[] parts = csv.split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) out[i] = Integer.parseInt(parts[i].trim());
+        return out;
+    }
+
+    private void runAll() throws Throwable {
+        System.out.println("# kernels: " + Kernels.get().name());
+        System.out.printf(Locale.ROOT, "%-14s %6s %6s %-9s %12s %12s %10s %10s%n",
+                "case", "frame", "rate", "signal", "ops/s", "ns/frame", "B/frame", "MB/s");
+        Class<?> legacyClass = null;
+        if (cases.contains("legacy")) {
+            try {
+                legacyClass = Class.forName("PitchDetector");
+            } catch (ClassNotFoundException ex) {
+                System.out.println("# legacy skipped: compile src/PitchDetector.java onto the classpath");
+            }
+        }
+
+        for (int frame : frames) {
+            for (int rate : rates) {
+                for (SyntheticSignal.Type signal : signals) {
+                    float[] audio = new float[frame];
+                    SyntheticSignal.fill(signal, freq, rate, audio, frame, 42);
+                    PitchResult result = new PitchResult();
+
+                    if (cases.contains("detect")) {
+                        report("detect", frame, rate, signal, measure(() -> PitchDetector.detect(audio, rate)));
+                    }
+                    if (cases.contains("detect-fft")) {
+                        FftAutocorrelator acf = PitchDetector.newAutocorrelator(frame, rate);
+                        report("detect-fft", frame, rate, signal, measure(() -> PitchDetector.detect(audio, rate, acf)));
+                    }
+                    if (cases.contains("acf-sliding") && hop < frame) {
+                        PitchEstimator sliding = PitchEngine.ACF_SLIDING.create(rate, frame);
+                        float[] stream = new float[frame + SLIDING_FRAMES * hop];
+                        SyntheticSignal.fill(signal, freq, rate, stream, stream.length, 42);
+                        float[] window = new float[frame];
+                        int[] next = {0};
+                        report("acf-sliding", frame, rate, signal, measure(() -> {
+                            System.arraycopy(stream, next[0] * hop, window, 0, frame);
+                            next[0] = (next[0] + 1) % SLIDING_FRAMES;
+                            sliding.estimate(window, frame, result);
+                            return result.frequency();
+                        }));
+                    }
+                    if (cases.contains("yin")) {
+                        PitchEstimator yin = PitchEngine.YIN.create(rate, frame);
+                        report("yin", frame, rate, signal, measure(() -> {
+                            yin.estimate(audio, frame, result);
+                            return result.frequency();
+                        }));
+                    }
+                    if (cases.contains("mpm")) {
+                        PitchEstimator mpm = PitchEngine.MPM.create(rate, frame);
+                        report("mpm", frame, rate, signal, measure(() -> {
+                            mpm.estimate(audio, frame, result);
+                            return result.frequency();
+                        }));
+                    }
+                    if (legacyClass != null) {
+                        Object legacy = legacyClass.getConstructor(int.class).newInstance(rate);
+                        MethodHandle detectPitch = MethodHandles.publicLookup()
+                                .findVirtual(legacyClass, "detectPitch", MethodType.methodType(double.class, float[].class))
+                                .bindTo(legacy);
+                        report("legacy", frame, rate, signal, measure(() -> invoke(detectPitch, audio)));
+                    }
+                    if (cases.contains("strobe")) {
+                        StrobeAnalyzer strobe = new StrobeAnalyzer(rate, freq);
+                        report("strobe", frame, rate, signal, measure(() -> strobe.process(audio, 0, frame, null) + strobe.cents()));
+                    }
+                    // conversion does not depend on the sample rate
+                    if (cases.contains("convert") && rate == rates[0]) {
+                        byte[] pcm = new byte[frame * 2];
+                        SyntheticSignal.toPcm16(audio, frame, pcm);
+                        float[] out = new float[frame];
+                        report("convert", frame, rate, signal, measure(() -> Pcm16.toFloat(pcm, pcm.length, out)));
+                    }
+                    if (cases.contains("convert-scalar") && rate == rates[0]) {
+                        byte[] pcm = new byte[frame * 2];
+                        SyntheticSignal.toPcm16(audio, frame, pcm);
+                        float[] out = new float[frame];
+                        Kernels scalar = Kernels.scalar();
+                        report("convert-scalar", frame, rate, signal, measure(() -> {
+                            scalar.pcm16ToFloat(pcm, 0, out, 0, frame);
+                            return out[0];
+                        }));
+                    }
+                    // one autocorrelation lag over the whole frame
+                    if (cases.contains("dot") && rate == rates[0]) {
+                        Kernels kernels = Kernels.get();
+                        report("dot", frame, rate, signal, measure(() -> kernels.dot(audio, 0, audio, 1, frame - 1)));
+                    }
+                    if (cases.contains("dot-scalar") && rate == rates[0]) {
+                        Kernels scalar = Kernels.scalar();
+                        report("dot-scalar", frame, rate, signal, measure(() -> scalar.dot(audio, 0, audio, 1, frame - 1)));
+                    }
+                }
+                if (cases.contains("smooth")) {
+                    report("smooth", frame, rate, null, measure(smoothing(frame, rate)));
+                }
+                if (cases.contains("smooth-list")) {
+                    report("smooth-list", frame, rate, null, measure(legacySmoothing(frame, rate)));
+                }
+            }
+        }
+    }
+
+    private static double invoke(MethodHandle handle, float[] audio) {
+        try {
+            return (double) handle.invokeExact(audio);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * The averaging step of Main's analysis loop, fed one reading per frame
+     * with timestamps advancing at the frame rate.
+     */
+    private static Op smoothing(int frame, int rate) {
+        int window = Math.max(1, (int) ((long) SMOOTHING_WINDOW_MS * rate / frame / 1000));
+        FrequencySmoother smoother = new FrequencySmoother(SMOOTHING_WINDOW_MS * 1_000_000L, window + 1,
+                FrequencySmoother.Mode.MEAN, 0);
+        long frameNanos = 1_000_000_000L * frame / rate;
+        long[] step = {0};
+        return () -> {
+            long i = step[0]++;
+            return smoother.add(440 + (i % 7) * 0.1, i * frameNanos);
+        };
+    }
+
+    /**
+     * The averaging step as Main used to do it: a boxed queue holding one
+     * smoothing window of readings, averaged by stream.
+     */
+    private static Op legacySmoothing(int frame, int rate) {
+        Queue<Double> freqBuffer = new LinkedList<>();
+        int window = Math.max(1, (int) ((long) SMOOTHING_WINDOW_MS * rate / frame / 1000));
+        double[] step = {0};
+        return () -> {
+            double freq = 440 + (step[0]++ % 7) * 0.1;
+            freqBuffer.offer(freq);
+            while (freqBuffer.size() > window) freqBuffer.poll();
+            return freqBuffer.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        };
+    }
+
+    private static final class Stats {
+        long ops;
+        long nanos;
+        long bytes;
+    }
+
+    private Stats measure(Op op) {
+        long end = System.nanoTime() + warmupMs * 1_000_000L;
+        double acc = 0;
+        while (System.nanoTime() < end) acc += op.run();
+
+        Stats stats = new Stats();
+        long alloc0 = allocatedBytes();
+        long start = System.nanoTime();
+        end = start + measureMs * 1_000_000L;
+        long now;
+        do {
+            for (int i = 0; i < 8; i++) acc += op.run();
+            stats.ops += 8;
+            now = System.nanoTime();
+        } while (now < end);
+        stats.nanos = now - start;
+        stats.bytes = allocatedBytes() - alloc0;
+        sink = acc;
+        return stats;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static void report(String name, int frame, int rate, SyntheticSignal.Type signal, Stats s) {
+        double seconds = s.nanos / 1e9;
+        System.out.printf(Locale.ROOT, "%-14s %6d %6d %-9s %12.1f %12.0f %10.1f %10.2f%n",
+                name, frame, rate, signal == null ? "-" : signal.name().toLowerCase(Locale.ROOT),
+                s.ops / seconds, (double) s.nanos / s.ops, (double) s.bytes / s.ops,
+                s.bytes / seconds / (1024 * 1024));
+    }
+}
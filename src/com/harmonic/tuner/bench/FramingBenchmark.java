@@ -0,0 +1,243 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.AdaptiveFraming;
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares the fixed analysis window with {@link AdaptiveFraming} on a
+ * stream of notes across the registers, framed the way
+ * {@link com.harmonic.tuner.AnalysisStage} frames the capture ring: one
+ * frame per hop, ending at the newest sample, with the policy reset on each
+ * note's first frame as the gate's onset would.
+ *
+ * The stream plays one note per pitch, spaced --steps per octave from
+ * --min-hz to --max-hz, each detuned by up to 50 cents and --note-ms long,
+ * with noise at --snr dB. Both modes use the same engine, searching 27.5 to
+ * 2000 Hz.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.FramingBenchmark [options]
+ *
+ *   --engine acf-fft --hop 512 --rate 44100
+ *   --window 4096            fixed window, and the adaptive window's first estimate
+ *   --min-window 1024 --max-window 16384 --periods 8
+ *   --signal sawtooth --snr 20
+ *   --min-hz 27.5 --max-hz 1760 --steps 4 --note-ms 1000
+ * </pre>
+ *
+ * Per mode and band (below 110 Hz, to 880 Hz, above): mean window; the
+ * mean delay of a frame's centre behind its newest sample, half the window;
+ * the mean time from the start of a note to the end of its first frame
+ * within 50 cents of it, over the notes that got one; for frames lying
+ * wholly within a note, the 95th percentile error in cents of the correct
+ * ones, the share of octave errors and other misses; and the mean detection
+ * time per frame.
+ */
+public final class FramingBenchmark {
+    private static final double LOWEST_HZ = 27.5;
+    private static final double HIGHEST_HZ = PitchEstimator.DEFAULT_MAX_HZ;
+    private static final double MAX_DETUNE_CENTS = 50;
+    private static final double CORRECT_CENTS = 50;
+    private static final double[] BAND_EDGES = {110, 880};
+    private static final String[] BAND_NAMES = {"low", "mid", "high"};
+    private static final int WARMUP_RUNS = 3;
+
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int hop = 512;
+    private int rate = 44100;
+    private int window = 4096;
+    private int minWindow = AdaptiveFraming.DEFAULT_MIN_WINDOW;
+    private int maxWindow = AdaptiveFraming.DEFAULT_MAX_WINDOW;
+    private double periods = AdaptiveFraming.DEFAULT_PERIODS;
+    private SyntheticSignal.Type signal = SyntheticSignal.Type.SAWTOOTH;
+    private double snr = 20;
+    private double minHz = 27.5;
+    private double maxHz = 1760;
+    private int steps = 4;
+    private int noteMs = 1000;
+
+    /** Statistics of one mode and band. */
+    private static final class Row {
+        int notes;
+        int read;
+        long firstSamples;
+        int frames;
+        long windowSamples;
+        long nanos;
+        int measured;
+        int octaves;
+        int misses;
+        double[] cents = new double[256];
+        int correct;
+
+        void add(double c) {
+            if (correct == cents.length) cents = Arrays.copyOf(cents, correct * 2);
+            cents[correct++] = Math.abs(c);
+        }
+
+        double p95() {
+            if (correct == 0) return 0;
+            Arrays.sort(cents, 0, correct);
+            return cents[Math.min(correct - 1, (int) Math.ceil(0.95 * correct) - 1)];
+        }
+    }
+
+    public static void main(String[] args) {
+        FramingBenchmark bench = new FramingBenchmark();
+        bench.parse(args);
+        bench.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--min-window": minWindow = Integer.parseInt(val); break;
+                case "--max-window": maxWindow = Integer.parseInt(val); break;
+                case "--periods": periods = Double.parseDouble(val); break;
+                case "--signal": signal = SyntheticSignal.Type.valueOf(val.trim().toUpperCase(Locale.ROOT)); break;
+                case "--snr": snr = "inf".equalsIgnoreCase(val.trim()) ? Double.POSITIVE_INFINITY : Double.parseDouble(val); break;
+                case "--min-hz": minHz = Double.parseDouble(val); break;
+                case "--max-hz": maxHz = Double.parseDouble(val); break;
+                case "--steps": steps = Integer.parseInt(val); break;
+                case "--note-ms": noteMs = Integer.parseInt(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        if (minWindow > window || window > maxWindow) {
+            throw new IllegalArgumentException("need min-window <= window <= max-window");
+        }
+        if (hop <= 0 || hop > minWindow) throw new IllegalArgumentException("hop must be in 1.." + minWindow);
+    }
+
+    private void run() {
+        int noteLength = (int) ((long) noteMs * rate / 1000);
+        int count = (int) Math.floor(steps * Math.log(maxHz / minHz) / Math.log(2) + 1e-9) + 1;
+        double[] truth = new double[count];
+        float[] stream = new float[count * noteLength];
+        float[] note = new float[noteLength];
+        for (int i = 0; i < count; i++) {
+            Random rnd = new Random(i);
+            truth[i] = minHz * Math.pow(2, (double) i / steps + (2 * rnd.nextDouble() - 1) * MAX_DETUNE_CENTS / 1200);
+            SyntheticSignal.fill(signal, truth[i], rate, note, noteLength, rnd.nextLong());
+            if (!Double.isInfinite(snr)) SyntheticSignal.addNoise(note, noteLength, snr, rnd.nextLong());
+            System.arraycopy(note, 0, stream, i * noteLength, noteLength);
+        }
+
+        System.out.println("# kernels: " + Kernels.get().name());
+        System.out.printf(Locale.ROOT, "# %s hop %d, window %d, adaptive %d-%d at %s periods; %d %s notes of %d ms, snr %s%n",
+                engine, hop, window, minWindow, maxWindow, fmt(periods), count,
+                signal.name().toLowerCase(Locale.ROOT), noteMs, Double.isInfinite(snr) ? "inf" : fmt(snr));
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            simulate(stream, truth, noteLength, false);
+            simulate(stream, truth, noteLength, true);
+        }
+        Row[] fixed = simulate(stream, truth, noteLength, false);
+        Row[] adaptive = simulate(stream, truth, noteLength, true);
+
+        System.out.printf("%-8s %-4s %5s %6s %7s %8s %8s %7s %8s %7s %8s%n", "mode", "band", "notes", "frames",
+                "window", "delay_ms", "first_ms", "p95_c", "octave%", "miss%", "us/frame");
+        for (int b = 0; b < BAND_NAMES.length; b++) {
+            print("fixed", BAND_NAMES[b], fixed[b]);
+            print("adaptive", BAND_NAMES[b], adaptive[b]);
+        }
+    }
+
+    // frame the stream as the analysis stage would; one row per band
+    private Row[] simulate(float[] stream, double[] truth, int noteLength, boolean adaptive) {
+        AdaptiveFraming framing = adaptive
+                ? new AdaptiveFraming(rate, hop, minWindow, window, maxWindow, periods, LOWEST_HZ, HIGHEST_HZ)
+                : null;
+        int longest = adaptive ? framing.maxWindow() : window;
+        PitchEstimator estimator = engine.create(rate, longest, LOWEST_HZ);
+        estimator.setSearchRange(LOWEST_HZ, HIGHEST_HZ);
+        PitchResult result = new PitchResult();
+        float[] frame = new float[longest];
+        Row[] rows = new Row[BAND_NAMES.length];
+        for (int b = 0; b < rows.length; b++) rows[b] = new Row();
+
+        int applied = -1;
+        int current = -1;
+        boolean pending = false; // current note has no correct reading yet
+        // both modes start where the adaptive ring delivers its first frame, so they see the same frames
+        for (int end = maxWindow; end <= stream.length; end += hop) {
+            int length = adaptive ? framing.window() : window;
+            System.arraycopy(stream, end - length, frame, 0, length);
+            int n = (end - 1) / noteLength;
+            Row row = rows[band(truth[n])];
+            if (n != current) {
+                // onset: the frame is already read, the new note gets the initial window from the next one
+                current = n;
+                pending = true;
+                row.notes++;
+                estimator.reset();
+                if (adaptive) framing.reset();
+            }
+            if (adaptive && applied != length) {
+                framing.applyTo(estimator, length);
+                applied = length;
+            }
+            long start = System.nanoTime();
+            estimator.estimate(frame, length, result);
+            long nanos = System.nanoTime() - start;
+            if (adaptive) framing.update(result);
+
+            row.frames++;
+            row.windowSamples += length;
+            row.nanos += nanos;
+            double cents = result.hasPitch() ? 1200 * Math.log(result.frequency() / truth[n]) / Math.log(2) : Double.NaN;
+            if (pending && Math.abs(cents) < CORRECT_CENTS) {
+                pending = false;
+                row.read++;
+                row.firstSamples += end - (long) n * noteLength;
+            }
+            if (end - length < n * noteLength) continue; // straddles the previous note
+            row.measured++;
+            long octave = Double.isNaN(cents) ? 0 : Math.round(cents / 1200);
+            if (Double.isNaN(cents) || Math.abs(cents - 1200 * octave) >= CORRECT_CENTS) {
+                row.misses++;
+            } else if (octave != 0) {
+                row.octaves++;
+            } else {
+                row.add(cents);
+            }
+        }
+        return rows;
+    }
+
+    private void print(String mode, String band, Row r) {
+        if (r.frames == 0) return;
+        double meanWindow = (double) r.windowSamples / r.frames;
+        System.out.printf(Locale.ROOT, "%-8s %-4s %5d %6d %7.0f %8.1f %8.1f %7.3f %8.2f %7.2f %8.1f%n",
+                mode, band, r.notes, r.frames, meanWindow, meanWindow / 2 * 1000 / rate,
+                r.read == 0 ? Double.NaN : (double) r.firstSamples / r.read * 1000 / rate,
+                r.p95(), percent(r.octaves, r.measured), percent(r.misses, r.measured), r.nanos / 1e3 / r.frames);
+    }
+
+    private static double percent(int n, int of) {
+        return of == 0 ? 0 : 100.0 * n / of;
+    }
+
+    private static int band(double hz) {
+        int b = 0;
+        while (b < BAND_EDGES.length && hz >= BAND_EDGES[b]) b++;
+        return b;
+    }
+
+    private static String fmt(double v) {
+        return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+    }
+}
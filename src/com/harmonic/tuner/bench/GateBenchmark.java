@@ -0,0 +1,175 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.Notes;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.SignalGate;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs a simulated practice session through {@link SignalGate} and the
+ * estimator the way the capture pipeline does, and reports how much
+ * detection the gate saves and what it costs in missed notes.
+ *
+ * The session alternates plucked notes (harmonic tone, exponential decay)
+ * with pauses of background noise, and every few notes re-plucks the same
+ * string before the previous note has died away. Every frame is classified
+ * against the known note boundaries.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.GateBenchmark [options]
+ *
+ *   --engine acf-fft --window 4096 --hop 512 --rate 44100
+ *   --notes 40               notes in the session
+ *   --note-ms 1500           note length; pauses are as long as notes
+ *   --noise-db -60           background noise level in dBFS
+ *   --open-db 10             gate threshold above the noise floor
+ *   --idle-every 8           analysis interval while idle, 0 for none
+ * </pre>
+ *
+ * Reported: the fraction of frames skipped (overall and during pauses),
+ * frames of sounding notes that were skipped, onsets reported against notes
+ * played and the delay from note start to its onset, and detection time per
+ * second of audio with and without the gate.
+ */
+public final class GateBenchmark {
+    private static final int REPLUCK_EVERY = 4;
+    private static final double DECAY_PER_S = 12; // dB
+    private static final int ONSET_TOLERANCE_MS = 50;
+
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int window = 4096;
+    private int hop = 512;
+    private int rate = 44100;
+    private int notes = 40;
+    private int noteMs = 1500;
+    private double noiseDb = -60;
+    private double openDb = SignalGate.DEFAULT_OPEN_DB;
+    private int idleEvery = SignalGate.DEFAULT_IDLE_EVERY;
+
+    public static void main(String[] args) {
+        GateBenchmark bench = new GateBenchmark();
+        bench.parse(args);
+        bench.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--notes": notes = Integer.parseInt(val); break;
+                case "--note-ms": noteMs = Integer.parseInt(val); break;
+                case "--noise-db": noiseDb = Double.parseDouble(val); break;
+                case "--open-db": openDb = Double.parseDouble(val); break;
+                case "--idle-every": idleEvery = Integer.parseInt(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+    }
+
+    private void run() {
+        int noteLength = (int) ((long) noteMs * rate / 1000);
+        // sounding[i]: sample i belongs to a note; starts: first sample of each pluck
+        int total = 2 * notes * noteLength + window;
+        float[] audio = new float[total];
+        boolean[] sounding = new boolean[total];
+        int[] starts = new int[notes + notes / REPLUCK_EVERY];
+        int plucks = 0;
+        Random rnd = new Random(1);
+        double noise = Math.pow(10, noiseDb / 20);
+        for (int i = 0; i < total; i++) audio[i] = (float) (noise * rnd.nextGaussian());
+        float[] tone = new float[noteLength];
+        for (int k = 0; k < notes; k++) {
+            int at = window + 2 * k * noteLength;
+            double hz = Notes.frequency(40 + (k * 5) % 30);
+            boolean repluck = (k + 1) % REPLUCK_EVERY == 0;
+            SyntheticSignal.fill(SyntheticSignal.Type.HARMONIC, hz, rate, tone, noteLength, k);
+            starts[plucks++] = at;
+            int second = repluck ? noteLength / 2 : noteLength;
+            for (int i = 0; i < noteLength && at + i < total; i++) {
+                int t = i < second ? i : i - second;
+                if (i == second) starts[plucks++] = at + i;
+                double gain = Math.pow(10, -DECAY_PER_S * t / rate / 20);
+                audio[at + i] += (float) (gain * tone[i]);
+                sounding[at + i] = true;
+            }
+        }
+
+        PitchEstimator estimator = engine.create(rate, window);
+        SignalGate gate = new SignalGate(rate, hop, openDb, idleEvery);
+        PitchResult result = new PitchResult();
+        float[] frame = new float[window];
+        ungated(estimator, audio, frame, result); // warm-up, so neither timed pass pays for compilation
+        long frames = 0;
+        long idleFrames = 0;
+        long idleSkipped = 0;
+        long noteFrames = 0;
+        long noteSkipped = 0;
+        long gatedNanos = 0;
+        long onsetDelaySum = 0;
+        int matched = 0;
+        int nextPluck = 0;
+        int tolerance = (int) ((long) ONSET_TOLERANCE_MS * rate / 1000);
+        for (int end = window; end <= total; end += hop) {
+            System.arraycopy(audio, end - window, frame, 0, window);
+            boolean playing = sounding[end - 1];
+            long start = System.nanoTime();
+            SignalGate.Decision d = gate.update(frame, window);
+            if (d != SignalGate.Decision.SKIP) {
+                if (d == SignalGate.Decision.ONSET) estimator.reset();
+                estimator.estimate(frame, window, result);
+            }
+            gatedNanos += System.nanoTime() - start;
+            frames++;
+            if (playing) {
+                noteFrames++;
+                if (d == SignalGate.Decision.SKIP) noteSkipped++;
+            } else {
+                idleFrames++;
+                if (d == SignalGate.Decision.SKIP) idleSkipped++;
+            }
+            // an onset counts for a pluck that started up to a hop plus ONSET_TOLERANCE_MS before the frame end
+            while (nextPluck < plucks && starts[nextPluck] < end - hop - tolerance) nextPluck++;
+            if (d == SignalGate.Decision.ONSET && nextPluck < plucks && starts[nextPluck] < end) {
+                onsetDelaySum += end - starts[nextPluck];
+                matched++;
+                nextPluck++;
+            }
+        }
+
+        long ungatedNanos = ungated(estimator, audio, frame, result);
+
+        double seconds = (double) total / rate;
+        System.out.printf(Locale.ROOT, "# %s window %d hop %d rate %d, %d notes, %d plucks, noise %.0f dBFS, "
+                        + "open %.0f dB, idle-every %d%n",
+                engine, window, hop, rate, notes, plucks, noiseDb, openDb, idleEvery);
+        System.out.printf(Locale.ROOT, "skipped          %.1f%% of %d frames, %.1f%% of pause frames%n",
+                100.0 * gate.skippedFraction(), frames, idleFrames == 0 ? 0 : 100.0 * idleSkipped / idleFrames);
+        System.out.printf(Locale.ROOT, "note frames lost %d of %d%n", noteSkipped, noteFrames);
+        System.out.printf(Locale.ROOT, "onsets           %d reported, %d matched to %d plucks, mean delay %.1f ms%n",
+                gate.onsets(), matched, plucks, matched == 0 ? 0 : 1000.0 * onsetDelaySum / matched / rate);
+        System.out.printf(Locale.ROOT, "detect ms per s  %.2f gated, %.2f ungated%n",
+                gatedNanos / 1e6 / seconds, ungatedNanos / 1e6 / seconds);
+    }
+
+    // total estimation time when every frame is analysed
+    private long ungated(PitchEstimator estimator, float[] audio, float[] frame, PitchResult result) {
+        long nanos = 0;
+        for (int end = window; end <= audio.length; end += hop) {
+            System.arraycopy(audio, end - window, frame, 0, window);
+            long start = System.nanoTime();
+            estimator.estimate(frame, window, result);
+            nanos += System.nanoTime() - start;
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,159 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.MultiChannelEngine;
+import com.harmonic.tuner.Notes;
+import com.harmonic.tuner.PcmSource;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.SyntheticPcmSource;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Scaling and correctness of {@link MultiChannelEngine} on synthetic
+ * multi-channel sources, no audio hardware needed.
+ *
+ * For each channel count the channels are spread over --sources interleaved
+ * {@link SyntheticPcmSource}s, each channel playing its own note, paced at
+ * --speed times real time. Reported per run: analysed frames per second in
+ * total and per channel, speed-up over the single-channel run, CPU used by
+ * the analysis pool (in cores), hops dropped because analysis fell behind,
+ * and the worst error of any channel's final estimate against its note.
+ * While the pool has spare cores nothing is dropped and frames/s grows in
+ * step with the channel count; once the cores are saturated the per-channel
+ * rate falls and dropped hops appear.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.MultiChannelBenchmark [options]
+ *
+ *   --channels 1,2,4,8,16  channel counts (default 1,2,4,8,16,32)
+ *   --sources 2            sources the channels are spread over (default 1)
+ *   --engine yin           pitch engine (default acf-fft)
+ *   --window 4096 --hop 512 --rate 44100
+ *   --threads 4            analysis threads (default one per core)
+ *   --speed 16             pacing as a multiple of real time; 0 for unpaced (default 16)
+ *   --seconds 3            measured run length (default 3)
+ * </pre>
+ *
+ * Exits with status 1 if any channel ends more than 5 cents off its note.
+ */
+public final class MultiChannelBenchmark {
+    private static final double MAX_CENTS_ERROR = 5;
+
+    private int[] channelCounts = {1, 2, 4, 8, 16, 32};
+    private int sourceCount = 1;
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int window = 4096;
+    private int hop = 512;
+    private int rate = 44100;
+    private int threads;
+    private double speed = 16;
+    private double seconds = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        MultiChannelBenchmark bench = new MultiChannelBenchmark();
+        bench.parse(args);
+        if (!bench.runAll()) System.exit(1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--channels": channelCounts = ints(val); break;
+                case "--sources": sourceCount = Integer.parseInt(val); break;
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--threads": threads = Integer.parseInt(val); break;
+                case "--speed": speed = Double.parseDouble(val); break;
+                case "--seconds": seconds = Double.parseDouble(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+    }
+
+    private static int[] ints(String csv) {
+        String[] parts = csv.split(",");
+        int[] out = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) out[i] = Integer.parseInt(parts[i].trim());
+        return out;
+    }
+
+    private boolean runAll() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "# kernels: %s, engine %s, window %d, hop %d, rate %d, speed %s, %d cores%n",
+                Kernels.get().name(), engine, window, hop, rate, speed > 0 ? speed + "x" : "unpaced",
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf(Locale.ROOT, "%8s %12s %12s %8s %8s %10s %10s%n",
+                "channels", "frames/s", "per channel", "speedup", "cores", "dropped", "max cents");
+        run(1, 0.5); // warm-up
+        double base = 0;
+        boolean ok = true;
+        for (int channels : channelCounts) {
+            double[] r = run(channels, seconds);
+            if (base == 0) base = r[0] / channels;
+            System.out.printf(Locale.ROOT, "%8d %12.0f %12.0f %8.2f %8.2f %10.0f %10.2f%n",
+                    channels, r[0], r[0] / channels, r[0] / base, r[1], r[2], r[3]);
+            ok &= r[3] <= MAX_CENTS_ERROR;
+        }
+        return ok;
+    }
+
+    // {frames/s, analysis cores, dropped hops, max |cents|}
+    private double[] run(int channels, double runSeconds) throws InterruptedException {
+        double[] notes = new double[channels];
+        for (int c = 0; c < channels; c++) notes[c] = Notes.frequency(40 + (c * 7) % 41); // E2 up to A5
+        List<PcmSource> sources = new ArrayList<>();
+        int count = Math.min(sourceCount, channels);
+        for (int s = 0, first = 0; s < count; s++) {
+            int n = channels / count + (s < channels % count ? 1 : 0);
+            double[] tones = new double[n];
+            System.arraycopy(notes, first, tones, 0, n);
+            sources.add(new SyntheticPcmSource(rate, SyntheticSignal.Type.HARMONIC, tones, speed, -1, s));
+            first += n;
+        }
+
+        MultiChannelEngine mc = new MultiChannelEngine(sources, notes, window, hop, threads,
+                (sr, w, target) -> engine.create(sr, w), null);
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        mc.start();
+        Thread.sleep(200); // let the rings fill and the pool threads start
+        long frames0 = mc.framesAnalysed();
+        long dropped0 = mc.droppedHops();
+        long cpu0 = analysisCpuNanos(threadBean);
+        long t0 = System.nanoTime();
+        Thread.sleep((long) (runSeconds * 1000));
+        long elapsed = System.nanoTime() - t0;
+        long frames = mc.framesAnalysed() - frames0;
+        long dropped = mc.droppedHops() - dropped0;
+        long cpu = analysisCpuNanos(threadBean) - cpu0;
+
+        MultiChannelEngine.Results results = mc.newResults();
+        mc.results(results);
+        mc.stop();
+        double worst = 0;
+        for (int c = 0; c < channels; c++) {
+            double hz = results.frequency(c);
+            worst = Math.max(worst, hz > 0 ? Math.abs(Notes.cents(hz, notes[c])) : Double.POSITIVE_INFINITY);
+        }
+        return new double[]{frames * 1e9 / elapsed, cpu / (double) elapsed, dropped, worst};
+    }
+
+    private static long analysisCpuNanos(ThreadMXBean bean) {
+        long total = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("Multi-Analysis-")) {
+                long cpu = bean.getThreadCpuTime(t.getId());
+                if (cpu > 0) total += cpu;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,252 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.LatencyHistogram;
+import com.harmonic.tuner.Notes;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.StageStatistics;
+import com.harmonic.tuner.SyntheticPcmSource;
+import com.harmonic.tuner.SyntheticSignal;
+import com.harmonic.tuner.net.PitchProtocol;
+import com.harmonic.tuner.net.PitchServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Load generator for {@link PitchServer}: opens many connections from one
+ * selector thread, streams a different synthetic note on each at real time
+ * (or a multiple of it) and checks the results that come back.
+ *
+ * Without --port it starts a server in this JVM on an ephemeral loopback
+ * port, so a full load test is a single command:
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.PitchLoadClient --connections 300 --seconds 20
+ *
+ *   --host 127.0.0.1 --port 7777  target an external server instead
+ *   --connections 200             concurrent streams (default 100)
+ *   --lazy 10                     of those, streams that never read their results;
+ *                                 the server must stall them without hurting the rest
+ *   --rate 44100 --speed 1        sample rate and pacing as a multiple of real time
+ *   --seconds 10                  measured run length after all streams are connected
+ *   --engine yin --window 4096 --hop 512 --workers 0   settings of the embedded server
+ * </pre>
+ *
+ * Reported: results per second against the rate the streams require, the
+ * latency from sending the last sample of a frame to receiving its result,
+ * the share of gross (over 50 cents) errors and the mean error of the
+ * rest, and for the embedded server its stalled connections and analysis
+ * time.
+ */
+public final class PitchLoadClient {
+    private static final int SEND_BUFFER_BYTES = 16 * 1024;
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024;
+    private static final int SENT_AT_SLOTS = 1 << 12; // hop timestamps kept per stream
+    private static final long TICK_MILLIS = 2;
+
+    private String host = "127.0.0.1";
+    private int port = -1;
+    private int connections = 100;
+    private int lazy;
+    private int rate = 44100;
+    private double speed = 1;
+    private double seconds = 10;
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int window = 4096;
+    private int hop = 512;
+    private int workers;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private long results;
+    private long pitched;
+    private long gross;
+    private double centsSum;
+    private boolean measuring;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        PitchLoadClient client = new PitchLoadClient();
+        client.parse(args);
+        client.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--host": host = val; break;
+                case "--port": port = Integer.parseInt(val); break;
+                case "--connections": connections = Integer.parseInt(val); break;
+                case "--lazy": lazy = Integer.parseInt(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--speed": speed = Double.parseDouble(val); break;
+                case "--seconds": seconds = Double.parseDouble(val); break;
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--workers": workers = Integer.parseInt(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        PitchServer server = null;
+        if (port < 0) {
+            server = new PitchServer(new InetSocketAddress("127.0.0.1", 0), engine, window, hop, workers, connections);
+            server.start();
+            port = server.port();
+            host = "127.0.0.1";
+        }
+        List<Stream> streams = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < connections; i++) {
+                double hz = Notes.frequency(40 + (i * 7) % 41); // E2 up to A5
+                Stream s = new Stream(hz, i < lazy, i);
+                s.channel = SocketChannel.open();
+                if (s.lazy) s.channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+                s.channel.connect(new InetSocketAddress(host, port));
+                s.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                s.channel.configureBlocking(false);
+                s.key = s.channel.register(selector, s.lazy ? 0 : SelectionKey.OP_READ, s);
+                streams.add(s);
+            }
+            System.out.printf(Locale.ROOT, "# %d connections (%d lazy) to %s:%d, rate %d, speed %.2fx%s%n",
+                    connections, lazy, host, port, rate, speed,
+                    server != null ? ", embedded server " + engine + " window " + window + " hop " + hop : "");
+
+            long start = System.nanoTime();
+            long warmup = start + 1_000_000_000L;
+            long end = warmup + (long) (seconds * 1e9);
+            long measuredFrom = 0;
+            while (true) {
+                long now = System.nanoTime();
+                if (!measuring && now >= warmup) {
+                    measuring = true;
+                    measuredFrom = now;
+                }
+                if (now >= end) break;
+                for (Stream s : streams) s.send(now - start);
+                selector.select(TICK_MILLIS);
+                now = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Stream s = (Stream) key.attachment();
+                    if (key.isValid() && key.isReadable()) s.receive(now);
+                    if (key.isValid() && key.isWritable()) s.flush();
+                }
+                selector.selectedKeys().clear();
+            }
+            double elapsed = (System.nanoTime() - measuredFrom) / 1e9;
+            report(elapsed, server);
+        } finally {
+            for (Stream s : streams) {
+                if (s.channel != null) s.channel.close();
+            }
+            if (server != null) server.close();
+        }
+    }
+
+    private void report(double elapsed, PitchServer server) {
+        int active = connections - lazy;
+        double required = active * rate * speed / hop;
+        StageStatistics lat = latency.statistics("latency");
+        System.out.printf(Locale.ROOT, "results/s        %10.0f  (streams need %.0f)%n", results / elapsed, required);
+        System.out.printf(Locale.ROOT, "latency ms       p50 %.2f  p99 %.2f  max %.2f%n",
+                lat.getP50Micros() / 1e3, lat.getP99Micros() / 1e3, lat.getMaxMicros() / 1e3);
+        System.out.printf(Locale.ROOT, "pitch error      mean %.2f cents, %.2f%% gross, %.2f%% without pitch%n",
+                pitched == gross ? 0 : centsSum / (pitched - gross), results == 0 ? 0 : 100.0 * gross / results,
+                results == 0 ? 0 : 100.0 * (results - pitched) / results);
+        if (server != null) System.out.println("server           " + server.status());
+    }
+
+    private final class Stream {
+        final double hz;
+        final boolean lazy;
+        final SyntheticPcmSource source;
+        final ByteBuffer out = ByteBuffer.allocateDirect(SEND_BUFFER_BYTES);
+        final ByteBuffer in = ByteBuffer.allocateDirect(RECEIVE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] staging = new byte[SEND_BUFFER_BYTES];
+        final long[] sentAt = new long[SENT_AT_SLOTS];
+        SocketChannel channel;
+        SelectionKey key;
+        long samplesQueued;
+        int serverWindow = -1;
+        int serverHop;
+
+        Stream(double hz, boolean lazy, long seed) {
+            this.hz = hz;
+            this.lazy = lazy;
+            this.source = new SyntheticPcmSource(rate, SyntheticSignal.Type.HARMONIC, new double[]{hz}, 0, -1, seed);
+            ByteBuffer hello = ByteBuffer.allocate(PitchProtocol.HANDSHAKE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            hello.putInt(PitchProtocol.MAGIC).putInt(rate).putFloat((float) hz);
+            out.put(hello.array());
+        }
+
+        // queue the samples that are due by now and try to send them
+        void send(long sinceStart) throws IOException {
+            long due = (long) (sinceStart * 1e-9 * rate * speed);
+            int n = (int) Math.min(due - samplesQueued, out.remaining() / 2);
+            if (n > 0) {
+                long now = System.nanoTime();
+                source.read(staging, 0, 2 * n);
+                out.put(staging, 0, 2 * n);
+                for (long b = samplesQueued / hop + 1; b * hop <= samplesQueued + n; b++) {
+                    sentAt[(int) (b & (SENT_AT_SLOTS - 1))] = now;
+                }
+                samplesQueued += n;
+            }
+            flush();
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            int ops = (lazy ? 0 : SelectionKey.OP_READ) | (out.position() > 0 ? SelectionKey.OP_WRITE : 0);
+            if (key.interestOps() != ops) key.interestOps(ops);
+        }
+
+        void receive(long now) throws IOException {
+            if (channel.read(in) < 0) throw new IOException("server closed stream " + hz + " Hz");
+            in.flip();
+            if (serverWindow < 0 && in.remaining() >= PitchProtocol.REPLY_BYTES) {
+                if (in.getInt() != PitchProtocol.MAGIC) throw new IOException("bad reply");
+                serverWindow = in.getInt();
+                serverHop = in.getInt();
+                in.getInt();
+            }
+            while (serverWindow >= 0 && in.remaining() >= PitchProtocol.RESULT_BYTES) {
+                int frame = in.getInt();
+                float resultHz = in.getFloat();
+                in.getFloat();
+                in.getFloat();
+                if (measuring) record(frame, resultHz, now);
+            }
+            in.compact();
+        }
+
+        private void record(int frame, float resultHz, long now) {
+            results++;
+            if (resultHz > 0) {
+                double cents = Math.abs(Notes.cents(resultHz, hz));
+                pitched++;
+                if (cents > 50) gross++;
+                else centsSum += cents;
+            }
+            // the frame ends at sample serverWindow + frame * serverHop; timestamps exist for our hop boundaries
+            long last = (long) serverWindow + (long) frame * serverHop;
+            if (serverHop == hop && last % hop == 0) {
+                latency.record(now - sentAt[(int) ((last / hop) & (SENT_AT_SLOTS - 1))]);
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.AdaptiveFraming;
+import com.harmonic.tuner.AnalysisStage;
+import com.harmonic.tuner.CaptureRecorder;
+import com.harmonic.tuner.FrequencySmoother;
+import com.harmonic.tuner.LatencyHistogram;
+import com.harmonic.tuner.Pcm16;
+import com.harmonic.tuner.PipelineMetrics;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.PitchTracker;
+import com.harmonic.tuner.ReplayPcmSource;
+import com.harmonic.tuner.SampleRingBuffer;
+import com.harmonic.tuner.SignalGate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Plays a recording made with {@code -Dtuner.record} (see
+ * {@link CaptureRecorder}) through the same capture pipeline as the GUI:
+ * PCM conversion on a capture thread, {@link SampleRingBuffer},
+ * {@link AnalysisStage} with the {@link SignalGate} on its own thread, and
+ * the smoothing step, without a microphone.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.ReplayHarness [options] recording-dir
+ *
+ *   --engine acf-fft --window 4096 --hop 512
+ *   --speed 0              0 for as fast as possible (default), 1 for the recorded timing
+ *   --no-gate              analyse every frame
+ *   --adaptive             size windows with {@link AdaptiveFraming} at its default bounds,
+ *                          starting each note at --window
+ *   --open-db 10 --idle-every 8
+ *   --smoothing-ms 4000    averaging window of the smoothed column
+ *   --track                fill the smoothed column from a {@link PitchTracker} instead,
+ *                          as the GUI does by default
+ *   --out track.csv        per-frame track: frame, time_s, hz, clarity, smoothed_hz
+ *   --record DIR           record the replayed blocks again, to time the recorder
+ *   --metrics              print the pipeline metrics report
+ * </pre>
+ *
+ * Unpaced, the capture thread waits for the analysis thread rather than
+ * letting it skip hops, so every run over the same recording and options
+ * analyses the same frames and produces the same track; the printed digest
+ * is a CRC of it, for regression checks. Smoothing uses the stream time of
+ * each frame rather than the wall clock for the same reason. At speed 1 the
+ * blocks arrive with their recorded timing and the reported latency, from a
+ * hop's last sample entering the ring to its frame's result, is the one the
+ * GUI would see on this machine; hops the analysis could not keep up with
+ * are dropped as in the GUI.
+ */
+public final class ReplayHarness {
+    private static final double ADAPTIVE_LOWEST_HZ = 27.5;
+
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int window = 4096;
+    private int hop = 512;
+    private double speed;
+    private boolean gate = true;
+    private boolean adaptive;
+    private boolean tracking;
+    private double openDb = SignalGate.DEFAULT_OPEN_DB;
+    private int idleEvery = SignalGate.DEFAULT_IDLE_EVERY;
+    private int smoothingMs = 4000;
+    private Path out;
+    private Path record;
+    private boolean printMetrics;
+    private Path recording;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ReplayHarness harness = new ReplayHarness();
+        harness.parse(args);
+        if (harness.recording == null) {
+            System.err.println("usage: ReplayHarness [options] recording-dir");
+            System.exit(2);
+        }
+        harness.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (!a.startsWith("--")) {
+                recording = Paths.get(a);
+                continue;
+            }
+            if ("--no-gate".equals(a)) {
+                gate = false;
+                continue;
+            }
+            if ("--adaptive".equals(a)) {
+                adaptive = true;
+                continue;
+            }
+            if ("--track".equals(a)) {
+                tracking = true;
+                continue;
+            }
+            if ("--metrics".equals(a)) {
+                printMetrics = true;
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (a) {
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--speed": speed = Double.parseDouble(val); break;
+                case "--open-db": openDb = Double.parseDouble(val); break;
+                case "--idle-every": idleEvery = Integer.parseInt(val); break;
+                case "--smoothing-ms": smoothingMs = Integer.parseInt(val); break;
+                case "--out": out = Paths.get(val); break;
+                case "--record": record = Paths.get(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + a);
+            }
+        }
+        int shortest = adaptive ? Math.min(AdaptiveFraming.DEFAULT_MIN_WINDOW, window) : window;
+        if (hop <= 0 || hop > shortest) throw new IllegalArgumentException("hop must be in 1.." + shortest);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        LatencyHistogram latency = new LatencyHistogram();
+        CRC32 digest = new CRC32();
+        try (ReplayPcmSource source = new ReplayPcmSource(recording, speed);
+             Writer track = out != null ? Files.newBufferedWriter(out, StandardCharsets.UTF_8) : null;
+             CaptureRecorder recorder = record != null
+                     ? new CaptureRecorder(record, source.sampleRate(), source.channels(), CaptureRecorder.DEFAULT_SEGMENT_BYTES)
+                     : null) {
+            if (source.channels() != 1) throw new IOException(recording + ": expected a mono recording, got " + source.channels() + " channels");
+            int rate = source.sampleRate();
+            // the same policy and search range the GUI uses with tuner.window.adaptive
+            AdaptiveFraming framing = adaptive
+                    ? new AdaptiveFraming(rate, hop, Math.min(AdaptiveFraming.DEFAULT_MIN_WINDOW, window), window,
+                            Math.max(AdaptiveFraming.DEFAULT_MAX_WINDOW, window), AdaptiveFraming.DEFAULT_PERIODS,
+                            ADAPTIVE_LOWEST_HZ, PitchEstimator.DEFAULT_MAX_HZ)
+                    : null;
+            int longest = framing != null ? framing.maxWindow() : window;
+            SampleRingBuffer ring = new SampleRingBuffer(longest, hop);
+            // capture time of every hop the analysis may still need, indexed by hop number
+            long[] hopNanos = new long[Integer.highestOneBit(ring.capacity() / hop + 2) << 1];
+            int hopMask = hopNanos.length - 1;
+            int capacity = (int) Math.ceil(smoothingMs / 1000.0 * rate / hop) + 1;
+            FrequencySmoother smoother = new FrequencySmoother(smoothingMs * 1_000_000L, capacity, FrequencySmoother.Mode.MEAN, 0.2);
+            PitchTracker tracker = tracking ? new PitchTracker((double) hop / rate) : null;
+            if (track != null) track.write("frame,time_s,hz,clarity,smoothed_hz\n");
+            AnalysisStage.Listener listener = new AnalysisStage.Listener() {
+                private final byte[] row = new byte[16];
+
+                @Override
+                public void onFrame(PitchResult result, long frame) {
+                    long now = System.nanoTime();
+                    long end = longest + (frame + ring.droppedHops()) * hop; // samples up to this frame's last
+                    latency.record(now - hopNanos[(int) ((end - 1) / hop) & hopMask]);
+                    double streamNanos = end * 1e9 / rate;
+                    double smoothed = tracker != null
+                            ? Math.max(0, tracker.update(result))
+                            : smoother.add(result.frequency(), (long) streamNanos);
+                    metrics.record(PipelineMetrics.Stage.SMOOTH, System.nanoTime() - now);
+                    putInt(row, 0, (int) (end / hop));
+                    putInt(row, 4, Float.floatToIntBits((float) result.frequency()));
+                    putInt(row, 8, Float.floatToIntBits((float) result.clarity()));
+                    putInt(row, 12, Float.floatToIntBits((float) smoothed));
+                    digest.update(row, 0, 16);
+                    if (track != null) {
+                        try {
+                            track.write(String.format(Locale.ROOT, "%d,%.6f,%.3f,%.4f,%.3f%n",
+                                    frame, streamNanos / 1e9, result.frequency(), result.clarity(), smoothed));
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }
+                }
+
+                @Override
+                public void onOnset(long frame) {
+                    if (tracker != null) {
+                        tracker.reset();
+                    } else {
+                        smoother.clear();
+                    }
+                }
+            };
+            SignalGate signalGate = gate ? new SignalGate(rate, hop, openDb, idleEvery) : null;
+            PitchEstimator estimator = adaptive ? engine.create(rate, longest, ADAPTIVE_LOWEST_HZ) : engine.create(rate, window);
+            AnalysisStage analysis = new AnalysisStage(ring, estimator, window, listener, metrics, signalGate, framing);
+            Thread analysisThread = new Thread(analysis, "Replay-Analysis-Thread");
+            analysisThread.setDaemon(true);
+            analysisThread.start();
+
+            byte[] buffer = new byte[hop * 2];
+            float[] samples = new float[hop];
+            long written = 0;
+            long wallStart = System.nanoTime();
+            while (true) {
+                long start = System.nanoTime();
+                int read = source.readFully(buffer, 0, buffer.length);
+                long readDone = System.nanoTime();
+                metrics.record(PipelineMetrics.Stage.READ, readDone - start);
+                if (read == 0) break;
+                int n = Pcm16.toFloat(buffer, read, samples);
+                metrics.record(PipelineMetrics.Stage.CONVERT, System.nanoTime() - readDone);
+                if (speed <= 0) {
+                    while (!ring.canWriteWithoutSkip(n) && analysisThread.isAlive()) LockSupport.parkNanos(50_000);
+                }
+                // whole hops except at the very end, so the hop number is the write number
+                hopNanos[(int) (written / hop) & hopMask] = System.nanoTime();
+                if (ring.write(samples, 0, n) < n) metrics.captureOverrun();
+                written += n;
+                if (recorder != null) {
+                    long recordStart = System.nanoTime();
+                    recorder.write(buffer, 0, read, readDone);
+                    metrics.record(PipelineMetrics.Stage.RECORD, System.nanoTime() - recordStart);
+                }
+                if (read < buffer.length) break;
+            }
+            // let the analysis finish every complete window
+            long expected = written >= longest ? (written - longest) / hop + 1 : 0;
+            while (analysis.frames() + ring.droppedHops() < expected && analysisThread.isAlive()) {
+                LockSupport.parkNanos(1_000_000);
+            }
+            long wallNanos = System.nanoTime() - wallStart;
+            analysis.stop();
+            analysisThread.join();
+
+            double seconds = (double) written / rate;
+            System.out.printf(Locale.ROOT, "# %s: %.1f s at %d Hz in %d blocks, recorded %s%n",
+                    recording, seconds, rate, source.blocks(), Instant.ofEpochMilli(source.startEpochMillis()));
+            System.out.printf(Locale.ROOT, "# %s window %d%s hop %d, gate %s, speed %s%n",
+                    engine, window, adaptive ? " adaptive" : "", hop, gate ? "on" : "off", speed > 0 ? String.valueOf(speed) : "unpaced");
+            System.out.printf(Locale.ROOT, "frames %d, no pitch %d, gated %d, dropped hops %d%n",
+                    metrics.getFramesProcessed(), metrics.getNoPitchFrames(), metrics.getGatedFrames(), ring.droppedHops());
+            if (framing != null) System.out.printf(Locale.ROOT, "window resizes %d%n", framing.resizes());
+            System.out.printf(Locale.ROOT, "wall %.2f s, %.1fx real time%n", wallNanos / 1e9, seconds / (wallNanos / 1e9));
+            System.out.printf("%-8s %9s %10s %10s %10s %10s %10s %10s%n",
+                    "stage", "count", "mean_us", "p50_us", "p90_us", "p99_us", "p99.9_us", "max_us");
+            System.out.println(latency.statistics("LATENCY"));
+            if (recorder != null) System.out.println(metrics.statistics(PipelineMetrics.Stage.RECORD));
+            System.out.printf("track digest %08x%n", digest.getValue());
+            if (printMetrics) System.out.println(metrics.report());
+        }
+    }
+
+    private static void putInt(byte[] b, int p, int v) {
+        b[p] = (byte) (v >>> 24);
+        b[p + 1] = (byte) (v >>> 16);
+        b[p + 2] = (byte) (v >>> 8);
+        b[p + 3] = (byte) v;
+    }
+}
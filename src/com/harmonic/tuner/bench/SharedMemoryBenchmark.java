@@ -0,0 +1,205 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.LatencyHistogram;
+import com.harmonic.tuner.MappedAtomics;
+import com.harmonic.tuner.SharedMemorySource;
+import com.harmonic.tuner.SharedMemoryWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Latency, throughput and integrity of the shared-memory ring: one
+ * {@link SharedMemoryWriter} and --readers {@link SharedMemorySource}s on
+ * their own threads, all in this JVM but going through the mapped file as
+ * separate processes would.
+ *
+ * The writer publishes --block frames at a time, paced at --speed times
+ * real time, with every sample a known function of its position in the
+ * stream; each reader checks every sample it gets, so a block torn by the
+ * writer overtaking a reader and not caught as an overrun fails the run.
+ * Reported per reader: samples read, throughput, overruns, audio lost to
+ * them, and the latency from a block's publication to the read that
+ * delivered its last sample. A small ring with an unpaced writer stresses
+ * the overrun detection:
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.SharedMemoryBenchmark [options]
+ *
+ *   --readers 4            concurrent readers (default 4)
+ *   --file /dev/shm/bench.ring  ring file (default: a temporary file)
+ *   --rate 44100 --channels 1
+ *   --block 512            frames per write
+ *   --read 512             samples per read
+ *   --capacity-ms 2000     ring length
+ *   --speed 1              pacing of the writer; 0 for unpaced (default 1)
+ *   --seconds 3
+ *   --bytes                read PCM bytes instead of decoding to floats
+ * </pre>
+ *
+ * Exits with status 1 if any reader saw a sample out of place.
+ */
+public final class SharedMemoryBenchmark {
+    private int readers = 4;
+    private Path file;
+    private int rate = 44100;
+    private int channels = 1;
+    private int block = 512;
+    private int read = 512;
+    private int capacityMs = 2000;
+    private double speed = 1;
+    private double seconds = 3;
+    private boolean bytes;
+
+    /** One reader thread and its statistics. */
+    private final class Reader extends Thread {
+        final SharedMemorySource source;
+        final AtomicLongArray published;
+        final int blockBytes;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long samples;
+        long mismatches;
+        long nanos;
+
+        Reader(SharedMemorySource source, AtomicLongArray published, int blockBytes) {
+            super("Shm-Reader-" + source.slot());
+            this.source = source;
+            this.published = published;
+            this.blockBytes = blockBytes;
+        }
+
+        @Override
+        public void run() {
+            float[] decoded = new float[read];
+            byte[] pcm = new byte[read * 2];
+            long start = System.nanoTime();
+            try {
+                while (true) {
+                    int n;
+                    if (bytes) {
+                        n = source.read(pcm, 0, pcm.length);
+                        if (n > 0) n /= 2;
+                    } else {
+                        n = source.read(decoded, 0, decoded.length);
+                    }
+                    if (n < 0) break;
+                    if (n == 0) continue;
+                    long now = System.nanoTime();
+                    // a read may have skipped an overrun before delivering, so count back from where it ended
+                    long end = source.position();
+                    latency.record(now - published.get((int) ((end - 1) / blockBytes % published.length())));
+                    long first = (end - 2L * n) / 2;
+                    for (int i = 0; i < n; i++) {
+                        int expected = pattern(first + i);
+                        int got = bytes ? (short) (pcm[2 * i] & 0xFF | pcm[2 * i + 1] << 8) : Math.round(decoded[i] * 32768);
+                        if (got != expected) mismatches++;
+                    }
+                    samples += n;
+                }
+            } catch (IOException ex) {
+                System.err.println(getName() + ": " + ex.getMessage());
+            }
+            nanos = System.nanoTime() - start;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SharedMemoryBenchmark bench = new SharedMemoryBenchmark();
+        bench.parse(args);
+        if (!bench.run()) System.exit(1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if ("--bytes".equals(opt)) {
+                bytes = true;
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--readers": readers = Integer.parseInt(val); break;
+                case "--file": file = Paths.get(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--channels": channels = Integer.parseInt(val); break;
+                case "--block": block = Integer.parseInt(val); break;
+                case "--read": read = Integer.parseInt(val); break;
+                case "--capacity-ms": capacityMs = Integer.parseInt(val); break;
+                case "--speed": speed = Double.parseDouble(val); break;
+                case "--seconds": seconds = Double.parseDouble(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        if (read < channels) throw new IllegalArgumentException("read must hold a whole frame");
+    }
+
+    // sample at position k of the interleaved stream
+    private static int pattern(long k) {
+        return (short) (k * 40503L >>> 3);
+    }
+
+    private boolean run() throws IOException, InterruptedException {
+        boolean temporary = file == null;
+        if (temporary) file = Files.createTempFile("tuner-", ".ring");
+        int frameBytes = 2 * channels;
+        int blockBytes = block * frameBytes;
+        int capacity = Math.max(block, (int) ((long) capacityMs * rate / 1000)) * frameBytes;
+        // publication time of every block the ring can still hold, indexed by block number
+        AtomicLongArray published = new AtomicLongArray(capacity / blockBytes + 2);
+        Reader[] threads = new Reader[readers];
+        long written = 0;
+        long wall;
+        try (SharedMemoryWriter writer = new SharedMemoryWriter(file, rate, channels, capacity,
+                Math.max(readers, SharedMemoryWriter.DEFAULT_READER_SLOTS))) {
+            for (int r = 0; r < readers; r++) {
+                threads[r] = new Reader(new SharedMemorySource(file), published, blockBytes);
+                threads[r].start();
+            }
+            byte[] pcm = new byte[blockBytes];
+            long total = (long) (seconds * rate);
+            long start = System.nanoTime();
+            for (long frames = 0; frames < total; frames += block) {
+                for (int i = 0; i < block * channels; i++) {
+                    int v = pattern(written / 2 + i);
+                    pcm[2 * i] = (byte) v;
+                    pcm[2 * i + 1] = (byte) (v >> 8);
+                }
+                if (speed > 0) {
+                    long due = start + (long) ((frames + block) * 1e9 / (rate * speed));
+                    for (long now; (now = System.nanoTime()) < due; ) LockSupport.parkNanos(due - now);
+                }
+                published.set((int) (written / blockBytes % published.length()), System.nanoTime());
+                writer.write(pcm, 0, blockBytes);
+                written += blockBytes;
+            }
+            wall = System.nanoTime() - start;
+        }
+        for (Reader r : threads) r.join();
+        for (Reader r : threads) r.source.close();
+        if (temporary) Files.deleteIfExists(file);
+
+        System.out.printf(Locale.ROOT, "# %d readers, %d ch @ %d Hz, block %d, read %d, ring %d ms, speed %s, %s, atomics %s, kernels %s%n",
+                readers, channels, rate, block, read, capacityMs, speed > 0 ? String.valueOf(speed) : "unpaced",
+                bytes ? "bytes" : "floats", MappedAtomics.get().name(), Kernels.get().name());
+        System.out.printf(Locale.ROOT, "writer: %.1f s of audio in %.2f s, %.1f MB/s%n",
+                (double) written / frameBytes / rate, wall / 1e9, written / 1e6 / (wall / 1e9));
+        System.out.printf("%-8s %9s %10s %10s %10s %10s %10s %10s%n",
+                "reader", "count", "mean_us", "p50_us", "p90_us", "p99_us", "p99.9_us", "max_us");
+        boolean ok = true;
+        for (Reader r : threads) System.out.println(r.latency.statistics("slot " + r.source.slot()));
+        System.out.printf("%-8s %12s %8s %9s %8s %10s%n", "reader", "samples", "MB/s", "overruns", "lost_ms", "mismatches");
+        for (Reader r : threads) {
+            System.out.printf(Locale.ROOT, "%-8s %12d %8.1f %9d %8.1f %10d%n", "slot " + r.source.slot(), r.samples,
+                    r.samples * 2 / 1e6 / (r.nanos / 1e9), r.source.overruns(),
+                    r.source.lostFrames() * 1000.0 / rate, r.mismatches);
+            if (r.mismatches > 0) ok = false;
+        }
+        return ok;
+    }
+}
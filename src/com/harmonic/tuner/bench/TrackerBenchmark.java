@@ -0,0 +1,245 @@
+package com.harmonic.tuner.bench;
+
+import com.harmonic.tuner.FrequencySmoother;
+import com.harmonic.tuner.Notes;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+import com.harmonic.tuner.PitchTracker;
+import com.harmonic.tuner.SyntheticSignal;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares what the display would show frame by frame: the raw estimate,
+ * the windowed mean of {@link FrequencySmoother} and the
+ * {@link PitchTracker}, on a legato run of random notes.
+ *
+ * Each note is a harmonic tone with partials falling as 1/k, optionally with
+ * vibrato, and with noise at --snr dB; successive notes follow without a
+ * pause. Both the smoother and the tracker are reset where a note starts,
+ * as the gate's onset does in the GUI, unless --no-onsets is given, which
+ * leaves the tracker to find note changes itself as in the batch analyzer.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.bench.TrackerBenchmark [options]
+ *
+ *   --engine acf-fft --window 4096 --hop 512 --rate 44100
+ *   --notes 40 --note-ms 1500 --low-midi 40 --high-midi 76
+ *   --snr 20
+ *   --vibrato-cents 0 --vibrato-hz 5   vibrato depth (+/-) and rate
+ *   --smoothing-ms 4000                window of the mean
+ *   --no-onsets                        do not reset at note starts
+ * </pre>
+ *
+ * Per method: the mean time from a note's start to the end of the first of
+ * {@value #SETTLE_RUN} successive frames all within --settled-cents of the
+ * true pitch (notes that never get there are counted separately); after
+ * that point, the RMS error of the frames within 50 cents, the share of
+ * frames further off (octave jumps and other gross errors) and of frames
+ * without a reading; and the mean time per update.
+ */
+public final class TrackerBenchmark {
+    private static final int SETTLE_RUN = 10;
+    private static final double GROSS_CENTS = 50;
+    private static final int PARTIALS = 8;
+    private static final String[] METHODS = {"raw", "mean", "track"};
+
+    private PitchEngine engine = PitchEngine.ACF_FFT;
+    private int window = 4096;
+    private int hop = 512;
+    private int rate = 44100;
+    private int notes = 40;
+    private int noteMs = 1500;
+    private int lowMidi = 40;
+    private int highMidi = 76;
+    private double snr = 20;
+    private double vibratoCents;
+    private double vibratoHz = 5;
+    private int smoothingMs = 4000;
+    private double settledCents = 5;
+    private boolean onsets = true;
+
+    public static void main(String[] args) {
+        TrackerBenchmark bench = new TrackerBenchmark();
+        bench.parse(args);
+        bench.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if ("--no-onsets".equals(opt)) {
+                onsets = false;
+                continue;
+            }
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--rate": rate = Integer.parseInt(val); break;
+                case "--notes": notes = Integer.parseInt(val); break;
+                case "--note-ms": noteMs = Integer.parseInt(val); break;
+                case "--low-midi": lowMidi = Integer.parseInt(val); break;
+                case "--high-midi": highMidi = Integer.parseInt(val); break;
+                case "--snr": snr = "inf".equalsIgnoreCase(val.trim()) ? Double.POSITIVE_INFINITY : Double.parseDouble(val); break;
+                case "--vibrato-cents": vibratoCents = Double.parseDouble(val); break;
+                case "--vibrato-hz": vibratoHz = Double.parseDouble(val); break;
+                case "--smoothing-ms": smoothingMs = Integer.parseInt(val); break;
+                case "--settled-cents": settledCents = Double.parseDouble(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        if (hop <= 0 || hop > window) throw new IllegalArgumentException("hop must be in 1.." + window);
+        if (highMidi < lowMidi) throw new IllegalArgumentException("high-midi below low-midi");
+    }
+
+    private void run() {
+        int noteLength = (int) ((long) noteMs * rate / 1000);
+        int total = notes * noteLength;
+        float[] audio = new float[total];
+        double[] centre = new double[notes]; // each note's pitch without vibrato
+        Random rnd = new Random(1);
+        double phase = 0;
+        for (int k = 0; k < notes; k++) {
+            centre[k] = Notes.frequency(lowMidi + rnd.nextInt(highMidi - lowMidi + 1) + 0.6 * rnd.nextDouble() - 0.3);
+            for (int i = 0; i < noteLength; i++) {
+                int s = k * noteLength + i;
+                phase += 2 * Math.PI * truth(centre, noteLength, s) / rate;
+                double v = 0;
+                for (int h = 1; h <= PARTIALS; h++) v += Math.sin(h * phase) / h;
+                audio[s] = (float) (0.18 * v);
+            }
+        }
+        if (!Double.isInfinite(snr)) SyntheticSignal.addNoise(audio, total, snr, 2);
+
+        // the estimates do not depend on the method, so take them once
+        int frames = (total - window) / hop + 1;
+        PitchResult[] results = new PitchResult[frames];
+        PitchEstimator estimator = engine.create(rate, window);
+        float[] frame = new float[window];
+        for (int f = 0; f < frames; f++) {
+            System.arraycopy(audio, f * hop, frame, 0, window);
+            if (onsets && isOnset(f, noteLength)) estimator.reset();
+            results[f] = new PitchResult();
+            estimator.estimate(frame, window, results[f]);
+        }
+
+        double[][] shown = new double[METHODS.length][frames];
+        long[] nanos = new long[METHODS.length];
+        for (int pass = 0; pass < 4; pass++) { // the last pass is timed, the others warm up
+            for (int m = 0; m < METHODS.length; m++) nanos[m] = display(m, results, noteLength, shown[m]);
+        }
+
+        System.out.printf(Locale.ROOT, "# %s window %d hop %d rate %d, %d notes of %d ms, midi %d-%d, snr %s, "
+                        + "vibrato %s cents at %s Hz, onsets %s%n",
+                engine, window, hop, rate, notes, noteMs, lowMidi, highMidi, Double.isInfinite(snr) ? "inf" : fmt(snr),
+                fmt(vibratoCents), fmt(vibratoHz), onsets ? "reset" : "ignored");
+        System.out.printf("%-6s %9s %9s %8s %7s %7s %10s%n", "method", "settle_ms", "unsettled", "rms_c", "gross%",
+                "none%", "ns/update");
+        for (int m = 0; m < METHODS.length; m++) report(METHODS[m], shown[m], centre, noteLength, (double) nanos[m] / frames);
+    }
+
+    // instantaneous pitch at sample s
+    private double truth(double[] centre, int noteLength, long s) {
+        double hz = centre[(int) (s / noteLength)];
+        if (vibratoCents == 0) return hz;
+        return hz * Math.pow(2, vibratoCents * Math.sin(2 * Math.PI * vibratoHz * s / rate) / 1200);
+    }
+
+    // first frame ending within a new note
+    private boolean isOnset(int f, int noteLength) {
+        long end = (long) f * hop + window;
+        return f > 0 && (end - 1) / noteLength != (end - 1 - hop) / noteLength;
+    }
+
+    // fill shown with what method m displays per frame (<= 0 for nothing); returns the time spent
+    private long display(int m, PitchResult[] results, int noteLength, double[] shown) {
+        int capacity = (int) Math.ceil(smoothingMs / 1000.0 * rate / hop) + 1;
+        FrequencySmoother smoother = new FrequencySmoother(smoothingMs * 1_000_000L, capacity, FrequencySmoother.Mode.MEAN, 0.2);
+        PitchTracker tracker = new PitchTracker((double) hop / rate);
+        long nanos = 0;
+        for (int f = 0; f < results.length; f++) {
+            boolean onset = onsets && isOnset(f, noteLength);
+            long streamNanos = (long) (((double) f * hop + window) * 1e9 / rate);
+            long start = System.nanoTime();
+            switch (m) {
+                case 0:
+                    shown[f] = results[f].frequency();
+                    break;
+                case 1:
+                    if (onset) smoother.clear();
+                    shown[f] = smoother.add(results[f].frequency(), streamNanos);
+                    break;
+                default:
+                    if (onset) tracker.reset();
+                    shown[f] = tracker.update(results[f]);
+            }
+            nanos += System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private void report(String method, double[] shown, double[] centre, int noteLength, double nsPerUpdate) {
+        double settleSamples = 0;
+        int settled = 0;
+        int unsettled = 0;
+        double squares = 0;
+        int close = 0;
+        int gross = 0;
+        int none = 0;
+        int counted = 0;
+        boolean[] within = new boolean[shown.length];
+        double[] error = new double[shown.length];
+        for (int f = 0; f < shown.length; f++) {
+            long end = (long) f * hop + window;
+            double hz = truth(centre, noteLength, end - window / 2);
+            error[f] = shown[f] > 0 ? 1200 * Math.log(shown[f] / hz) / Math.log(2) : Double.NaN;
+            within[f] = Math.abs(error[f]) <= settledCents;
+        }
+        int f = 0;
+        for (int k = 0; k < centre.length; k++) {
+            long noteStart = (long) k * noteLength;
+            long noteEnd = noteStart + noteLength;
+            while (f < shown.length && (long) f * hop + window <= noteStart) f++;
+            int first = f;
+            int last = first;
+            while (last < shown.length && (long) last * hop + window <= noteEnd) last++;
+            // frames wholly within the note, from which a settled run may start
+            int from = Math.max(first, (int) ((noteStart + hop - 1) / hop));
+            int settle = -1;
+            int run = 0;
+            for (int g = from; g < last && settle < 0; g++) {
+                run = within[g] ? run + 1 : 0;
+                if (run == SETTLE_RUN) settle = g - SETTLE_RUN + 1;
+            }
+            if (settle < 0) {
+                unsettled++;
+                continue;
+            }
+            settled++;
+            settleSamples += (long) settle * hop + window - noteStart;
+            for (int g = settle; g < last; g++) {
+                counted++;
+                if (Double.isNaN(error[g])) {
+                    none++;
+                } else if (Math.abs(error[g]) > GROSS_CENTS) {
+                    gross++;
+                } else {
+                    squares += error[g] * error[g];
+                    close++;
+                }
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-6s %9.1f %9d %8.3f %7.2f %7.2f %10.0f%n", method,
+                settled == 0 ? Double.NaN : settleSamples / settled * 1000 / rate, unsettled,
+                close == 0 ? Double.NaN : Math.sqrt(squares / close),
+                counted == 0 ? 0 : 100.0 * gross / counted, counted == 0 ? 0 : 100.0 * none / counted, nsPerUpdate);
+    }
+
+    private static String fmt(double v) {
+        return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+    }
+}
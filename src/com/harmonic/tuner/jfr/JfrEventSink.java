@@ -0,0 +1,148 @@
+package com.harmonic.tuner.jfr;
+
+import com.harmonic.tuner.PipelineMetrics;
+import com.harmonic.tuner.PipelineMetrics.Stage;
+import com.harmonic.tuner.StageStatistics;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder bridge for {@link PipelineMetrics}, loaded by
+ * reflection so the tuner still builds and runs on JDKs without jdk.jfr.
+ *
+ * Emits one {@code com.harmonic.tuner.Stage} event per recorded duration and
+ * a {@code com.harmonic.tuner.PipelineStatistics} event every second with the
+ * counters and stage p99s. Stage events are only created while a recording
+ * is running, so an idle JVM pays one volatile read per measurement.
+ */
+public final class JfrEventSink implements PipelineMetrics.EventSink {
+    private static final String CATEGORY = "Harmonic Tuner";
+
+    @Name("com.harmonic.tuner.Stage")
+    @Label("Pipeline Stage")
+    @Description("Duration of one capture, conversion, strobe update, recorder write, gate decision, detection, smoothing or display hand-off")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+    }
+
+    @Name("com.harmonic.tuner.PipelineStatistics")
+    @Label("Pipeline Statistics")
+    @Category(CATEGORY)
+    @Period("1 s")
+    @StackTrace(false)
+    static final class StatisticsEvent extends Event {
+        @Label("Frames Processed")
+        long framesProcessed;
+
+        @Label("No-Pitch Frames")
+        long noPitchFrames;
+
+        @Label("Gated Frames")
+        long gatedFrames;
+
+        @Label("Capture Overruns")
+        long captureOverruns;
+
+        @Label("Read p99")
+        @Timespan
+        long readP99;
+
+        @Label("Strobe p99")
+        @Timespan
+        long strobeP99;
+
+        @Label("Record p99")
+        @Timespan
+        long recordP99;
+
+        @Label("Gate p99")
+        @Timespan
+        long gateP99;
+
+        @Label("Convert p99")
+        @Timespan
+        long convertP99;
+
+        @Label("Detect p99")
+        @Timespan
+        long detectP99;
+
+        @Label("Smooth p99")
+        @Timespan
+        long smoothP99;
+
+        @Label("EDT Lag p99")
+        @Timespan
+        long edtLagP99;
+    }
+
+    private volatile boolean recording;
+
+    @Override
+    public void attach(PipelineMetrics metrics) {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording changed) {
+                recording = anyRunning();
+            }
+        });
+        recording = anyRunning();
+        FlightRecorder.addPeriodicEvent(StatisticsEvent.class, () -> {
+            StatisticsEvent e = new StatisticsEvent();
+            e.framesProcessed = metrics.getFramesProcessed();
+            e.noPitchFrames = metrics.getNoPitchFrames();
+            e.gatedFrames = metrics.getGatedFrames();
+            e.captureOverruns = metrics.getCaptureOverruns();
+            e.readP99 = p99(metrics, Stage.READ);
+            e.strobeP99 = p99(metrics, Stage.STROBE);
+            e.recordP99 = p99(metrics, Stage.RECORD);
+            e.gateP99 = p99(metrics, Stage.GATE);
+            e.convertP99 = p99(metrics, Stage.CONVERT);
+            e.detectP99 = p99(metrics, Stage.DETECT);
+            e.smoothP99 = p99(metrics, Stage.SMOOTH);
+            e.edtLagP99 = p99(metrics, Stage.EDT_LAG);
+            e.commit();
+        });
+    }
+
+    @Override
+    public void stage(Stage stage, long nanos) {
+        if (!recording) return;
+        StageEvent e = new StageEvent();
+        if (e.shouldCommit()) {
+            e.stage = stage.name();
+            e.elapsed = nanos;
+            e.commit();
+        }
+    }
+
+    private static long p99(PipelineMetrics metrics, Stage stage) {
+        StageStatistics s = metrics.statistics(stage);
+        return (long) (s.getP99Micros() * 1e3);
+    }
+
+    private static boolean anyRunning() {
+        if (!FlightRecorder.isInitialized()) return false;
+        for (Recording r : FlightRecorder.getFlightRecorder().getRecordings()) {
+            if (r.getState() == RecordingState.RUNNING) return true;
+        }
+        return false;
+    }
+}
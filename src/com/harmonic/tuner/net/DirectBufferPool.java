@@ -0,0 +1,48 @@
+package com.harmonic.tuner.net;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Free list of equally sized direct buffers. Direct buffers are costly to
+ * allocate and are only freed by the garbage collector, so connections
+ * borrow them for their lifetime and return them on close instead.
+ *
+ * Not thread-safe: each selector thread owns its pools.
+ */
+final class DirectBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private int allocated;
+
+    /**
+     * @param maxPooled buffers kept for reuse; further returned buffers are
+     *                  left to the garbage collector
+     */
+    DirectBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /** @return a cleared little-endian buffer */
+    ByteBuffer acquire() {
+        ByteBuffer b = free.pollFirst();
+        if (b == null) {
+            allocated++;
+            b = ByteBuffer.allocateDirect(bufferSize);
+        }
+        b.clear();
+        return b.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    void release(ByteBuffer b) {
+        if (b != null && free.size() < maxPooled) free.addFirst(b);
+    }
+
+    /** @return direct buffers allocated over the pool's lifetime */
+    int allocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,30 @@
+package com.harmonic.tuner.net;
+
+/**
+ * Wire format of {@link PitchServer}. All fields are little-endian, like the
+ * PCM itself.
+ *
+ * <pre>
+ * client -&gt; server, once:   int magic, int sampleRate, float targetHz      (12 bytes)
+ * server -&gt; client, once:   int magic, int window, int hop, int sampleRate (16 bytes)
+ * client -&gt; server, stream: mono signed 16-bit PCM at sampleRate
+ * server -&gt; client, stream: int frame, float hz, float cents, float clarity (16 bytes each)
+ * </pre>
+ *
+ * Frame k covers samples [k * hop, k * hop + window) of the stream, so it is
+ * sent as soon as sample window + k * hop - 1 has arrived. hz is -1 when the
+ * frame has no pitch. cents is measured against targetHz, or against the
+ * nearest equal-tempered note when targetHz is 0, and is 0 without a pitch.
+ * The server closes the connection on a bad handshake.
+ */
+public final class PitchProtocol {
+    private PitchProtocol() {}
+
+    /** "PTC1" read as a little-endian int. */
+    public static final int MAGIC = 'P' | 'T' << 8 | 'C' << 16 | '1' << 24;
+    public static final int HANDSHAKE_BYTES = 12;
+    public static final int REPLY_BYTES = 16;
+    public static final int RESULT_BYTES = 16;
+    public static final int MIN_SAMPLE_RATE = 8000;
+    public static final int MAX_SAMPLE_RATE = 192000;
+}
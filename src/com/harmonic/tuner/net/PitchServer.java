@@ -0,0 +1,329 @@
+package com.harmonic.tuner.net;
+
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.LatencyHistogram;
+import com.harmonic.tuner.PitchEngine;
+import com.harmonic.tuner.StageStatistics;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless pitch detection service: clients stream raw PCM over TCP and
+ * receive one result record per analysis frame on the same connection (see
+ * {@link PitchProtocol}).
+ *
+ * An acceptor thread hands new connections round-robin to a fixed set of
+ * worker threads, each running its own {@link Selector} over non-blocking
+ * channels. A worker reads, decodes, analyses and answers its connections
+ * itself, so a stream never changes threads and needs no locking; with one
+ * worker per core hundreds of streams share the machine evenly. Receive and
+ * send buffers are direct, pooled per worker, and samples are decoded
+ * straight out of the receive buffer. See {@link StreamConnection} for the
+ * per-connection backpressure.
+ *
+ * <pre>
+ * java -cp ../out com.harmonic.tuner.net.PitchServer [options]
+ *
+ *   --port 7777 --bind 0.0.0.0
+ *   --engine yin                pitch engine (default acf-fft)
+ *   --window 4096 --hop 512     analysis window and hop in samples
+ *   --workers 4                 selector threads (default one per core)
+ *   --max-connections 1024      further connections are closed on accept
+ *   --stats-seconds 10          interval of the status line, 0 for none
+ * </pre>
+ *
+ * Load-test it with {@code com.harmonic.tuner.bench.PitchLoadClient}.
+ */
+public final class PitchServer implements AutoCloseable {
+    private static final int RECEIVE_BUFFER_BYTES = 16 * 1024;
+    private static final int SEND_BUFFER_BYTES = 4 * 1024;
+    // results are small; a kernel buffer this size already holds seconds of them, so a
+    // client that stops reading is pushed back soon instead of after minutes of autotuned buffer
+    private static final int SOCKET_SEND_BUFFER_BYTES = 8 * 1024;
+    private static final int POOLED_BUFFERS = 256;
+    private static final long STALL_COUNT_INTERVAL_NANOS = 100_000_000L;
+
+    private final InetSocketAddress address;
+    private final PitchEngine engine;
+    private final int window;
+    private final int hop;
+    private final int maxConnections;
+    private final Worker[] workers;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LatencyHistogram analysis = new LatencyHistogram();
+    private ServerSocketChannel server;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param workers selector threads; 0 for one per core
+     */
+    public PitchServer(InetSocketAddress address, PitchEngine engine, int window, int hop, int workers,
+                       int maxConnections) {
+        if (hop <= 0 || hop > window) throw new IllegalArgumentException("hop must be in 1.." + window);
+        this.address = address;
+        this.engine = engine;
+        this.window = window;
+        this.hop = hop;
+        this.maxConnections = maxConnections;
+        this.workers = new Worker[workers > 0 ? workers : Runtime.getRuntime().availableProcessors()];
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String bind = "0.0.0.0";
+        int port = 7777;
+        PitchEngine engine = PitchEngine.ACF_FFT;
+        int window = 4096;
+        int hop = 512;
+        int workers = 0;
+        int maxConnections = 1024;
+        int statsSeconds = 10;
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            String val = i + 1 < args.length ? args[++i] : "";
+            switch (opt) {
+                case "--port": port = Integer.parseInt(val); break;
+                case "--bind": bind = val; break;
+                case "--engine": engine = PitchEngine.fromName(val); break;
+                case "--window": window = Integer.parseInt(val); break;
+                case "--hop": hop = Integer.parseInt(val); break;
+                case "--workers": workers = Integer.parseInt(val); break;
+                case "--max-connections": maxConnections = Integer.parseInt(val); break;
+                case "--stats-seconds": statsSeconds = Integer.parseInt(val); break;
+                default: throw new IllegalArgumentException("Unknown option " + opt);
+            }
+        }
+        PitchServer server = new PitchServer(new InetSocketAddress(bind, port), engine, window, hop, workers,
+                maxConnections);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.out.printf(Locale.ROOT, "Listening on %s:%d, %s, window %d, hop %d, %d workers, kernels %s%n",
+                bind, server.port(), engine, window, hop, server.workers.length, Kernels.get().name());
+        while (server.running) {
+            Thread.sleep(statsSeconds > 0 ? statsSeconds * 1000L : 60_000L);
+            if (statsSeconds > 0) System.out.println(server.status());
+        }
+    }
+
+    /** Bind and start accepting; returns once the port is open. */
+    public synchronized void start() throws IOException {
+        if (running) throw new IllegalStateException("already running");
+        server = ServerSocketChannel.open();
+        server.bind(address, 256);
+        running = true;
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(Selector.open());
+            Thread t = new Thread(workers[i], "Pitch-Worker-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        acceptor = new Thread(this::accept, "Pitch-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /** @return the bound port, useful when started on port 0 */
+    public int port() {
+        return server.socket().getLocalPort();
+    }
+
+    /** Stop accepting and close every connection. */
+    @Override
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (Worker w : workers) w.selector.wakeup();
+    }
+
+    public int connections() {
+        return connections.get();
+    }
+
+    public int stalledConnections() {
+        int n = 0;
+        for (Worker w : workers) n += w.stalled;
+        return n;
+    }
+
+    /** @return per-frame analysis time, including the frame count */
+    public StageStatistics analysisStatistics() {
+        return analysis.statistics("analysis");
+    }
+
+    /** @return one-line summary for logs */
+    public String status() {
+        StageStatistics s = analysisStatistics();
+        return String.format(Locale.ROOT, "%d connections (%d stalled), %d frames, analysis p50 %.0f us p99 %.0f us",
+                connections(), stalledConnections(), s.getCount(), s.getP50Micros(), s.getP99Micros());
+    }
+
+    PitchEngine engine() {
+        return engine;
+    }
+
+    int window() {
+        return window;
+    }
+
+    int hop() {
+        return hop;
+    }
+
+    void frameAnalysed(long nanos) {
+        analysis.record(nanos);
+    }
+
+    private void accept() {
+        int next = 0;
+        while (running) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (ClosedByInterruptException ex) {
+                return;
+            } catch (IOException ex) {
+                if (running) System.err.println("Accept failed: " + ex.getMessage());
+                return;
+            }
+            try {
+                if (connections.get() >= maxConnections) {
+                    ch.close();
+                    continue;
+                }
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ch.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_SEND_BUFFER_BYTES);
+            } catch (IOException ex) {
+                closeQuietly(ch);
+                continue;
+            }
+            connections.incrementAndGet();
+            workers[next].hand(ch);
+            next = (next + 1) % workers.length;
+        }
+    }
+
+    private static void closeQuietly(SocketChannel ch) {
+        try {
+            ch.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Worker implements Runnable {
+        final Selector selector;
+        private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final DirectBufferPool receiveBuffers = new DirectBufferPool(RECEIVE_BUFFER_BYTES, POOLED_BUFFERS);
+        private final DirectBufferPool sendBuffers = new DirectBufferPool(SEND_BUFFER_BYTES, POOLED_BUFFERS);
+        volatile int stalled;
+        private long stallCountedAt;
+
+        Worker(Selector selector) {
+            this.selector = selector;
+        }
+
+        void hand(SocketChannel ch) {
+            pending.add(ch);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    register();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        serve(key);
+                    }
+                    long now = System.nanoTime();
+                    if (now - stallCountedAt >= STALL_COUNT_INTERVAL_NANOS) {
+                        stallCountedAt = now;
+                        countStalled();
+                    }
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                if (running) System.err.println(Thread.currentThread().getName() + " failed: " + ex.getMessage());
+            } finally {
+                List<SelectionKey> keys = new ArrayList<>(selector.keys());
+                for (SelectionKey key : keys) close(key);
+                for (SocketChannel ch; (ch = pending.poll()) != null; ) {
+                    closeQuietly(ch);
+                    connections.decrementAndGet();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private void register() {
+            for (SocketChannel ch; (ch = pending.poll()) != null; ) {
+                try {
+                    SelectionKey key = ch.register(selector, SelectionKey.OP_READ);
+                    key.attach(new StreamConnection(ch, key, PitchServer.this,
+                            receiveBuffers.acquire(), sendBuffers.acquire()));
+                } catch (IOException ex) {
+                    closeQuietly(ch);
+                    connections.decrementAndGet();
+                }
+            }
+        }
+
+        private void serve(SelectionKey key) {
+            StreamConnection conn = (StreamConnection) key.attachment();
+            try {
+                if (key.isReadable() && !conn.onReadable()) {
+                    close(key);
+                    return;
+                }
+                if (key.isValid() && key.isWritable()) conn.onWritable();
+            } catch (IOException ex) {
+                close(key);
+            }
+        }
+
+        private void countStalled() {
+            int n = 0;
+            for (SelectionKey key : selector.keys()) {
+                StreamConnection conn = (StreamConnection) key.attachment();
+                if (conn != null && conn.stalled()) n++;
+            }
+            stalled = n;
+        }
+
+        private void close(SelectionKey key) {
+            StreamConnection conn = (StreamConnection) key.attachment();
+            key.cancel();
+            closeQuietly((SocketChannel) key.channel());
+            if (conn != null) {
+                key.attach(null);
+                receiveBuffers.release(conn.receiveBuffer());
+                sendBuffers.release(conn.sendBuffer());
+                connections.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.harmonic.tuner.net;
+
+import com.harmonic.tuner.Kernels;
+import com.harmonic.tuner.Notes;
+import com.harmonic.tuner.PitchEstimator;
+import com.harmonic.tuner.PitchResult;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * One client stream, confined to its worker's selector thread.
+ *
+ * Samples are decoded straight out of the direct receive buffer into the
+ * analysis window; every time a hop completes the window is analysed and a
+ * result record is appended to the direct send buffer. When the send buffer
+ * has no room for another record, i.e. the client is not reading its
+ * results, decoding stops and the connection stops reading, so TCP flow
+ * control pushes back on the sender until the results have been flushed.
+ */
+final class StreamConnection {
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final PitchServer server;
+    private final ByteBuffer in;
+    private final ByteBuffer out;
+    private final Kernels kernels = Kernels.get();
+    private final PitchResult result = new PitchResult();
+    private PitchEstimator estimator;
+    private float[] samples;
+    private int filled;
+    private int frame;
+    private float targetHz;
+    private boolean stalled;
+
+    StreamConnection(SocketChannel channel, SelectionKey key, PitchServer server, ByteBuffer in, ByteBuffer out) {
+        this.channel = channel;
+        this.key = key;
+        this.server = server;
+        this.in = in;
+        this.out = out;
+    }
+
+    ByteBuffer receiveBuffer() {
+        return in;
+    }
+
+    ByteBuffer sendBuffer() {
+        return out;
+    }
+
+    boolean stalled() {
+        return stalled;
+    }
+
+    /** @return false once the peer has closed or broken the protocol */
+    boolean onReadable() throws IOException {
+        if (channel.read(in) < 0) return false;
+        if (!process()) return false;
+        flush();
+        updateInterest();
+        return true;
+    }
+
+    void onWritable() throws IOException {
+        flush();
+        if (stalled && out.remaining() >= PitchProtocol.RESULT_BYTES) {
+            process();
+            flush();
+        }
+        updateInterest();
+    }
+
+    // consume whole samples from in, as far as the send buffer allows
+    private boolean process() {
+        in.flip();
+        try {
+            if (estimator == null) {
+                if (in.remaining() < PitchProtocol.HANDSHAKE_BYTES) return true;
+                if (!handshake()) return false;
+            }
+            int window = samples.length;
+            while (in.remaining() >= 2 && out.remaining() >= PitchProtocol.RESULT_BYTES) {
+                int n = Math.min(window - filled, in.remaining() / 2);
+                kernels.pcm16ToFloat(in, in.position(), samples, filled, n);
+                in.position(in.position() + 2 * n);
+                filled += n;
+                if (filled == window) analyse();
+            }
+            stalled = in.remaining() >= 2;
+            return true;
+        } finally {
+            in.compact();
+        }
+    }
+
+    // parse and answer the handshake; false if it is invalid
+    private boolean handshake() {
+        int magic = in.getInt();
+        int sampleRate = in.getInt();
+        float target = in.getFloat();
+        if (magic != PitchProtocol.MAGIC || sampleRate < PitchProtocol.MIN_SAMPLE_RATE
+                || sampleRate > PitchProtocol.MAX_SAMPLE_RATE || !(target >= 0)) {
+            return false;
+        }
+        int window = server.window();
+        estimator = server.engine().create(sampleRate, window);
+        samples = new float[window];
+        targetHz = target;
+        out.putInt(PitchProtocol.MAGIC).putInt(window).putInt(server.hop()).putInt(sampleRate);
+        return true;
+    }
+
+    private void analyse() {
+        long start = System.nanoTime();
+        estimator.estimate(samples, filled, result);
+        float hz = (float) result.frequency();
+        float cents = 0;
+        if (result.hasPitch()) {
+            cents = (float) (targetHz > 0 ? Notes.cents(hz, targetHz) : Notes.centsFromNearest(hz));
+        }
+        out.putInt(frame++).putFloat(hz).putFloat(cents).putFloat((float) result.clarity());
+        int hop = server.hop();
+        System.arraycopy(samples, hop, samples, 0, filled - hop);
+        filled -= hop;
+        server.frameAnalysed(System.nanoTime() - start);
+    }
+
+    private void flush() throws IOException {
+        if (out.position() == 0) return;
+        out.flip();
+        channel.write(out);
+        out.compact();
+    }
+
+    private void updateInterest() {
+        int ops = 0;
+        if (!stalled && in.hasRemaining()) ops |= SelectionKey.OP_READ;
+        if (out.position() > 0) ops |= SelectionKey.OP_WRITE;
+        if (key.interestOps() != ops) key.interestOps(ops);
+    }
+}
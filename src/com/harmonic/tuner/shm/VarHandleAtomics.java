@@ -0,0 +1,43 @@
+package com.harmonic.tuner.shm;
+
+import com.harmonic.tuner.MappedAtomics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * {@link MappedAtomics} over a byte-buffer view {@link VarHandle}, loaded by
+ * reflection so the tuner still builds and runs on Java 8. Acquire and
+ * release accesses to a mapped buffer order the counters against the PCM
+ * around them across processes as well as threads.
+ */
+public final class VarHandleAtomics extends MappedAtomics {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public String name() {
+        return "varhandle";
+    }
+
+    @Override
+    public long getAcquire(ByteBuffer buffer, int index) {
+        return (long) LONGS.getAcquire(buffer, index);
+    }
+
+    @Override
+    public void setRelease(ByteBuffer buffer, int index, long value) {
+        LONGS.setRelease(buffer, index, value);
+    }
+
+    @Override
+    public void loadFence() {
+        VarHandle.acquireFence();
+    }
+
+    @Override
+    public void storeFence() {
+        VarHandle.releaseFence();
+    }
+}
@@ -0,0 +1,114 @@
+package com.harmonic.tuner.simd;
+
+import com.harmonic.tuner.Kernels;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteOrder;
+
+/**
+ * {@link Kernels} on the incubating Vector API, selected by
+ * {@link Kernels#get()} when this package is compiled and the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * PCM decoding loads half a vector of bytes, reinterprets them as shorts and
+ * widens them to a full vector of floats. The byte reinterpretation uses the
+ * platform byte order, so construction fails on big-endian machines and the
+ * scalar path is used. The dot product keeps four vector accumulators in
+ * float and folds them into a double every {@value #BLOCK} elements, so the
+ * rounding error stays at the level of a few float ulps of the partial sums.
+ * The double-precision dot product widens half a vector of floats to a full
+ * vector of doubles and accumulates there.
+ */
+public final class VectorKernels extends Kernels {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> HALF_FLOATS =
+            VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final int BLOCK = 1024;
+
+    public VectorKernels() {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+            throw new UnsupportedOperationException("big-endian platform");
+        }
+        if (FLOATS.length() < 4) {
+            throw new UnsupportedOperationException("no SIMD shape wider than " + FLOATS.vectorBitSize() + " bits");
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector-" + FLOATS.vectorBitSize();
+    }
+
+    @Override
+    public void pcm16ToFloat(byte[] src, int srcOffset, float[] dst, int dstOffset, int samples) {
+        int lanes = FLOATS.length();
+        int bound = samples - samples % lanes;
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            ByteVector.fromArray(BYTES, src, srcOffset + 2 * i)
+                    .reinterpretAsShorts()
+                    .convertShape(VectorOperators.S2F, FLOATS, 0)
+                    .reinterpretAsFloats()
+                    .mul(1 / 32768f)
+                    .intoArray(dst, dstOffset + i);
+        }
+        for (int p = srcOffset + 2 * i; i < samples; i++, p += 2) {
+            dst[dstOffset + i] = (short) ((src[p] & 0xFF) | src[p + 1] << 8) / 32768f;
+        }
+    }
+
+    @Override
+    public double dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = FLOATS.length();
+        int step = 4 * lanes;
+        double sum = 0;
+        int i = 0;
+        while (length - i >= step) {
+            int end = Math.min(length - length % step, i + BLOCK);
+            FloatVector acc0 = FloatVector.zero(FLOATS);
+            FloatVector acc1 = FloatVector.zero(FLOATS);
+            FloatVector acc2 = FloatVector.zero(FLOATS);
+            FloatVector acc3 = FloatVector.zero(FLOATS);
+            for (; i < end; i += step) {
+                int p = aOffset + i, q = bOffset + i;
+                acc0 = FloatVector.fromArray(FLOATS, a, p).fma(FloatVector.fromArray(FLOATS, b, q), acc0);
+                acc1 = FloatVector.fromArray(FLOATS, a, p + lanes).fma(FloatVector.fromArray(FLOATS, b, q + lanes), acc1);
+                acc2 = FloatVector.fromArray(FLOATS, a, p + 2 * lanes).fma(FloatVector.fromArray(FLOATS, b, q + 2 * lanes), acc2);
+                acc3 = FloatVector.fromArray(FLOATS, a, p + 3 * lanes).fma(FloatVector.fromArray(FLOATS, b, q + 3 * lanes), acc3);
+            }
+            sum += acc0.add(acc1).add(acc2.add(acc3)).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) sum += a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    @Override
+    public double dotDouble(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        int lanes = DOUBLES.length();
+        int step = 2 * lanes;
+        int bound = length - length % step;
+        DoubleVector acc0 = DoubleVector.zero(DOUBLES);
+        DoubleVector acc1 = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (; i < bound; i += step) {
+            int p = aOffset + i, q = bOffset + i;
+            acc0 = widen(a, p).fma(widen(b, q), acc0);
+            acc1 = widen(a, p + lanes).fma(widen(b, q + lanes), acc1);
+        }
+        double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) sum += (double) a[aOffset + i] * b[bOffset + i];
+        return sum;
+    }
+
+    private static DoubleVector widen(float[] x, int offset) {
+        return (DoubleVector) FloatVector.fromArray(HALF_FLOATS, x, offset).convertShape(VectorOperators.F2D, DOUBLES, 0);
+    }
+}